@@ -0,0 +1,303 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.session.PersistentManager;
+import org.apache.catalina.session.PersistentManagerBase;
+import org.apache.catalina.session.StandardSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A replacement for {@link PersistentManager} that saves and loads sessions in bulk when its store is an {@link
+ * ExtendedStore}.  Idle backups, idle swaps, unloading when the manager stops and loading all persisted sessions each
+ * use a single {@link ExtendedStore#saveAll(java.util.Collection)} or {@link
+ * ExtendedStore#loadAll(java.util.Collection)} rather than one store operation per session.  A session being swapped
+ * out whose persisted copy has been accessed more recently, e.g. by another instance, is dropped from memory rather
+ * than saved over the newer copy.  With any other store it behaves as a {@link PersistentManager}.
+ */
+public final class BatchingPersistentManager extends PersistentManagerBase {
+
+    private static final Field ACCESS_COUNT = field("accessCount");
+
+    private static final String PERSISTED_LAST_ACCESSED_TIME =
+            "org.apache.catalina.session.PersistentManagerBase.persistedLastAccessedTime";
+
+    private final Logger logger = LoggerFactory.getLogger(BatchingPersistentManager.class);
+
+    @Override
+    public String getName() {
+        return BatchingPersistentManager.class.getSimpleName();
+    }
+
+    @Override
+    public void load() {
+        if (!(getStore() instanceof ExtendedStore)) {
+            super.load();
+            return;
+        }
+
+        this.sessions.clear();
+
+        Map<String, Session> loaded;
+        try {
+            loaded = ((ExtendedStore) getStore()).loadAll(Arrays.asList(getStore().keys()));
+        } catch (IOException e) {
+            this.logger.error("Unable to load sessions from the store", e);
+            return;
+        }
+
+        for (Map.Entry<String, Session> entry : loaded.entrySet()) {
+            Session session = entry.getValue();
+
+            if (!session.isValid()) {
+                this.logger.error("Session {} loaded from the store is invalid", entry.getKey());
+                session.expire();
+                removeSession(entry.getKey());
+                continue;
+            }
+
+            session.setManager(this);
+            ((StandardSession) session).tellNew();
+            add(session);
+            ((StandardSession) session).activate();
+            session.access();
+            session.endAccess();
+        }
+    }
+
+    @Override
+    public void unload() {
+        if (!(getStore() instanceof ExtendedStore)) {
+            super.unload();
+            return;
+        }
+
+        List<Session> sessions = new ArrayList<>();
+        for (Session session : findSessions()) {
+            if (session.isValid()) {
+                sessions.add(session);
+            }
+        }
+
+        swapOut(sessions);
+    }
+
+    @Override
+    protected void processMaxIdleBackups() {
+        if (!(getStore() instanceof ExtendedStore)) {
+            super.processMaxIdleBackups();
+            return;
+        }
+
+        if (!getState().isAvailable() || getMaxIdleBackup() < 0) {
+            return;
+        }
+
+        List<Session> sessions = new ArrayList<>();
+        List<Long> lastAccessedTimes = new ArrayList<>();
+        for (Session candidate : findSessions()) {
+            StandardSession session = (StandardSession) candidate;
+
+            synchronized (session) {
+                if (!session.isValid()) {
+                    continue;
+                }
+
+                long lastAccessedTime = session.getLastAccessedTimeInternal();
+                Long persistedLastAccessedTime = (Long) session.getNote(PERSISTED_LAST_ACCESSED_TIME);
+                if (persistedLastAccessedTime != null && lastAccessedTime == persistedLastAccessedTime) {
+                    continue;
+                }
+
+                if (session.getIdleTimeInternal() / 1000L >= getMaxIdleBackup()) {
+                    sessions.add(session);
+                    lastAccessedTimes.add(lastAccessedTime);
+                }
+            }
+        }
+
+        if (sessions.isEmpty()) {
+            return;
+        }
+
+        try {
+            ((ExtendedStore) getStore()).saveAll(sessions);
+        } catch (IOException e) {
+            this.logger.error("Unable to back up {} idle sessions", sessions.size(), e);
+            return;
+        }
+
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).setNote(PERSISTED_LAST_ACCESSED_TIME, lastAccessedTimes.get(i));
+        }
+    }
+
+    @Override
+    protected void processMaxIdleSwaps() {
+        if (!(getStore() instanceof ExtendedStore)) {
+            super.processMaxIdleSwaps();
+            return;
+        }
+
+        if (!getState().isAvailable() || getMaxIdleSwap() < 0) {
+            return;
+        }
+
+        List<Session> sessions = new ArrayList<>();
+        for (Session candidate : findSessions()) {
+            StandardSession session = (StandardSession) candidate;
+
+            synchronized (session) {
+                if (!session.isValid()) {
+                    continue;
+                }
+
+                long timeIdle = session.getIdleTimeInternal() / 1000L;
+                if (timeIdle >= getMaxIdleSwap() && timeIdle >= getMinIdleSwap() && !isAccessed(session)) {
+                    sessions.add(session);
+                }
+            }
+        }
+
+        swapOut(sessions);
+    }
+
+    private static Field field(String name) {
+        try {
+            Field field = StandardSession.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isAccessed(StandardSession session) {
+        try {
+            AtomicInteger accessCount = (AtomicInteger) ACCESS_COUNT.get(session);
+            return accessCount != null && accessCount.get() > 0;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void swapOut(List<Session> sessions) {
+        List<StandardSession> passivated = new ArrayList<>(sessions.size());
+        List<Long> accessedTimes = new ArrayList<>(sessions.size());
+        Map<String, SessionMetadata> metadata = loadAllMetadata(sessions);
+
+        for (Session candidate : sessions) {
+            StandardSession session = (StandardSession) candidate;
+            SessionMetadata persisted = metadata.get(session.getIdInternal());
+
+            synchronized (session) {
+                if (persisted != null && persisted.getThisAccessedTime() > session.getThisAccessedTimeInternal() &&
+                        session.isValid() && !isAccessed(session)) {
+                    this.logger.debug("Session {} has been accessed elsewhere since it was saved. Discarding.",
+                            session.getIdInternal());
+                    session.passivate();
+                    removeSuper(session);
+                    session.recycle();
+                } else if (session.isValid() && !isAccessed(session)) {
+                    session.passivate();
+                    passivated.add(session);
+                    accessedTimes.add(session.getThisAccessedTimeInternal());
+                }
+            }
+        }
+
+        if (passivated.isEmpty()) {
+            return;
+        }
+
+        try {
+            ((ExtendedStore) getStore()).saveAll(new ArrayList<Session>(passivated));
+        } catch (IOException e) {
+            this.logger.warn("Unable to swap out {} sessions together. Swapping out individually.", passivated.size(),
+                    e);
+
+            for (int i = 0; i < passivated.size(); i++) {
+                StandardSession session = passivated.get(i);
+
+                synchronized (session) {
+                    session.activate();
+
+                    if (!isSwappable(session, accessedTimes.get(i))) {
+                        continue;
+                    }
+
+                    try {
+                        swapOut(session);
+                    } catch (IOException f) {
+                        this.logger.error("Unable to swap out session {}", session.getIdInternal(), f);
+                    }
+                }
+            }
+
+            return;
+        }
+
+        for (int i = 0; i < passivated.size(); i++) {
+            StandardSession session = passivated.get(i);
+
+            // The session may have been found by a request while it was being saved, and must then stay in memory
+            synchronized (session) {
+                if (!isSwappable(session, accessedTimes.get(i))) {
+                    session.activate();
+                    continue;
+                }
+
+                removeSuper(session);
+                session.recycle();
+            }
+        }
+    }
+
+    private Map<String, SessionMetadata> loadAllMetadata(List<Session> sessions) {
+        if (sessions.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<String> ids = new ArrayList<>(sessions.size());
+        for (Session session : sessions) {
+            ids.add(session.getIdInternal());
+        }
+
+        try {
+            return ((ExtendedStore) getStore()).loadAllMetadata(ids);
+        } catch (IOException e) {
+            this.logger.warn("Unable to load the metadata of {} sessions", ids.size(), e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private static boolean isSwappable(StandardSession session, long accessedTime) {
+        return session.isValid() && !isAccessed(session) && session.getThisAccessedTimeInternal() == accessedTime;
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.session.StandardSession;
+
+import javax.servlet.http.HttpSessionActivationListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link SessionSerializer} that writes a compact binary format.  The session's metadata is written as fixed-width
+ * fields, and attributes whose values are {@code String}s, boxed primitives or {@code byte[]}s are written directly.
+ * Only the values of other attributes are written using Java serialization, each independently of the others.
+ * Attributes whose values are not {@link Serializable} are not written.
+ * <p>
+ * When deserializing into a {@link LazySession}, Java serialized values are kept in their serialized form until they
+ * are first read, and values that are never read are written back without being serialized again.  Values that are
+ * {@link HttpSessionActivationListener}s are always deserialized immediately, so that they are notified when the
+ * session is activated.
+ */
+public final class BinarySessionSerializer implements SessionSerializer {
+
+    private static final byte FORMAT_VERSION = 2;
+
+    private static final byte TYPE_NULL = 0;
+
+    private static final byte TYPE_STRING = 1;
+
+    private static final byte TYPE_INTEGER = 2;
+
+    private static final byte TYPE_LONG = 3;
+
+    private static final byte TYPE_BOOLEAN = 4;
+
+    private static final byte TYPE_DOUBLE = 5;
+
+    private static final byte TYPE_BYTES = 6;
+
+    private static final byte TYPE_SERIALIZED = 7;
+
+    private static final byte TYPE_ACTIVATION_LISTENER = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final Field ATTRIBUTES = field("attributes");
+
+    static final Field ID = field("id");
+
+    static final Field IS_NEW = field("isNew");
+
+    static final Field IS_VALID = field("isValid");
+
+    static final Field LAST_ACCESSED_TIME = field("lastAccessedTime");
+
+    static final Field THIS_ACCESSED_TIME = field("thisAccessedTime");
+
+    @Override
+    public void serialize(Session session, OutputStream out) throws IOException {
+        StandardSession standardSession = (StandardSession) session;
+        DataOutputStream data = new DataOutputStream(out);
+
+        data.writeByte(FORMAT_VERSION);
+        data.writeLong(standardSession.getCreationTimeInternal());
+        data.writeLong(standardSession.getLastAccessedTimeInternal());
+        data.writeLong(standardSession.getThisAccessedTimeInternal());
+        data.writeInt(standardSession.getMaxInactiveInterval());
+        data.writeBoolean(getBoolean(IS_NEW, standardSession));
+        data.writeBoolean(getBoolean(IS_VALID, standardSession));
+        writeString(data, standardSession.getIdInternal());
+
+        List<Map.Entry<String, Object>> attributes = new ArrayList<>();
+        for (Map.Entry<String, Object> attribute : getAttributes(standardSession).entrySet()) {
+            if (attribute.getValue() instanceof Serializable || attribute.getValue() instanceof SerializedAttribute) {
+                attributes.add(attribute);
+            }
+        }
+
+        data.writeInt(attributes.size());
+        for (Map.Entry<String, Object> attribute : attributes) {
+            writeString(data, attribute.getKey());
+            writeValue(data, attribute.getValue());
+        }
+
+        data.flush();
+    }
+
+    @Override
+    public void deserialize(InputStream in, Session session) throws ClassNotFoundException, IOException {
+        StandardSession standardSession = (StandardSession) session;
+        DataInputStream data = new DataInputStream(in);
+
+        byte version = data.readByte();
+        if (version != 1 && version != FORMAT_VERSION) {
+            throw new IOException(String.format("Unsupported session format version %d", version));
+        }
+
+        standardSession.setCreationTime(data.readLong());
+        long lastAccessedTime = data.readLong();
+        long thisAccessedTime = data.readLong();
+        standardSession.setMaxInactiveInterval(data.readInt());
+        standardSession.setNew(data.readBoolean());
+        standardSession.setValid(data.readBoolean());
+        String id = readString(data);
+
+        boolean lazy = session instanceof LazySession;
+        int count = data.readInt();
+        Map<String, Object> attributes = getAttributes(standardSession);
+        for (int i = 0; i < count; i++) {
+            String name = readString(data);
+            Object value = readValue(data, lazy);
+
+            if (value != null) {
+                attributes.put(name, value);
+            }
+        }
+
+        try {
+            LAST_ACCESSED_TIME.setLong(standardSession, lastAccessedTime);
+            THIS_ACCESSED_TIME.setLong(standardSession, thisAccessedTime);
+            ID.set(standardSession, id);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Field field(String name) {
+        try {
+            Field field = StandardSession.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> getAttributes(StandardSession session) {
+        try {
+            return (Map<String, Object>) ATTRIBUTES.get(session);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static boolean getBoolean(Field field, StandardSession session) {
+        try {
+            return field.getBoolean(session);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream data) throws IOException {
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    static Object readValue(DataInputStream data, boolean lazy) throws ClassNotFoundException, IOException {
+        byte type = data.readByte();
+
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(data);
+            case TYPE_INTEGER:
+                return data.readInt();
+            case TYPE_LONG:
+                return data.readLong();
+            case TYPE_BOOLEAN:
+                return data.readBoolean();
+            case TYPE_DOUBLE:
+                return data.readDouble();
+            case TYPE_BYTES:
+                return readBytes(data);
+            case TYPE_SERIALIZED:
+                SerializedAttribute serialized = new SerializedAttribute(readBytes(data));
+                return lazy ? serialized : serialized.deserialize();
+            case TYPE_ACTIVATION_LISTENER:
+                return new SerializedAttribute(readBytes(data)).deserialize();
+            default:
+                throw new IOException(String.format("Unknown attribute type %d", type));
+        }
+    }
+
+    private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(-1);
+        } else {
+            writeBytes(data, value.getBytes(UTF_8));
+        }
+    }
+
+    static void writeValue(DataOutputStream data, Object value) throws IOException {
+        if (value == null) {
+            data.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            data.writeByte(TYPE_STRING);
+            writeString(data, (String) value);
+        } else if (value instanceof Integer) {
+            data.writeByte(TYPE_INTEGER);
+            data.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            data.writeByte(TYPE_LONG);
+            data.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            data.writeByte(TYPE_BOOLEAN);
+            data.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            data.writeByte(TYPE_DOUBLE);
+            data.writeDouble((Double) value);
+        } else if (value instanceof byte[]) {
+            data.writeByte(TYPE_BYTES);
+            writeBytes(data, (byte[]) value);
+        } else if (value instanceof SerializedAttribute) {
+            data.writeByte(TYPE_SERIALIZED);
+            writeBytes(data, ((SerializedAttribute) value).getBytes());
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(value);
+            }
+
+            data.writeByte(value instanceof HttpSessionActivationListener ? TYPE_ACTIVATION_LISTENER : TYPE_SERIALIZED);
+            writeBytes(data, bytes.toByteArray());
+        }
+    }
+
+}
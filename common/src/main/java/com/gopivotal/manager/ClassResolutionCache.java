@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of the classes resolved while deserializing sessions, and of the class names that could not be resolved.
+ * There is one cache per class loader, so each web application, and each reload of a web application, has its own.
+ * Neither the class loader nor the cached classes are strongly referenced, so a cache never prevents a web
+ * application's class loader from being collected, but caches should be invalidated with {@link
+ * #invalidate(ClassLoader)} when a web application is stopped.
+ */
+final class ClassResolutionCache {
+
+    private static final Map<ClassLoader, ClassResolutionCache> CACHES =
+            Collections.synchronizedMap(new WeakHashMap<ClassLoader, ClassResolutionCache>());
+
+    private static final Object MISSING = new Object();
+
+    private final ConcurrentMap<String, Object> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cache for a class loader, creating it if necessary
+     *
+     * @param classLoader the class loader
+     * @return the cache for the class loader
+     */
+    static ClassResolutionCache forClassLoader(ClassLoader classLoader) {
+        synchronized (CACHES) {
+            ClassResolutionCache cache = CACHES.get(classLoader);
+
+            if (cache == null) {
+                cache = new ClassResolutionCache();
+                CACHES.put(classLoader, cache);
+            }
+
+            return cache;
+        }
+    }
+
+    /**
+     * Discards the cache for a class loader
+     *
+     * @param classLoader the class loader
+     */
+    static void invalidate(ClassLoader classLoader) {
+        CACHES.remove(classLoader);
+    }
+
+    /**
+     * Returns a cached class
+     *
+     * @param name the name of the class
+     * @return the class, or {@code null} if the name is not cached
+     * @throws ClassNotFoundException if the name is cached as not resolvable
+     */
+    Class<?> get(String name) throws ClassNotFoundException {
+        Object value = this.classes.get(name);
+
+        if (value == MISSING) {
+            throw new ClassNotFoundException(name);
+        }
+
+        return value == null ? null : (Class<?>) ((WeakReference<?>) value).get();
+    }
+
+    /**
+     * Caches a resolved class
+     *
+     * @param name  the name the class was resolved by
+     * @param clazz the class
+     */
+    void put(String name, Class<?> clazz) {
+        this.classes.put(name, new WeakReference<>(clazz));
+    }
+
+    /**
+     * Caches a class name as not resolvable
+     *
+     * @param name the name of the class
+     */
+    void putMissing(String name) {
+        this.classes.put(name, MISSING);
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * An {@link ObjectInputStream} that resolves classes using the thread context class loader, falling back to the
+ * default resolution.  Resolved classes, and names that could not be resolved, are cached per class loader in a {@link
+ * ClassResolutionCache}.
+ */
+final class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+
+    private final ClassResolutionCache cache;
+
+    private final ClassLoader classLoader;
+
+    ContextClassLoaderObjectInputStream(InputStream in) throws IOException {
+        super(in);
+        this.classLoader = Thread.currentThread().getContextClassLoader();
+        this.cache = ClassResolutionCache.forClassLoader(this.classLoader);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        String name = desc.getName();
+
+        Class<?> clazz = this.cache.get(name);
+        if (clazz != null) {
+            return clazz;
+        }
+
+        try {
+            clazz = Class.forName(name, false, this.classLoader);
+        } catch (ClassNotFoundException cnfe) {
+            try {
+                clazz = super.resolveClass(desc);
+            } catch (ClassNotFoundException e) {
+                this.cache.putMissing(name);
+                throw e;
+            }
+        }
+
+        this.cache.put(name, clazz);
+        return clazz;
+    }
+
+}
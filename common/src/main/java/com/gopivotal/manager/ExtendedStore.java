@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.Store;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link Store} that supports the additional operations used by the {@link SessionFlushValve}, and reading the
+ * metadata of persisted sessions without loading them
+ */
+public interface ExtendedStore extends Store {
+
+    /**
+     * Returns the maximum number of {@link Session}s a single batched write is sent in
+     *
+     * @return the maximum number of {@link Session}s a single batched write is sent in
+     */
+    int getBatchSize();
+
+    /**
+     * Loads a collection of {@link Session}s.  Implementations should batch the reads rather than loading each session
+     * individually.
+     *
+     * @param ids the ids of the {@link Session}s to load
+     * @return the loaded {@link Session}s, keyed by id.  Sessions that are not persisted or cannot be read are absent.
+     * @throws IOException if an input/output error occurs
+     */
+    Map<String, Session> loadAll(Collection<String> ids) throws IOException;
+
+    /**
+     * Loads the metadata of a collection of persisted {@link Session}s without loading the sessions themselves.
+     * Implementations should batch the reads rather than reading the metadata of each session individually.
+     *
+     * @param ids the ids of the {@link Session}s
+     * @return the metadata of the {@link Session}s, keyed by id.  Sessions that are not persisted or whose metadata
+     * cannot be read are absent.
+     * @throws IOException if an input/output error occurs
+     */
+    Map<String, SessionMetadata> loadAllMetadata(Collection<String> ids) throws IOException;
+
+    /**
+     * Loads the metadata of a persisted {@link Session} without loading the session itself.  Implementations should
+     * read the metadata without reading or deserializing the session's attributes.
+     *
+     * @param id the id of the {@link Session}
+     * @return the metadata of the {@link Session}, or {@code null} if the session is not persisted
+     * @throws IOException if an input/output error occurs
+     */
+    SessionMetadata loadMetadata(String id) throws IOException;
+
+    /**
+     * Saves a collection of {@link Session}s.  Implementations should batch the writes rather than saving each session
+     * individually.
+     *
+     * @param sessions the {@link Session}s to save
+     * @throws IOException if an input/output error occurs, or if any of the {@link Session}s could not be saved
+     */
+    void saveAll(Collection<Session> sessions) throws IOException;
+
+    /**
+     * Records that a {@link Session} has been accessed without changing its persisted contents.  Implementations
+     * should extend the lifetime of the persisted session without serializing it again, and should fall back to {@link
+     * #save(Session)} if the session is no longer persisted.
+     *
+     * @param session the {@link Session} that has been accessed
+     * @throws IOException if an input/output error occurs
+     */
+    void touch(Session session) throws IOException;
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.session.StandardSession;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * The default {@link SessionSerializer}, which uses Java serialization via {@link
+ * StandardSession#writeObjectData(ObjectOutputStream)} and {@link StandardSession#readObjectData(ObjectInputStream)}.
+ * The format is the same as Tomcat's own session persistence.
+ */
+public final class JavaSessionSerializer implements SessionSerializer {
+
+    @Override
+    public void serialize(Session session, OutputStream out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        ((StandardSession) session).writeObjectData(objectOut);
+        objectOut.flush();
+    }
+
+    @Override
+    public void deserialize(InputStream in, Session session) throws ClassNotFoundException, IOException {
+        ((StandardSession) session).readObjectData(new ContextClassLoaderObjectInputStream(in));
+    }
+
+}
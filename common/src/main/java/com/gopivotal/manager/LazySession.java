@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Globals;
+import org.apache.catalina.Manager;
+import org.apache.catalina.session.StandardSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * A {@link StandardSession} whose attribute values may be held in their serialized form and are only deserialized when
+ * first read.  {@link BinarySessionSerializer} loads attributes into a {@code LazySession} without deserializing them,
+ * and writes attributes that were never read back out verbatim.  Attributes are also deserialized before they are
+ * replaced or removed, so that binding and attribute listeners receive their values.
+ */
+public final class LazySession extends StandardSession {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazySession.class);
+
+    /**
+     * Creates a new instance
+     *
+     * @param manager the manager the session belongs to
+     */
+    public LazySession(Manager manager) {
+        super(manager);
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        Object value = super.getAttribute(name);
+        return value instanceof SerializedAttribute ? deserialize(name, (SerializedAttribute) value) : value;
+    }
+
+    @Override
+    public void setAttribute(String name, Object value, boolean notify) {
+        if (notify) {
+            deserialize(name);
+        }
+
+        super.setAttribute(name, value, notify);
+    }
+
+    /**
+     * Returns whether an attribute's value has been deserialized
+     *
+     * @param name the name of the attribute
+     * @return {@code false} if the attribute's value is still held in its serialized form, otherwise {@code true}
+     */
+    boolean isDeserialized(String name) {
+        return !(this.attributes.get(name) instanceof SerializedAttribute);
+    }
+
+    @Override
+    protected void doWriteObject(ObjectOutputStream stream) throws IOException {
+        for (String name : keys()) {
+            deserialize(name);
+        }
+
+        super.doWriteObject(stream);
+    }
+
+    @Override
+    protected void removeAttributeInternal(String name, boolean notify) {
+        if (notify) {
+            deserialize(name);
+        }
+
+        super.removeAttributeInternal(name, notify);
+    }
+
+    private void deserialize(String name) {
+        Object value = this.attributes.get(name);
+
+        if (value instanceof SerializedAttribute) {
+            deserialize(name, (SerializedAttribute) value);
+        }
+    }
+
+    private Object deserialize(String name, SerializedAttribute serialized) {
+        Context context = this.manager.getContext();
+        boolean bound = SessionSerializationUtils.isBound(context);
+        ClassLoader oldThreadContextCL = bound ? null : context.bind(Globals.IS_SECURITY_ENABLED, null);
+
+        Object value;
+        try {
+            value = serialized.deserialize();
+        } catch (ClassNotFoundException | IOException e) {
+            LOGGER.warn("Unable to deserialize attribute {} of session {}. Attribute removed.", name, getIdInternal(),
+                    e);
+            this.attributes.remove(name, serialized);
+            return null;
+        } finally {
+            if (!bound) {
+                context.unbind(Globals.IS_SECURITY_ENABLED, oldThreadContextCL);
+            }
+        }
+
+        if (this.attributes.replace(name, serialized, value)) {
+            return value;
+        }
+
+        // Deserialized, replaced or removed concurrently
+        Object current = this.attributes.get(name);
+        return current instanceof SerializedAttribute ? deserialize(name, (SerializedAttribute) current) : current;
+    }
+
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+/**
+ * A marker interface for session attribute values that may be modified in place.  When dirty tracking is enabled on
+ * the {@link SessionFlushValve}, a session holding an attribute that implements this interface is persisted after
+ * every request, whether or not any of its attributes were set or removed.
+ */
+public interface MutableSessionAttribute {
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link OutputStream} that collects written bytes in a list of fixed-size segments.  Unlike a {@link
+ * java.io.ByteArrayOutputStream}, growing the buffer never copies the bytes already written and never allocates an
+ * array larger than a segment.  One buffer is retained per thread and reused by subsequent serializations on that
+ * thread.  A buffer that grows past the size it may retain, {@link #DEFAULT_MAX_RETAINED_SIZE} unless otherwise
+ * specified when it is acquired, releases the extra segments when it is released.
+ */
+final class SerializationBuffer extends OutputStream {
+
+    static final int DEFAULT_MAX_RETAINED_SIZE = 256 * 1024;
+
+    static final int SEGMENT_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<SerializationBuffer> BUFFERS = new ThreadLocal<SerializationBuffer>() {
+
+        @Override
+        protected SerializationBuffer initialValue() {
+            return new SerializationBuffer();
+        }
+
+    };
+
+    private final List<byte[]> segments = new ArrayList<>();
+
+    private boolean inUse = false;
+
+    private int maxRetainedSegments = DEFAULT_MAX_RETAINED_SIZE / SEGMENT_SIZE;
+
+    private int position = 0;
+
+    private int segment = 0;
+
+    /**
+     * Returns an empty buffer, reusing the current thread's buffer if it is not already in use
+     *
+     * @return an empty buffer
+     */
+    static SerializationBuffer acquire() {
+        return acquire(DEFAULT_MAX_RETAINED_SIZE);
+    }
+
+    /**
+     * Returns an empty buffer, reusing the current thread's buffer if it is not already in use
+     *
+     * @param maxRetainedSize the maximum number of bytes of segments the buffer keeps once it is released
+     * @return an empty buffer
+     */
+    static SerializationBuffer acquire(int maxRetainedSize) {
+        SerializationBuffer buffer = BUFFERS.get();
+
+        if (buffer.inUse) {
+            buffer = new SerializationBuffer();
+        }
+
+        buffer.inUse = true;
+        buffer.maxRetainedSegments = Math.max(maxRetainedSize, 0) / SEGMENT_SIZE;
+        return buffer;
+    }
+
+    /**
+     * Returns the number of bytes of segments allocated by the buffer
+     *
+     * @return the number of bytes of segments allocated by the buffer
+     */
+    int capacity() {
+        return this.segments.size() * SEGMENT_SIZE;
+    }
+
+    /**
+     * Resets the buffer and makes it available to be acquired again, releasing the segments beyond the size it may
+     * retain
+     */
+    void release() {
+        while (this.segments.size() > this.maxRetainedSegments) {
+            this.segments.remove(this.segments.size() - 1);
+        }
+
+        this.segment = 0;
+        this.position = 0;
+        this.inUse = false;
+    }
+
+    /**
+     * Returns the number of bytes written to the buffer
+     *
+     * @return the number of bytes written to the buffer
+     */
+    int size() {
+        return this.segment * SEGMENT_SIZE + this.position;
+    }
+
+    /**
+     * Returns a copy of the bytes written to the buffer
+     *
+     * @return a copy of the bytes written to the buffer
+     */
+    byte[] toByteArray() {
+        byte[] bytes = new byte[size()];
+
+        int offset = 0;
+        for (int i = 0; i <= this.segment && i < this.segments.size(); i++) {
+            int length = i == this.segment ? this.position : SEGMENT_SIZE;
+            System.arraycopy(this.segments.get(i), 0, bytes, offset, length);
+            offset += length;
+        }
+
+        return bytes;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureSegment();
+        this.segments.get(this.segment)[this.position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            ensureSegment();
+
+            int length = Math.min(len, SEGMENT_SIZE - this.position);
+            System.arraycopy(b, off, this.segments.get(this.segment), this.position, length);
+
+            this.position += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    /**
+     * Writes the bytes written to the buffer to another stream, without copying them
+     *
+     * @param out the stream to write to
+     * @throws IOException if the bytes cannot be written
+     */
+    void writeTo(OutputStream out) throws IOException {
+        for (int i = 0; i <= this.segment && i < this.segments.size(); i++) {
+            out.write(this.segments.get(i), 0, i == this.segment ? this.position : SEGMENT_SIZE);
+        }
+    }
+
+    private void ensureSegment() {
+        if (this.position == SEGMENT_SIZE) {
+            this.segment++;
+            this.position = 0;
+        }
+
+        if (this.segment == this.segments.size()) {
+            this.segments.add(new byte[SEGMENT_SIZE]);
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+/**
+ * The value of a session attribute in its Java serialized form.  Held in place of the value by a {@link LazySession}
+ * until the attribute is first read.  Deliberately not {@link java.io.Serializable}, so that it is never mistaken for
+ * an attribute value.
+ */
+final class SerializedAttribute {
+
+    private final byte[] bytes;
+
+    SerializedAttribute(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns the serialized form of the value
+     *
+     * @return the serialized form of the value
+     */
+    byte[] getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Deserializes the value, resolving classes using the thread context class loader
+     *
+     * @return the value
+     * @throws ClassNotFoundException if a class of the value cannot be resolved
+     * @throws IOException            if the value cannot be deserialized
+     */
+    Object deserialize() throws ClassNotFoundException, IOException {
+        try (ObjectInputStream in = new ContextClassLoaderObjectInputStream(new ByteArrayInputStream(this.bytes))) {
+            return in.readObject();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A serialized, and possibly compressed, {@link org.apache.catalina.Session} held in a reusable buffer.  The serialized
+ * form can be written to a stream without first being copied into a {@code byte[]}.  Instances must be closed once the
+ * serialized form has been written, so that the buffer can be reused, and must not be used after being closed.
+ */
+public final class SerializedSession implements Closeable {
+
+    private final SerializationBuffer buffer;
+
+    private final byte[] bytes;
+
+    SerializedSession(SerializationBuffer buffer) {
+        this.buffer = buffer;
+        this.bytes = null;
+    }
+
+    SerializedSession(SerializationBuffer buffer, byte[] bytes) {
+        this.buffer = buffer;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns the length of the serialized form
+     *
+     * @return the length of the serialized form, in bytes
+     */
+    public int getLength() {
+        return this.bytes != null ? this.bytes.length : this.buffer.size();
+    }
+
+    /**
+     * Returns a copy of the serialized form
+     *
+     * @return a copy of the serialized form
+     */
+    public byte[] toByteArray() {
+        return this.bytes != null ? this.bytes : this.buffer.toByteArray();
+    }
+
+    /**
+     * Writes the serialized form to a stream
+     *
+     * @param out the stream to write to
+     * @throws IOException if the serialized form cannot be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (this.bytes != null) {
+            out.write(this.bytes);
+        } else {
+            this.buffer.writeTo(out);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.buffer.release();
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionAttributeListener;
+import javax.servlet.http.HttpSessionBindingEvent;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link HttpSessionAttributeListener} that records, as a note on the {@link Session}, which attributes have been
+ * set or removed since the session was last persisted.  A session is considered changed if any attribute has been set
+ * or removed, if its maximum inactive interval differs from the one last persisted, if it has not yet been persisted
+ * by this instance, or if it holds a {@link MutableSessionAttribute}.  Setting an attribute to the value it already
+ * holds marks it as changed.
+ */
+public final class SessionChangeTracker implements HttpSessionAttributeListener {
+
+    private static final String CHANGED_ATTRIBUTES_NOTE = SessionChangeTracker.class.getName() + ".CHANGED_ATTRIBUTES";
+
+    private static final String CHANGED_FIELDS_NOTE = SessionChangeTracker.class.getName() + ".CHANGED_FIELDS";
+
+    private static final String PERSISTED_MAX_INACTIVE_INTERVAL_NOTE = SessionChangeTracker.class.getName() +
+            ".PERSISTED_MAX_INACTIVE_INTERVAL";
+
+    private final Context context;
+
+    private final Logger logger = LoggerFactory.getLogger(SessionChangeTracker.class);
+
+    /**
+     * Creates a new instance
+     *
+     * @param context the context whose sessions are tracked
+     */
+    public SessionChangeTracker(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns the names of the attributes that have been set or removed since the {@link Session} was last persisted
+     *
+     * @param session the {@link Session}
+     * @return the names of the attributes that have been set or removed since the {@link Session} was last persisted
+     */
+    @SuppressWarnings("unchecked")
+    public static Set<String> getChangedAttributeNames(Session session) {
+        Set<String> names = (Set<String>) session.getNote(CHANGED_ATTRIBUTES_NOTE);
+        return names == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(new HashSet<>(names));
+    }
+
+    /**
+     * Returns the names of the attributes that have been set or removed since the {@link Session} was last persisted
+     * as fields.  Unlike {@link #getChangedAttributeNames(Session)}, these are not discarded by {@link
+     * #markPersisted(Session)} but only once the fields have been written.
+     *
+     * @param session the {@link Session}
+     * @return the names of the attributes that have been set or removed since the {@link Session} was last persisted as
+     * fields, or {@code null} if changes to the {@link Session} are not being tracked
+     */
+    @SuppressWarnings("unchecked")
+    static Set<String> getChangedFieldNames(Session session) {
+        Set<String> names = (Set<String>) session.getNote(CHANGED_FIELDS_NOTE);
+        return names == null ? null : new HashSet<>(names);
+    }
+
+    /**
+     * Returns whether a {@link Session} has changed since it was last persisted
+     *
+     * @param session the {@link Session}
+     * @return {@code true} if the {@link Session} has changed since it was last persisted, {@code false} otherwise
+     */
+    public static boolean isChanged(Session session) {
+        if (session.getNote(CHANGED_ATTRIBUTES_NOTE) != null) {
+            return true;
+        }
+
+        Object persistedMaxInactiveInterval = session.getNote(PERSISTED_MAX_INACTIVE_INTERVAL_NOTE);
+        if (persistedMaxInactiveInterval == null ||
+                (Integer) persistedMaxInactiveInterval != session.getMaxInactiveInterval()) {
+            return true;
+        }
+
+        return hasMutableAttribute(session);
+    }
+
+    /**
+     * Marks an attribute of a {@link Session} as changed
+     *
+     * @param session the {@link Session}
+     * @param name    the name of the attribute that has changed
+     */
+    @SuppressWarnings("unchecked")
+    public static void markChanged(Session session, String name) {
+        synchronized (session) {
+            Set<String> names = (Set<String>) session.getNote(CHANGED_ATTRIBUTES_NOTE);
+
+            if (names == null) {
+                names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                session.setNote(CHANGED_ATTRIBUTES_NOTE, names);
+            }
+
+            names.add(name);
+            getChangedFields(session).add(name);
+        }
+    }
+
+    /**
+     * Marks the attributes of a {@link Session} as persisted as fields, discarding the recorded changes to them.
+     * Changes recorded for other attributes, for example while the fields were being written, are kept.
+     *
+     * @param session the {@link Session}
+     * @param names   the names of the attributes that have been persisted
+     */
+    @SuppressWarnings("unchecked")
+    static void markFieldsPersisted(Session session, Set<String> names) {
+        synchronized (session) {
+            Set<String> changed = (Set<String>) session.getNote(CHANGED_FIELDS_NOTE);
+
+            if (changed != null) {
+                changed.removeAll(names);
+            }
+        }
+    }
+
+    /**
+     * Marks a {@link Session} as persisted, discarding any recorded changes.  This should be called before the session
+     * is serialized so that changes made while it is being persisted are not lost.
+     *
+     * @param session the {@link Session}
+     */
+    public static void markPersisted(Session session) {
+        synchronized (session) {
+            session.removeNote(CHANGED_ATTRIBUTES_NOTE);
+            session.setNote(PERSISTED_MAX_INACTIVE_INTERVAL_NOTE, session.getMaxInactiveInterval());
+        }
+    }
+
+    /**
+     * Marks a {@link Session} as not persisted, so that it is considered changed until it is next persisted.  This
+     * should be called when a save that followed {@link #markPersisted(Session)} has failed.
+     *
+     * @param session the {@link Session}
+     */
+    public static void markUnpersisted(Session session) {
+        synchronized (session) {
+            session.removeNote(PERSISTED_MAX_INACTIVE_INTERVAL_NOTE);
+        }
+    }
+
+    /**
+     * Marks a {@link Session} as tracked, so that the attributes that have not been set or removed since it was last
+     * persisted as fields need not be encoded to find out whether they have changed
+     *
+     * @param session the {@link Session}
+     */
+    static void track(Session session) {
+        synchronized (session) {
+            getChangedFields(session);
+        }
+    }
+
+    @Override
+    public void attributeAdded(HttpSessionBindingEvent event) {
+        markChanged(event);
+    }
+
+    @Override
+    public void attributeRemoved(HttpSessionBindingEvent event) {
+        markChanged(event);
+    }
+
+    @Override
+    public void attributeReplaced(HttpSessionBindingEvent event) {
+        markChanged(event);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> getChangedFields(Session session) {
+        Set<String> names = (Set<String>) session.getNote(CHANGED_FIELDS_NOTE);
+
+        if (names == null) {
+            names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            session.setNote(CHANGED_FIELDS_NOTE, names);
+        }
+
+        return names;
+    }
+
+    private static boolean hasMutableAttribute(Session session) {
+        HttpSession httpSession = session.getSession();
+
+        try {
+            for (Enumeration<String> names = httpSession.getAttributeNames(); names.hasMoreElements(); ) {
+                String name = names.nextElement();
+
+                // An attribute that has not been deserialized cannot have been mutated
+                if (session instanceof LazySession && !((LazySession) session).isDeserialized(name)) {
+                    continue;
+                }
+
+                if (httpSession.getAttribute(name) instanceof MutableSessionAttribute) {
+                    return true;
+                }
+            }
+        } catch (IllegalStateException e) {
+            // Session invalidated concurrently, nothing left to persist
+        }
+
+        return false;
+    }
+
+    private void markChanged(HttpSessionBindingEvent event) {
+        String id = event.getSession().getId();
+
+        try {
+            Session session = this.context.getManager().findSession(id);
+
+            if (session != null) {
+                markChanged(session, event.getName());
+            }
+        } catch (IOException e) {
+            this.logger.warn("Unable to record change to attribute {} of session {}", event.getName(), id, e);
+        }
+    }
+
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.iq80.snappy.CorruptionException;
+import org.iq80.snappy.Snappy;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional compression of serialized sessions.  A compressed session is prefixed with a header byte identifying the
+ * algorithm used, so compressed and uncompressed sessions can be read interchangeably regardless of the configured
+ * algorithm.  Sessions smaller than the minimum size, or that do not get smaller when compressed, are left
+ * uncompressed.  Serialized sessions must therefore not begin with one of the header bytes; neither Java serialization
+ * nor {@link BinarySessionSerializer} output does.
+ */
+public final class SessionCompression {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    private final AtomicLong compressionTime = new AtomicLong();
+
+    private final AtomicLong decompressionTime = new AtomicLong();
+
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+
+    private volatile Algorithm algorithm = Algorithm.NONE;
+
+    private volatile int minSize = 1024;
+
+    /**
+     * Compresses a serialized session if compression is enabled and the session is at least the minimum size
+     *
+     * @param data the serialized session
+     * @return the compressed session with a header byte, or {@code data} if the session was not compressed
+     */
+    public byte[] compress(byte[] data) {
+        Algorithm algorithm = this.algorithm;
+        if (algorithm == Algorithm.NONE || data.length < this.minSize) {
+            return data;
+        }
+
+        long start = cpuTime();
+        byte[] compressed = algorithm.compress(data);
+        this.compressionTime.addAndGet(cpuTime() - start);
+
+        byte[] result = compressed.length < data.length ? compressed : data;
+        this.uncompressedBytes.addAndGet(data.length);
+        this.compressedBytes.addAndGet(result.length);
+
+        return result;
+    }
+
+    /**
+     * Decompresses a serialized session if it begins with a compression header byte
+     *
+     * @param data the possibly compressed serialized session
+     * @return the uncompressed serialized session
+     * @throws IOException if the compressed session is corrupt
+     */
+    public byte[] decompress(byte[] data) throws IOException {
+        Algorithm algorithm = data.length == 0 ? null : Algorithm.forHeader(data[0]);
+        if (algorithm == null) {
+            return data;
+        }
+
+        long start = cpuTime();
+        try {
+            return algorithm.decompress(data);
+        } finally {
+            this.decompressionTime.addAndGet(cpuTime() - start);
+        }
+    }
+
+    /**
+     * Returns the compression algorithm
+     *
+     * @return the compression algorithm
+     */
+    public Algorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * Sets the compression algorithm
+     *
+     * @param algorithm the compression algorithm
+     */
+    public void setAlgorithm(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Returns the ratio of the size of sessions before compression to their size after compression, for all sessions
+     * that were large enough to be compressed
+     *
+     * @return the compression ratio, or {@code 1.0} if no sessions have been compressed
+     */
+    public double getCompressionRatio() {
+        long compressed = this.compressedBytes.get();
+        return compressed == 0 ? 1.0 : (double) this.uncompressedBytes.get() / compressed;
+    }
+
+    /**
+     * Returns the total CPU time spent compressing sessions
+     *
+     * @return the total CPU time spent compressing sessions, in milliseconds
+     */
+    public long getCompressionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(this.compressionTime.get());
+    }
+
+    /**
+     * Returns the total CPU time spent decompressing sessions
+     *
+     * @return the total CPU time spent decompressing sessions, in milliseconds
+     */
+    public long getDecompressionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(this.decompressionTime.get());
+    }
+
+    /**
+     * Returns the minimum size of a serialized session for it to be compressed
+     *
+     * @return the minimum size of a serialized session for it to be compressed, in bytes
+     */
+    public int getMinSize() {
+        return this.minSize;
+    }
+
+    /**
+     * Sets the minimum size of a serialized session for it to be compressed
+     *
+     * @param minSize the minimum size of a serialized session for it to be compressed, in bytes
+     */
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    /**
+     * Returns whether a serialized session of the given length would be compressed
+     *
+     * @param length the length of the serialized session, in bytes
+     * @return {@code true} if compression is enabled and the session is at least the minimum size, otherwise {@code
+     * false}
+     */
+    boolean isCompressible(int length) {
+        return this.algorithm != Algorithm.NONE && length >= this.minSize;
+    }
+
+    private static long cpuTime() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() :
+                System.nanoTime();
+    }
+
+    /**
+     * The algorithms that sessions can be compressed with
+     */
+    public enum Algorithm {
+
+        /**
+         * Sessions are not compressed
+         */
+        NONE((byte) 0) {
+            @Override
+            byte[] compress(byte[] data) {
+                return data;
+            }
+
+            @Override
+            byte[] decompress(byte[] data) {
+                return data;
+            }
+        },
+
+        /**
+         * Sessions are compressed with Deflate, which is slower than {@link #SNAPPY} but gives better compression
+         */
+        DEFLATE((byte) 0xF1) {
+            @Override
+            byte[] compress(byte[] data) {
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+                try {
+                    deflater.setInput(data);
+                    deflater.finish();
+
+                    ByteBuffer out = ByteBuffer.allocate(5 + data.length);
+                    out.put(getHeader()).putInt(data.length);
+
+                    int length = deflater.deflate(out.array(), out.position(), out.remaining());
+                    if (!deflater.finished()) {
+                        return data;
+                    }
+
+                    byte[] compressed = new byte[out.position() + length];
+                    System.arraycopy(out.array(), 0, compressed, 0, compressed.length);
+                    return compressed;
+                } finally {
+                    deflater.end();
+                }
+            }
+
+            @Override
+            byte[] decompress(byte[] data) throws IOException {
+                Inflater inflater = new Inflater(true);
+
+                try {
+                    ByteBuffer in = ByteBuffer.wrap(data, 1, data.length - 1);
+                    byte[] uncompressed = new byte[in.getInt()];
+
+                    inflater.setInput(data, in.position(), in.remaining());
+                    if (inflater.inflate(uncompressed) != uncompressed.length) {
+                        throw new IOException("Compressed session is truncated");
+                    }
+
+                    return uncompressed;
+                } catch (DataFormatException e) {
+                    throw new IOException("Compressed session is corrupt", e);
+                } finally {
+                    inflater.end();
+                }
+            }
+        },
+
+        /**
+         * Sessions are compressed with Snappy, a fast LZ77-family compressor
+         */
+        SNAPPY((byte) 0xF2) {
+            @Override
+            byte[] compress(byte[] data) {
+                byte[] compressed = new byte[1 + Snappy.maxCompressedLength(data.length)];
+                compressed[0] = getHeader();
+
+                int length = Snappy.compress(data, 0, data.length, compressed, 1);
+
+                byte[] result = new byte[1 + length];
+                System.arraycopy(compressed, 0, result, 0, result.length);
+                return result;
+            }
+
+            @Override
+            byte[] decompress(byte[] data) throws IOException {
+                try {
+                    return Snappy.uncompress(data, 1, data.length - 1);
+                } catch (CorruptionException e) {
+                    throw new IOException("Compressed session is corrupt", e);
+                }
+            }
+        };
+
+        private final byte header;
+
+        Algorithm(byte header) {
+            this.header = header;
+        }
+
+        abstract byte[] compress(byte[] data);
+
+        abstract byte[] decompress(byte[] data) throws IOException;
+
+        byte getHeader() {
+            return this.header;
+        }
+
+        static Algorithm forHeader(byte header) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm != NONE && algorithm.header == header) {
+                    return algorithm;
+                }
+            }
+
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.session.StandardSession;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts {@link Session}s to and from a set of named fields: one for each item of metadata and one for each
+ * attribute.  Attribute values are encoded as by {@link BinarySessionSerializer}.  A digest of each attribute is kept
+ * in a note on the session, so that only the attributes that have changed since the session was last persisted need to
+ * be written.  When the {@link SessionChangeTracker} is tracking the session, only the attributes that it has recorded
+ * as set or removed and any {@link MutableSessionAttribute}s are encoded to compare their digests.
+ */
+public final class SessionFields {
+
+    /**
+     * The prefix of the fields that hold attributes
+     */
+    public static final String ATTRIBUTE_PREFIX = "attribute:";
+
+    /**
+     * The field that holds the creation time
+     */
+    public static final String CREATION_TIME = "creationTime";
+
+    /**
+     * The field that holds the id
+     */
+    public static final String ID = "id";
+
+    /**
+     * The field that holds the new flag
+     */
+    public static final String IS_NEW = "isNew";
+
+    /**
+     * The field that holds the valid flag
+     */
+    public static final String IS_VALID = "isValid";
+
+    /**
+     * The field that holds the last accessed time
+     */
+    public static final String LAST_ACCESSED_TIME = "lastAccessedTime";
+
+    /**
+     * The field that holds the maximum inactive interval
+     */
+    public static final String MAX_INACTIVE_INTERVAL = "maxInactiveInterval";
+
+    /**
+     * The field that holds the this accessed time
+     */
+    public static final String THIS_ACCESSED_TIME = "thisAccessedTime";
+
+    private static final String PERSISTED_NOTE = SessionFields.class.getName() + ".PERSISTED";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private SessionFields() {
+    }
+
+    /**
+     * Encodes the fields of a {@link Session} that have changed since it was last persisted.  If the session has not
+     * been persisted as fields, or if {@code replace} is {@code true}, all fields are encoded and the returned {@link
+     * Delta} replaces any existing fields.
+     *
+     * @param session            the session to encode
+     * @param sessionCompression the compression to apply to attribute values
+     * @param replace            whether to encode all fields regardless of what has changed
+     * @return the changed fields
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    static Delta diff(Session session, SessionCompression sessionCompression, boolean replace) throws IOException {
+        StandardSession standardSession = (StandardSession) session;
+        Map<String, ByteBuffer> previous = replace ? null : (Map<String, ByteBuffer>) session.getNote(PERSISTED_NOTE);
+        Set<String> changedNames = SessionChangeTracker.getChangedFieldNames(session);
+
+        Map<String, byte[]> changed = new LinkedHashMap<>();
+        changed.put(ID, encode(standardSession.getIdInternal()));
+        changed.put(CREATION_TIME, encode(standardSession.getCreationTimeInternal()));
+        changed.put(LAST_ACCESSED_TIME, encode(standardSession.getLastAccessedTimeInternal()));
+        changed.put(THIS_ACCESSED_TIME, encode(standardSession.getThisAccessedTimeInternal()));
+        changed.put(MAX_INACTIVE_INTERVAL, encode(standardSession.getMaxInactiveInterval()));
+        changed.put(IS_NEW, encode(BinarySessionSerializer.getBoolean(BinarySessionSerializer.IS_NEW,
+                standardSession)));
+        changed.put(IS_VALID, encode(BinarySessionSerializer.getBoolean(BinarySessionSerializer.IS_VALID,
+                standardSession)));
+
+        Map<String, ByteBuffer> persisted = new HashMap<>();
+        for (Map.Entry<String, Object> attribute : BinarySessionSerializer.getAttributes(standardSession).entrySet()) {
+            String field = ATTRIBUTE_PREFIX + attribute.getKey();
+            Object value = attribute.getValue();
+
+            // An attribute that has never been deserialized cannot have changed
+            if (value instanceof SerializedAttribute && previous != null && previous.containsKey(field)) {
+                persisted.put(field, previous.get(field));
+                continue;
+            }
+
+            if (!(value instanceof Serializable || value instanceof SerializedAttribute)) {
+                continue;
+            }
+
+            // An attribute that has not been set or removed, and cannot be modified in place, has not changed
+            if (changedNames != null && !changedNames.contains(attribute.getKey()) &&
+                    !(value instanceof MutableSessionAttribute) && previous != null && previous.containsKey(field)) {
+                persisted.put(field, previous.get(field));
+                continue;
+            }
+
+            byte[] bytes = encodeValue(value);
+            ByteBuffer digest = digest(bytes);
+            persisted.put(field, digest);
+
+            if (previous == null || !digest.equals(previous.get(field))) {
+                changed.put(field, sessionCompression.compress(bytes));
+            }
+        }
+
+        Set<String> removed = new HashSet<>();
+        if (previous != null) {
+            removed.addAll(previous.keySet());
+            removed.removeAll(persisted.keySet());
+        }
+
+        return new Delta(session, changed, removed, previous == null, persisted, changedNames);
+    }
+
+    /**
+     * Decodes the fields of a {@link Session}
+     *
+     * @param fields             the fields to decode
+     * @param session            the empty session to decode into
+     * @param sessionCompression the compression applied to attribute values
+     * @throws ClassNotFoundException
+     * @throws IOException if the fields are not a complete session
+     */
+    static void read(Map<String, byte[]> fields, Session session, SessionCompression sessionCompression)
+            throws ClassNotFoundException, IOException {
+        StandardSession standardSession = (StandardSession) session;
+
+        standardSession.setCreationTime(decodeLong(fields, CREATION_TIME));
+        standardSession.setMaxInactiveInterval((int) decodeLong(fields, MAX_INACTIVE_INTERVAL));
+        standardSession.setNew(Boolean.parseBoolean(decodeString(fields, IS_NEW)));
+        standardSession.setValid(Boolean.parseBoolean(decodeString(fields, IS_VALID)));
+
+        boolean lazy = session instanceof LazySession;
+        Map<String, Object> attributes = BinarySessionSerializer.getAttributes(standardSession);
+        Map<String, ByteBuffer> persisted = new HashMap<>();
+        for (Map.Entry<String, byte[]> field : fields.entrySet()) {
+            if (!field.getKey().startsWith(ATTRIBUTE_PREFIX)) {
+                continue;
+            }
+
+            byte[] bytes = sessionCompression.decompress(field.getValue());
+            persisted.put(field.getKey(), digest(bytes));
+
+            Object value = BinarySessionSerializer.readValue(new DataInputStream(new ByteArrayInputStream(bytes)),
+                    lazy);
+            if (value != null) {
+                attributes.put(field.getKey().substring(ATTRIBUTE_PREFIX.length()), value);
+            }
+        }
+
+        try {
+            BinarySessionSerializer.LAST_ACCESSED_TIME.setLong(standardSession, decodeLong(fields,
+                    LAST_ACCESSED_TIME));
+            BinarySessionSerializer.THIS_ACCESSED_TIME.setLong(standardSession, decodeLong(fields,
+                    THIS_ACCESSED_TIME));
+            BinarySessionSerializer.ID.set(standardSession, decodeString(fields, ID));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+
+        session.setNote(PERSISTED_NOTE, persisted);
+    }
+
+    private static long decodeLong(Map<String, byte[]> fields, String name) throws IOException {
+        try {
+            return Long.parseLong(decodeString(fields, name));
+        } catch (NumberFormatException e) {
+            throw new IOException(String.format("Session field '%s' is not a number", name), e);
+        }
+    }
+
+    private static String decodeString(Map<String, byte[]> fields, String name) throws IOException {
+        byte[] value = fields.get(name);
+        if (value == null) {
+            throw new IOException(String.format("Session field '%s' is missing", name));
+        }
+
+        return new String(value, UTF_8);
+    }
+
+    private static ByteBuffer digest(byte[] bytes) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("MD5").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encode(Object value) {
+        return String.valueOf(value).getBytes(UTF_8);
+    }
+
+    private static byte[] encodeValue(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+
+        BinarySessionSerializer.writeValue(data, value);
+        data.flush();
+
+        return out.toByteArray();
+    }
+
+    /**
+     * The fields of a {@link Session} that have changed since it was last persisted
+     */
+    public static final class Delta {
+
+        private final Map<String, byte[]> changedFields;
+
+        private final Set<String> changedNames;
+
+        private final Map<String, ByteBuffer> persisted;
+
+        private final Set<String> removedFields;
+
+        private final boolean replace;
+
+        private final Session session;
+
+        private Delta(Session session, Map<String, byte[]> changedFields, Set<String> removedFields, boolean replace,
+                      Map<String, ByteBuffer> persisted, Set<String> changedNames) {
+            this.changedFields = Collections.unmodifiableMap(changedFields);
+            this.changedNames = changedNames;
+            this.persisted = persisted;
+            this.removedFields = Collections.unmodifiableSet(removedFields);
+            this.replace = replace;
+            this.session = session;
+        }
+
+        /**
+         * Returns the fields to write.  Metadata fields are always included.
+         *
+         * @return the fields to write
+         */
+        public Map<String, byte[]> getChangedFields() {
+            return this.changedFields;
+        }
+
+        /**
+         * Returns the names of the fields to delete
+         *
+         * @return the names of the fields to delete
+         */
+        public Set<String> getRemovedFields() {
+            return this.removedFields;
+        }
+
+        /**
+         * Returns whether the changed fields replace all existing fields
+         *
+         * @return {@code true} if any existing fields should be deleted before the changed fields are written,
+         * otherwise {@code false}
+         */
+        public boolean isReplace() {
+            return this.replace;
+        }
+
+        /**
+         * Records that the fields have been persisted, so that the next {@link Delta} for the session only includes
+         * the fields that change after this point.  Should only be called once the fields have been written.
+         */
+        public void markPersisted() {
+            this.session.setNote(PERSISTED_NOTE, this.persisted);
+
+            if (this.changedNames != null) {
+                SessionChangeTracker.markFieldsPersisted(this.session, this.changedNames);
+            }
+        }
+
+    }
+
+}
@@ -18,31 +18,65 @@ package com.gopivotal.manager;
 
 import org.apache.catalina.Contained;
 import org.apache.catalina.Container;
+import org.apache.catalina.Context;
 import org.apache.catalina.Session;
 import org.apache.catalina.Store;
 import org.apache.catalina.Valve;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * An implementation for the {@link Valve} interface that flushes any existing sessions before the response is returned.
+ * When dirty tracking is enabled, only sessions that have changed since they were last persisted are saved, and
+ * unchanged sessions are touched if the store is an {@link ExtendedStore}.  When write-behind is enabled, sessions are
+ * queued and saved by a background thread instead of before the response is returned.  For requests that are put into
+ * asynchronous mode, the session is flushed when the {@link AsyncContext} completes rather than when the request thread
+ * is released.
+ *
+ * @see SessionChangeTracker
  */
 public final class SessionFlushValve extends AbstractLifecycle implements Contained, SessionFlushValveManagement,
         Valve {
 
+    private static final String ASYNC_FLUSH_NOTE = SessionFlushValve.class.getName() + ".ASYNC_FLUSH";
+
     private final JmxSupport jmxSupport;
 
     private final LockTemplate lockTemplate = new LockTemplate();
 
+    private final Logger logger = LoggerFactory.getLogger(SessionFlushValve.class);
+
+    private volatile SessionChangeTracker changeTracker;
+
     private volatile Container container;
 
+    private volatile boolean dirtyTracking = false;
+
     private volatile Valve next;
 
     private volatile Store store;
 
+    private volatile boolean writeBehind = false;
+
+    private volatile String writeBehindBackpressure = "callerRuns";
+
+    private volatile long writeBehindMaxLag = 1000;
+
+    private volatile WriteBehindQueue writeBehindQueue;
+
+    private volatile int writeBehindQueueCapacity = 10000;
+
     /**
      * Creates a new instance
      */
@@ -83,6 +117,35 @@ public final class SessionFlushValve extends AbstractLifecycle implements Contai
         });
     }
 
+    @Override
+    public boolean isDirtyTracking() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Boolean>() {
+
+            @Override
+            public Boolean invoke() {
+                return SessionFlushValve.this.dirtyTracking;
+            }
+
+        });
+    }
+
+    /**
+     * Sets whether only sessions that have changed since they were last persisted should be saved
+     *
+     * @param dirtyTracking whether only sessions that have changed since they were last persisted should be saved
+     */
+    public void setDirtyTracking(final boolean dirtyTracking) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                SessionFlushValve.this.dirtyTracking = dirtyTracking;
+                return null;
+            }
+
+        });
+    }
+
     @Override
     public Valve getNext() {
         return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Valve>() {
@@ -135,24 +198,157 @@ public final class SessionFlushValve extends AbstractLifecycle implements Contai
             @Override
             public Void invoke() {
                 SessionFlushValve.this.store = store;
+
+                if (SessionFlushValve.this.writeBehindQueue != null) {
+                    SessionFlushValve.this.writeBehindQueue.setStore(store);
+                }
+
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public boolean isWriteBehind() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Boolean>() {
+
+            @Override
+            public Boolean invoke() {
+                return SessionFlushValve.this.writeBehind;
+            }
+
+        });
+    }
+
+    /**
+     * Sets whether sessions are queued and saved by a background thread
+     *
+     * @param writeBehind whether sessions are queued and saved by a background thread
+     */
+    public void setWriteBehind(final boolean writeBehind) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                SessionFlushValve.this.writeBehind = writeBehind;
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public String getWriteBehindBackpressure() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+
+            @Override
+            public String invoke() {
+                return SessionFlushValve.this.writeBehindBackpressure;
+            }
+
+        });
+    }
+
+    /**
+     * Sets what happens when a session is flushed while the write-behind queue is full.  {@code block} waits for space
+     * in the queue and {@code callerRuns} saves the session on the request thread.
+     *
+     * @param writeBehindBackpressure what happens when a session is flushed while the write-behind queue is full
+     */
+    public void setWriteBehindBackpressure(final String writeBehindBackpressure) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                SessionFlushValve.this.writeBehindBackpressure = writeBehindBackpressure;
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public long getWriteBehindMaxLag() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Long>() {
+
+            @Override
+            public Long invoke() {
+                return SessionFlushValve.this.writeBehindMaxLag;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the maximum number of milliseconds a session waits in the write-behind queue before it is saved
+     *
+     * @param writeBehindMaxLag the maximum number of milliseconds a session waits in the write-behind queue before it is saved
+     */
+    public void setWriteBehindMaxLag(final long writeBehindMaxLag) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                SessionFlushValve.this.writeBehindMaxLag = writeBehindMaxLag;
                 return null;
             }
 
         });
     }
 
+    @Override
+    public int getWriteBehindQueueCapacity() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return SessionFlushValve.this.writeBehindQueueCapacity;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the maximum number of sessions waiting in the write-behind queue
+     *
+     * @param writeBehindQueueCapacity the maximum number of sessions waiting in the write-behind queue
+     */
+    public void setWriteBehindQueueCapacity(final int writeBehindQueueCapacity) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                SessionFlushValve.this.writeBehindQueueCapacity = writeBehindQueueCapacity;
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getWriteBehindQueueDepth() {
+        WriteBehindQueue writeBehindQueue = this.writeBehindQueue;
+        return writeBehindQueue == null ? 0 : writeBehindQueue.getDepth();
+    }
+
     @Override
     public void invoke(final Request request, final Response response) {
         this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
-            public Void invoke() throws IOException, ServletException {
+            public Void invoke() throws IOException, InterruptedException, ServletException {
                 try {
                     SessionFlushValve.this.next.invoke(request, response);
                 } finally {
-                    Session session = request.getSessionInternal(false);
-                    if (session != null && session.isValid()) {
-                        SessionFlushValve.this.store.save(session);
+                    if (request.getNote(ASYNC_FLUSH_NOTE) != null) {
+                        SessionFlushValve.this.logger.debug("Session flush deferred until asynchronous request " +
+                                "completes");
+                    } else if (request.isAsync()) {
+                        request.setNote(ASYNC_FLUSH_NOTE, Boolean.TRUE);
+                        request.getAsyncContext().addListener(new AsyncFlushListener(request));
+                    } else {
+                        flush(request);
                     }
                 }
 
@@ -165,7 +361,7 @@ public final class SessionFlushValve extends AbstractLifecycle implements Contai
 
     @Override
     public boolean isAsyncSupported() {
-        return false;
+        return true;
     }
 
     @Override
@@ -174,6 +370,14 @@ public final class SessionFlushValve extends AbstractLifecycle implements Contai
 
             @Override
             public Void invoke() {
+                if (SessionFlushValve.this.dirtyTracking) {
+                    startChangeTracking();
+                }
+
+                if (SessionFlushValve.this.writeBehind) {
+                    startWriteBehind();
+                }
+
                 SessionFlushValve.this.jmxSupport.register(getObjectName(), SessionFlushValve.this);
                 return null;
             }
@@ -186,7 +390,9 @@ public final class SessionFlushValve extends AbstractLifecycle implements Contai
         this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
-            public Void invoke() {
+            public Void invoke() throws InterruptedException {
+                stopWriteBehind();
+                stopChangeTracking();
                 SessionFlushValve.this.jmxSupport.unregister(getObjectName());
                 return null;
             }
@@ -194,6 +400,40 @@ public final class SessionFlushValve extends AbstractLifecycle implements Contai
         });
     }
 
+    private void flush(Request request) throws IOException, InterruptedException {
+        Session session = request.getSessionInternal(false);
+        if (session != null && session.isValid()) {
+            flush(session);
+        }
+    }
+
+    private void flush(Session session) throws IOException, InterruptedException {
+        if (this.dirtyTracking && this.store instanceof ExtendedStore && !SessionChangeTracker.isChanged(session)) {
+            // A save still waiting in the write-behind queue writes the access times as well, and a touch of a session
+            // that has not been written yet would save it straight away
+            WriteBehindQueue writeBehindQueue = this.writeBehindQueue;
+            if (writeBehindQueue == null || !writeBehindQueue.contains(session.getId())) {
+                ((ExtendedStore) this.store).touch(session);
+            }
+        } else {
+            if (this.changeTracker != null) {
+                SessionChangeTracker.track(session);
+            }
+            SessionChangeTracker.markPersisted(session);
+
+            try {
+                if (this.writeBehindQueue != null) {
+                    this.writeBehindQueue.add(session);
+                } else {
+                    this.store.save(session);
+                }
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                SessionChangeTracker.markUnpersisted(session);
+                throw e;
+            }
+        }
+    }
+
     private String getContext() {
         String name = this.container.getName();
         return name.startsWith("/") ? name : String.format("/%s", name);
@@ -207,4 +447,95 @@ public final class SessionFlushValve extends AbstractLifecycle implements Contai
                 getClass().getSimpleName());
     }
 
+    private void startChangeTracking() {
+        if (!(this.container instanceof Context)) {
+            this.logger.warn("Dirty tracking requires the valve to be configured on a Context. All sessions will be " +
+                    "saved.");
+            return;
+        }
+
+        Context context = (Context) this.container;
+        this.changeTracker = new SessionChangeTracker(context);
+
+        List<Object> listeners = new ArrayList<>(Arrays.asList(context.getApplicationEventListeners()));
+        listeners.add(this.changeTracker);
+        context.setApplicationEventListeners(listeners.toArray());
+    }
+
+    private WriteBehindQueue.Backpressure getBackpressure() {
+        if ("block".equals(this.writeBehindBackpressure)) {
+            return WriteBehindQueue.Backpressure.BLOCK;
+        } else if ("callerRuns".equals(this.writeBehindBackpressure)) {
+            return WriteBehindQueue.Backpressure.CALLER_RUNS;
+        }
+
+        throw new IllegalArgumentException(String.format("Unknown write-behind backpressure '%s'. Expected 'block' " +
+                "or 'callerRuns'.", this.writeBehindBackpressure));
+    }
+
+    private void startWriteBehind() {
+        this.writeBehindQueue = new WriteBehindQueue(this.store, this.writeBehindQueueCapacity, this.writeBehindMaxLag,
+                getBackpressure());
+        this.writeBehindQueue.start(String.format("SessionFlushValve[%s]", getContext()));
+    }
+
+    private void stopChangeTracking() {
+        if (this.changeTracker == null) {
+            return;
+        }
+
+        Context context = (Context) this.container;
+
+        List<Object> listeners = new ArrayList<>(Arrays.asList(context.getApplicationEventListeners()));
+        listeners.remove(this.changeTracker);
+        context.setApplicationEventListeners(listeners.toArray());
+
+        this.changeTracker = null;
+    }
+
+    private void stopWriteBehind() throws InterruptedException {
+        if (this.writeBehindQueue == null) {
+            return;
+        }
+
+        this.writeBehindQueue.stop();
+        this.writeBehindQueue = null;
+    }
+
+    private final class AsyncFlushListener implements AsyncListener {
+
+        private final Request request;
+
+        private AsyncFlushListener(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            SessionFlushValve.this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
+
+                @Override
+                public Void invoke() throws IOException, InterruptedException {
+                    flush(AsyncFlushListener.this.request);
+                    return null;
+                }
+
+            });
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+    }
+
 }
@@ -23,4 +23,47 @@ import javax.management.MXBean;
  */
 @MXBean
 public interface SessionFlushValveManagement {
+
+    /**
+     * Returns whether only sessions that have changed since they were last persisted are saved
+     *
+     * @return whether only sessions that have changed since they were last persisted are saved
+     */
+    boolean isDirtyTracking();
+
+    /**
+     * Returns whether sessions are queued and saved by a background thread
+     *
+     * @return whether sessions are queued and saved by a background thread
+     */
+    boolean isWriteBehind();
+
+    /**
+     * Returns what happens when a session is flushed while the write-behind queue is full
+     *
+     * @return what happens when a session is flushed while the write-behind queue is full
+     */
+    String getWriteBehindBackpressure();
+
+    /**
+     * Returns the maximum number of milliseconds a session waits in the write-behind queue before it is saved
+     *
+     * @return the maximum number of milliseconds a session waits in the write-behind queue before it is saved
+     */
+    long getWriteBehindMaxLag();
+
+    /**
+     * Returns the maximum number of sessions waiting in the write-behind queue
+     *
+     * @return the maximum number of sessions waiting in the write-behind queue
+     */
+    int getWriteBehindQueueCapacity();
+
+    /**
+     * Returns the number of sessions currently waiting in the write-behind queue
+     *
+     * @return the number of sessions currently waiting in the write-behind queue
+     */
+    int getWriteBehindQueueDepth();
+
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.session.StandardSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metadata of a persisted {@link Session}: its access times, maximum inactive interval and flags.  The metadata is
+ * encoded in a fixed-width form of a few dozen bytes, so that it can be stored alongside a session and read without
+ * reading or deserializing the session itself.
+ */
+public final class SessionMetadata {
+
+    /**
+     * The version of the encoding, held in the first byte of encoded metadata
+     */
+    public static final byte FORMAT_VERSION = 1;
+
+    /**
+     * The length of encoded metadata, in bytes
+     */
+    public static final int LENGTH = 30;
+
+    /**
+     * The offset of the time the most recent request started in encoded metadata, held as eight big-endian bytes
+     */
+    public static final int THIS_ACCESSED_TIME_OFFSET = 17;
+
+    private static final byte NEW = 0x01;
+
+    private static final byte VALID = 0x02;
+
+    private final long creationTime;
+
+    private final boolean isNew;
+
+    private final boolean isValid;
+
+    private final long lastAccessedTime;
+
+    private final int maxInactiveInterval;
+
+    private final long thisAccessedTime;
+
+    private SessionMetadata(long creationTime, long lastAccessedTime, long thisAccessedTime, int maxInactiveInterval,
+                            boolean isNew, boolean isValid) {
+        this.creationTime = creationTime;
+        this.isNew = isNew;
+        this.isValid = isValid;
+        this.lastAccessedTime = lastAccessedTime;
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.thisAccessedTime = thisAccessedTime;
+    }
+
+    /**
+     * Returns the metadata of a {@link Session}
+     *
+     * @param session the {@link Session}
+     * @return the metadata of the {@link Session}
+     */
+    public static SessionMetadata forSession(Session session) {
+        StandardSession standardSession = (StandardSession) session;
+
+        return new SessionMetadata(standardSession.getCreationTimeInternal(),
+                standardSession.getLastAccessedTimeInternal(), standardSession.getThisAccessedTimeInternal(),
+                standardSession.getMaxInactiveInterval(),
+                BinarySessionSerializer.getBoolean(BinarySessionSerializer.IS_NEW, standardSession),
+                BinarySessionSerializer.getBoolean(BinarySessionSerializer.IS_VALID, standardSession));
+    }
+
+    /**
+     * Decodes metadata encoded with {@link #toBytes()}
+     *
+     * @param bytes the encoded metadata
+     * @return the metadata, or {@code null} if {@code bytes} is {@code null}
+     * @throws IOException if the encoded metadata is corrupt or in an unsupported format
+     */
+    public static SessionMetadata fromBytes(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            return null;
+        }
+
+        if (bytes.length != LENGTH || bytes[0] != FORMAT_VERSION) {
+            throw new IOException("Unsupported session metadata format");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, LENGTH - 1);
+        long creationTime = buffer.getLong();
+        long lastAccessedTime = buffer.getLong();
+        long thisAccessedTime = buffer.getLong(THIS_ACCESSED_TIME_OFFSET);
+        buffer.position(THIS_ACCESSED_TIME_OFFSET + 8);
+        int maxInactiveInterval = buffer.getInt();
+        byte flags = buffer.get();
+
+        return new SessionMetadata(creationTime, lastAccessedTime, thisAccessedTime, maxInactiveInterval,
+                (flags & NEW) != 0, (flags & VALID) != 0);
+    }
+
+    /**
+     * Returns the time the session was created
+     *
+     * @return the time the session was created, in milliseconds since the epoch
+     */
+    public long getCreationTime() {
+        return this.creationTime;
+    }
+
+    /**
+     * Returns the time after which the session expires
+     *
+     * @return the time after which the session expires, in milliseconds since the epoch, or {@link Long#MAX_VALUE} if
+     * the session never expires
+     */
+    public long getExpirationTime() {
+        if (this.maxInactiveInterval <= 0) {
+            return Long.MAX_VALUE;
+        }
+
+        return this.thisAccessedTime + TimeUnit.SECONDS.toMillis(this.maxInactiveInterval);
+    }
+
+    /**
+     * Returns the time the request before the most recent one started
+     *
+     * @return the last accessed time, in milliseconds since the epoch
+     */
+    public long getLastAccessedTime() {
+        return this.lastAccessedTime;
+    }
+
+    /**
+     * Returns the maximum inactive interval of the session
+     *
+     * @return the maximum inactive interval of the session, in seconds
+     */
+    public int getMaxInactiveInterval() {
+        return this.maxInactiveInterval;
+    }
+
+    /**
+     * Returns the time the most recent request started
+     *
+     * @return the this accessed time, in milliseconds since the epoch
+     */
+    public long getThisAccessedTime() {
+        return this.thisAccessedTime;
+    }
+
+    /**
+     * Returns whether the session has expired
+     *
+     * @param now the current time, in milliseconds since the epoch
+     * @return {@code true} if the session has expired, otherwise {@code false}
+     */
+    public boolean isExpired(long now) {
+        return now >= getExpirationTime();
+    }
+
+    /**
+     * Returns whether the session is new
+     *
+     * @return whether the session is new
+     */
+    public boolean isNew() {
+        return this.isNew;
+    }
+
+    /**
+     * Returns whether the session is valid
+     *
+     * @return whether the session is valid
+     */
+    public boolean isValid() {
+        return this.isValid;
+    }
+
+    /**
+     * Encodes the metadata
+     *
+     * @return the encoded metadata
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+        buffer.put(FORMAT_VERSION);
+        buffer.putLong(this.creationTime);
+        buffer.putLong(this.lastAccessedTime);
+        buffer.putLong(THIS_ACCESSED_TIME_OFFSET, this.thisAccessedTime);
+        buffer.position(THIS_ACCESSED_TIME_OFFSET + 8);
+        buffer.putInt(this.maxInactiveInterval);
+        buffer.put((byte) ((this.isNew ? NEW : 0) | (this.isValid ? VALID : 0)));
+        return buffer.array();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SessionMetadata[creationTime=%d, lastAccessedTime=%d, thisAccessedTime=%d, " +
+                        "maxInactiveInterval=%d, isNew=%b, isValid=%b]", this.creationTime, this.lastAccessedTime,
+                this.thisAccessedTime, this.maxInactiveInterval, this.isNew, this.isValid);
+    }
+
+}
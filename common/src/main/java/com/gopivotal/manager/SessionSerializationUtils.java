@@ -17,33 +17,101 @@
 package com.gopivotal.manager;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.Closeable;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.ObjectStreamClass;
+import java.util.Map;
 
 import org.apache.catalina.Context;
 import org.apache.catalina.Globals;
+import org.apache.catalina.Loader;
 import org.apache.catalina.Manager;
 import org.apache.catalina.Session;
-import org.apache.catalina.session.StandardSession;
 
 /**
- * Utilities for serializing and deserializing {@link Session}s
+ * Utilities for serializing and deserializing {@link Session}s using a {@link SessionSerializer}, optionally
+ * compressing the serialized form
  */
 public final class SessionSerializationUtils {
 
+    /**
+     * The default maximum number of bytes of serialization buffer each thread keeps between serializations
+     */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = SerializationBuffer.DEFAULT_MAX_RETAINED_SIZE;
+
+    private final boolean lazyAttributes;
+
     private final Manager manager;
 
+    private final int maxBufferSize;
+
+    private final SessionCompression sessionCompression;
+
+    private final SessionSerializer sessionSerializer;
+
     /**
-     * Creates a new instance
+     * Creates a new instance that uses a {@link JavaSessionSerializer}
      *
      * @param manager the manager to use when recreating sessions
      */
     public SessionSerializationUtils(Manager manager) {
+        this(manager, new JavaSessionSerializer());
+    }
+
+    /**
+     * Creates a new instance
+     *
+     * @param manager           the manager to use when recreating sessions
+     * @param sessionSerializer the serializer to convert sessions to and from bytes with
+     */
+    public SessionSerializationUtils(Manager manager, SessionSerializer sessionSerializer) {
+        this(manager, sessionSerializer, new SessionCompression());
+    }
+
+    /**
+     * Creates a new instance
+     *
+     * @param manager            the manager to use when recreating sessions
+     * @param sessionSerializer  the serializer to convert sessions to and from bytes with
+     * @param sessionCompression the compression to apply to serialized sessions
+     */
+    public SessionSerializationUtils(Manager manager, SessionSerializer sessionSerializer,
+                                     SessionCompression sessionCompression) {
+        this(manager, sessionSerializer, sessionCompression, false);
+    }
+
+    /**
+     * Creates a new instance
+     *
+     * @param manager            the manager to use when recreating sessions
+     * @param sessionSerializer  the serializer to convert sessions to and from bytes with
+     * @param sessionCompression the compression to apply to serialized sessions
+     * @param lazyAttributes     whether sessions are recreated as {@link LazySession}s, whose attributes are only
+     *                           deserialized when first read
+     */
+    public SessionSerializationUtils(Manager manager, SessionSerializer sessionSerializer,
+                                     SessionCompression sessionCompression, boolean lazyAttributes) {
+        this(manager, sessionSerializer, sessionCompression, lazyAttributes, DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance
+     *
+     * @param manager            the manager to use when recreating sessions
+     * @param sessionSerializer  the serializer to convert sessions to and from bytes with
+     * @param sessionCompression the compression to apply to serialized sessions
+     * @param lazyAttributes     whether sessions are recreated as {@link LazySession}s, whose attributes are only
+     *                           deserialized when first read
+     * @param maxBufferSize      the maximum number of bytes of serialization buffer each thread keeps between
+     *                           serializations.  Larger sessions are still serialized, but the extra buffer is released
+     *                           afterwards.
+     */
+    public SessionSerializationUtils(Manager manager, SessionSerializer sessionSerializer,
+                                     SessionCompression sessionCompression, boolean lazyAttributes,
+                                     int maxBufferSize) {
+        this.lazyAttributes = lazyAttributes;
         this.manager = manager;
+        this.maxBufferSize = maxBufferSize;
+        this.sessionCompression = sessionCompression;
+        this.sessionSerializer = sessionSerializer;
     }
 
     /**
@@ -59,31 +127,66 @@ public final class SessionSerializationUtils {
             return null;
         }
 
-        ByteArrayInputStream bytes = null;
-        ObjectInputStream in = null;
         Context context = this.manager.getContext();
-        ClassLoader oldThreadContextCL = context.bind(Globals.IS_SECURITY_ENABLED, null);
+
+        // Request processing threads are already bound to the context, so only bind other threads
+        boolean bound = isBound(context);
+        ClassLoader oldThreadContextCL = bound ? null : context.bind(Globals.IS_SECURITY_ENABLED, null);
+
+        try {
+            Session emptySession = this.lazyAttributes ? new LazySession(this.manager) :
+                    this.manager.createEmptySession();
+            this.sessionSerializer.deserialize(new ByteArrayInputStream(this.sessionCompression.decompress(session)),
+                    emptySession);
+
+            return emptySession;
+        } finally {
+            if (!bound) {
+                context.unbind(Globals.IS_SECURITY_ENABLED, oldThreadContextCL);
+            }
+        }
+    }
+
+    /**
+     * Deserialize a {@link Session} from its fields
+     *
+     * @param fields the fields of the session, as encoded by {@link #serializeFields(Session)}
+     * @return the deserialized {@link Session} or {@code null} if there are no fields
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public Session deserializeFields(Map<String, byte[]> fields) throws ClassNotFoundException, IOException {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+
+        Context context = this.manager.getContext();
+
+        boolean bound = isBound(context);
+        ClassLoader oldThreadContextCL = bound ? null : context.bind(Globals.IS_SECURITY_ENABLED, null);
 
         try {
-            bytes = new ByteArrayInputStream(session);
-            in = new ObjectInputStream(bytes) {
-                @Override
-                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
-                    try {
-                        return Class.forName(desc.getName(), false, Thread.currentThread().getContextClassLoader());
-                    } catch (ClassNotFoundException cnfe) {
-                        return super.resolveClass(desc);
-                    }
-                }
-            };
-
-            StandardSession standardSession = (StandardSession) this.manager.createEmptySession();
-            standardSession.readObjectData(in);
-
-            return standardSession;
+            Session emptySession = this.lazyAttributes ? new LazySession(this.manager) :
+                    this.manager.createEmptySession();
+            SessionFields.read(fields, emptySession, this.sessionCompression);
+
+            return emptySession;
         } finally {
-            closeQuietly(in, bytes);
-            context.unbind(Globals.IS_SECURITY_ENABLED, oldThreadContextCL);
+            if (!bound) {
+                context.unbind(Globals.IS_SECURITY_ENABLED, oldThreadContextCL);
+            }
+        }
+    }
+
+    /**
+     * Discards the classes cached while deserializing sessions for the manager's context.  Should be called when the
+     * context is stopped, so that a reloaded context resolves classes from its new class loader.
+     */
+    public void invalidateClassCache() {
+        Loader loader = this.manager.getContext().getLoader();
+
+        if (loader != null) {
+            ClassResolutionCache.invalidate(loader.getClassLoader());
         }
     }
 
@@ -95,33 +198,63 @@ public final class SessionSerializationUtils {
      * @throws IOException
      */
     public byte[] serialize(Session session) throws IOException {
-        ByteArrayOutputStream bytes = null;
-        ObjectOutputStream out = null;
+        try (SerializedSession serializedSession = serializeToBuffer(session)) {
+            return serializedSession.toByteArray();
+        }
+    }
 
-        try {
-            bytes = new ByteArrayOutputStream();
-            out = new ObjectOutputStream(bytes);
+    /**
+     * Serialize a {@link Session} into a buffer reused by the calling thread.  Unless the session is compressed, the
+     * serialized form can be written out without being copied into a {@code byte[]}.  The returned {@link
+     * SerializedSession} must be closed so that the buffer can be reused.
+     *
+     * @param session the {@link Session} to serialize
+     * @return the serialized {@link Session}
+     * @throws IOException
+     */
+    public SerializedSession serializeToBuffer(Session session) throws IOException {
+        SerializationBuffer buffer = SerializationBuffer.acquire(this.maxBufferSize);
 
-            StandardSession standardSession = (StandardSession) session;
-            standardSession.writeObjectData(out);
+        try {
+            this.sessionSerializer.serialize(session, buffer);
 
-            out.flush();
-            bytes.flush();
+            if (this.sessionCompression.isCompressible(buffer.size())) {
+                return new SerializedSession(buffer, this.sessionCompression.compress(buffer.toByteArray()));
+            }
 
-            return bytes.toByteArray();
-        } finally {
-            closeQuietly(out, bytes);
+            return new SerializedSession(buffer);
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
         }
+    }
 
+    /**
+     * Serialize the fields of a {@link Session} that have changed since it was last persisted as fields
+     *
+     * @param session the {@link Session} to serialize
+     * @return the changed fields
+     * @throws IOException
+     */
+    public SessionFields.Delta serializeFields(Session session) throws IOException {
+        return SessionFields.diff(session, this.sessionCompression, false);
     }
 
-    private void closeQuietly(Closeable... closeables) {
-        for (Closeable closeable : closeables) {
-            try {
-                closeable.close();
-            } catch (Exception e) {
-                // Nothing to do
-            }
-        }
+    /**
+     * Serialize all of the fields of a {@link Session}, regardless of what has changed since it was last persisted
+     *
+     * @param session the {@link Session} to serialize
+     * @return the fields, replacing any that were previously persisted
+     * @throws IOException
+     */
+    public SessionFields.Delta serializeAllFields(Session session) throws IOException {
+        return SessionFields.diff(session, this.sessionCompression, true);
     }
+
+    static boolean isBound(Context context) {
+        Loader loader = context.getLoader();
+        return loader != null && loader.getClassLoader() != null &&
+                loader.getClassLoader() == Thread.currentThread().getContextClassLoader();
+    }
+
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A strategy for converting the state of a {@link Session} to and from bytes.  Implementations must be thread-safe and
+ * have a public no-argument constructor so that they can be configured by class name.
+ *
+ * @see JavaSessionSerializer
+ * @see BinarySessionSerializer
+ */
+public interface SessionSerializer {
+
+    /**
+     * Writes the state of a {@link Session}.  The stream is owned by the caller and must not be closed.
+     *
+     * @param session the {@link Session} to write
+     * @param out     the stream to write the state to
+     * @throws IOException if the state cannot be written
+     */
+    void serialize(Session session, OutputStream out) throws IOException;
+
+    /**
+     * Reads the state of a {@link Session} into an empty {@link Session} created by its {@link
+     * org.apache.catalina.Manager}.  Invoked with the thread context class loader bound to the web application's class
+     * loader.  The stream is owned by the caller and must not be closed.
+     *
+     * @param in      the stream to read the state from
+     * @param session the empty {@link Session} to read the state into
+     * @throws ClassNotFoundException if the class of an attribute cannot be found
+     * @throws IOException            if the state cannot be read
+     */
+    void deserialize(InputStream in, Session session) throws ClassNotFoundException, IOException;
+
+}
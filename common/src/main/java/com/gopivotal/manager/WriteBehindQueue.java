@@ -0,0 +1,310 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.Store;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of {@link Session}s waiting to be saved, drained by a dedicated flusher thread.  Saves of a session
+ * that is already queued are coalesced into the pending save, and a session is saved at most {@code maxLag}
+ * milliseconds after it was first queued, or as soon as enough sessions are queued to fill a batch of the store or
+ * the queue itself.  When the queue is full, the {@link Backpressure} policy decides whether the caller waits for
+ * space or saves the session itself.
+ */
+final class WriteBehindQueue implements Runnable {
+
+    private final Backpressure backpressure;
+
+    private final int capacity;
+
+    private final Lock lock = new ReentrantLock();
+
+    private final Logger logger = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private final long maxLag;
+
+    private final Condition notEmpty = this.lock.newCondition();
+
+    private final Condition notFull = this.lock.newCondition();
+
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+
+    private volatile boolean running = false;
+
+    private volatile Store store;
+
+    private volatile Thread thread;
+
+    WriteBehindQueue(Store store, int capacity, long maxLag, Backpressure backpressure) {
+        this.store = store;
+        this.capacity = capacity;
+        this.maxLag = maxLag;
+        this.backpressure = backpressure;
+    }
+
+    /**
+     * Queues a {@link Session} to be saved
+     *
+     * @param session the {@link Session} to save
+     * @throws IOException          if the queue is full and the session is saved by the caller
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    void add(Session session) throws IOException, InterruptedException {
+        this.lock.lock();
+
+        try {
+            Pending existing = this.pending.get(session.getId());
+            if (existing != null) {
+                existing.session = session;
+                return;
+            }
+
+            while (this.running && this.pending.size() >= this.capacity && this.backpressure == Backpressure.BLOCK) {
+                this.notFull.await();
+            }
+
+            if (this.running && this.pending.size() < this.capacity) {
+                this.pending.put(session.getId(), new Pending(session, System.currentTimeMillis()));
+
+                if (this.pending.size() == 1 || this.pending.size() >= getDrainThreshold()) {
+                    this.notEmpty.signal();
+                }
+                return;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.logger.debug("Write-behind queue unavailable, saving session {} directly", session.getId());
+        this.store.save(session);
+    }
+
+    /**
+     * Returns whether a {@link Session} is waiting to be saved
+     *
+     * @param id the id of the {@link Session}
+     * @return {@code true} if the {@link Session} is waiting to be saved, otherwise {@code false}
+     */
+    boolean contains(String id) {
+        this.lock.lock();
+
+        try {
+            return this.pending.containsKey(id);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of {@link Session}s waiting to be saved
+     *
+     * @return the number of {@link Session}s waiting to be saved
+     */
+    int getDepth() {
+        this.lock.lock();
+
+        try {
+            return this.pending.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                List<Session> sessions = take();
+
+                if (!sessions.isEmpty()) {
+                    write(sessions);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sets the {@link Store} that queued {@link Session}s are saved to
+     *
+     * @param store the {@link Store} that queued {@link Session}s are saved to
+     */
+    void setStore(Store store) {
+        this.store = store;
+    }
+
+    /**
+     * Starts the flusher thread
+     *
+     * @param name the name of the flusher thread
+     */
+    void start(String name) {
+        this.running = true;
+
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the flusher thread and saves any {@link Session}s still waiting to be saved
+     *
+     * @throws InterruptedException if interrupted while waiting for the flusher thread to stop
+     */
+    void stop() throws InterruptedException {
+        this.lock.lock();
+
+        try {
+            this.running = false;
+            this.notEmpty.signalAll();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (this.thread != null) {
+            this.thread.join();
+            this.thread = null;
+        }
+
+        write(drain());
+    }
+
+    private List<Session> drain() {
+        this.lock.lock();
+
+        try {
+            List<Session> sessions = new ArrayList<>(this.pending.size());
+
+            for (Iterator<Pending> i = this.pending.values().iterator(); i.hasNext(); ) {
+                sessions.add(i.next().session);
+                i.remove();
+            }
+
+            this.notFull.signalAll();
+            return sessions;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private int getDrainThreshold() {
+        Store store = this.store;
+        int batchSize = store instanceof ExtendedStore ? ((ExtendedStore) store).getBatchSize() : 0;
+        return batchSize > 0 ? Math.min(batchSize, this.capacity) : this.capacity;
+    }
+
+    private List<Session> take() throws InterruptedException {
+        this.lock.lock();
+
+        try {
+            while (this.running && this.pending.isEmpty()) {
+                this.notEmpty.await();
+            }
+
+            if (!this.pending.isEmpty()) {
+                long deadline = this.pending.values().iterator().next().queued + this.maxLag;
+
+                long remaining;
+                while (this.running && this.pending.size() < getDrainThreshold() &&
+                        (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    this.notEmpty.await(remaining, TimeUnit.MILLISECONDS);
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        return drain();
+    }
+
+    private void write(List<Session> sessions) {
+        List<Session> valid = new ArrayList<>(sessions.size());
+        for (Session session : sessions) {
+            if (session.isValid()) {
+                valid.add(session);
+            }
+        }
+
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (this.store instanceof ExtendedStore) {
+                ((ExtendedStore) this.store).saveAll(valid);
+            } else {
+                for (Session session : valid) {
+                    this.store.save(session);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            this.logger.error("Unable to save {} queued sessions", valid.size(), e);
+
+            // Which sessions were saved is not known, so all of them are saved in full when next flushed
+            for (Session session : valid) {
+                SessionChangeTracker.markUnpersisted(session);
+            }
+        }
+    }
+
+    /**
+     * The policy applied when a {@link Session} is added to a full queue
+     */
+    enum Backpressure {
+
+        /**
+         * The caller waits until there is space in the queue
+         */
+        BLOCK,
+
+        /**
+         * The caller saves the {@link Session} itself
+         */
+        CALLER_RUNS
+
+    }
+
+    private static final class Pending {
+
+        private final long queued;
+
+        private volatile Session session;
+
+        private Pending(Session session, long queued) {
+            this.session = session;
+            this.queued = queued;
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.Store;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class BatchingPersistentManagerTest {
+
+    private final BatchingPersistentManager manager = new BatchingPersistentManager();
+
+    private final ExtendedStore store = mock(ExtendedStore.class);
+
+    @Test
+    public void getName() {
+        assertEquals("BatchingPersistentManager", this.manager.getName());
+    }
+
+    @Test
+    public void load() throws ClassNotFoundException, IOException {
+        Session session1 = session("test-id-1", true);
+        Session session2 = session("test-id-2", false);
+
+        Map<String, Session> sessions = new LinkedHashMap<>();
+        sessions.put("test-id-1", session1);
+        sessions.put("test-id-2", session2);
+
+        when(this.store.keys()).thenReturn(new String[]{"test-id-1", "test-id-2", "test-id-3"});
+        when(this.store.loadAll(Arrays.asList("test-id-1", "test-id-2", "test-id-3"))).thenReturn(sessions);
+
+        this.manager.load();
+
+        assertEquals(session1, this.manager.findSession("test-id-1"));
+        assertNull(this.manager.findSession("test-id-2"));
+        verify(this.store).remove("test-id-2");
+        verify(this.store, never()).load("test-id-1");
+    }
+
+    @Test
+    public void loadIOException() throws ClassNotFoundException, IOException {
+        when(this.store.keys()).thenReturn(new String[]{"test-id-1"});
+        when(this.store.loadAll(Arrays.asList("test-id-1"))).thenThrow(new IOException());
+
+        this.manager.load();
+
+        assertEquals(0, this.manager.getActiveSessions());
+    }
+
+    @Test
+    public void loadStore() throws ClassNotFoundException, IOException {
+        Store store = mock(Store.class);
+        Session session = session("test-id-1", true);
+        when(store.keys()).thenReturn(new String[]{"test-id-1"});
+        when(store.load("test-id-1")).thenReturn(session);
+        this.manager.setStore(store);
+
+        this.manager.load();
+
+        verify(store).load("test-id-1");
+    }
+
+    @Before
+    public void setUp() {
+        this.manager.setContext(new StandardContext());
+        this.manager.setStore(this.store);
+    }
+
+    @Test
+    public void unload() throws IOException {
+        Session session1 = session("test-id-1", true);
+        Session session2 = session("test-id-2", true);
+        this.manager.add(session1);
+        this.manager.add(session2);
+
+        this.manager.unload();
+
+        verify(this.store).saveAll(anyCollectionOf(Session.class));
+        verify(this.store, never()).save(session1);
+        verify(this.store, never()).save(session2);
+        assertEquals(0, this.manager.getActiveSessions());
+    }
+
+    @Test
+    public void unloadAccessedWhileSaving() throws IOException {
+        final Session session1 = session("test-id-1", true);
+        Session session2 = session("test-id-2", true);
+        this.manager.add(session1);
+        this.manager.add(session2);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                Thread.sleep(5);
+                session1.access();
+                session1.endAccess();
+                return null;
+            }
+
+        }).when(this.store).saveAll(anyCollectionOf(Session.class));
+
+        this.manager.unload();
+
+        assertEquals(session1, this.manager.findSession("test-id-1"));
+        assertNull(this.manager.findSession("test-id-2"));
+        assertEquals(1, this.manager.getActiveSessions());
+    }
+
+    @Test
+    public void unloadIOException() throws IOException {
+        Session session1 = session("test-id-1", true);
+        Session session2 = session("test-id-2", true);
+        this.manager.add(session1);
+        this.manager.add(session2);
+        doThrow(new IOException()).when(this.store).saveAll(anyCollectionOf(Session.class));
+
+        this.manager.unload();
+
+        verify(this.store).save(session1);
+        verify(this.store).save(session2);
+        assertEquals(0, this.manager.getActiveSessions());
+    }
+
+    @Test
+    public void unloadSuperseded() throws IOException {
+        Session session1 = session("test-id-1", true);
+        Session session2 = session("test-id-2", true);
+        this.manager.add(session1);
+        this.manager.add(session2);
+
+        StandardSession newer = new StandardSession(null);
+        newer.setCreationTime(System.currentTimeMillis() + 60000);
+        when(this.store.loadAllMetadata(anyCollectionOf(String.class))).thenReturn(
+                Collections.singletonMap("test-id-1", SessionMetadata.forSession(newer)));
+
+        this.manager.unload();
+
+        verify(this.store).saveAll(Arrays.asList(session2));
+        verify(this.store, never()).save(session1);
+        verify(this.store, never()).loadMetadata(anyString());
+        assertEquals(0, this.manager.getActiveSessions());
+    }
+
+    @Test
+    public void unloadNoSessions() throws IOException {
+        this.manager.unload();
+
+        verify(this.store, never()).saveAll(anyCollectionOf(Session.class));
+    }
+
+    private Session session(String id, boolean valid) {
+        Session session = this.manager.createEmptySession();
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setValid(true);
+        session.setId(id, false);
+        session.setValid(valid);
+        return session;
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gopivotal.manager;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.session.StandardSession;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class BinarySessionSerializerTest {
+
+    private final Manager manager = new StandardManager();
+
+    private final BinarySessionSerializer sessionSerializer = new BinarySessionSerializer();
+
+    @Test
+    public void attributes() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setAttribute("test-string", "test-value");
+        initial.setAttribute("test-integer", Integer.MAX_VALUE);
+        initial.setAttribute("test-long", Long.MAX_VALUE);
+        initial.setAttribute("test-boolean", true);
+        initial.setAttribute("test-double", Math.PI);
+        initial.setAttribute("test-bytes", new byte[]{1, 2, 3});
+
+        SampleSessionObject obj = new SampleSessionObject();
+        obj.setSampleField("field-set");
+        obj.setNonSerializableField(40L);
+        initial.setAttribute("test-object", obj);
+
+        Session result = roundTrip(initial);
+
+        assertEquals("test-value", result.getSession().getAttribute("test-string"));
+        assertEquals(Integer.MAX_VALUE, result.getSession().getAttribute("test-integer"));
+        assertEquals(Long.MAX_VALUE, result.getSession().getAttribute("test-long"));
+        assertEquals(true, result.getSession().getAttribute("test-boolean"));
+        assertEquals(Math.PI, result.getSession().getAttribute("test-double"));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) result.getSession().getAttribute("test-bytes"));
+
+        SampleSessionObject obj2 = (SampleSessionObject) result.getSession().getAttribute("test-object");
+        assertEquals("field-set", obj2.getSampleField());
+        assertNotEquals(40L, obj2.getNonSerializableField());
+    }
+
+    @Test
+    public void metadata() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setMaxInactiveInterval(1234);
+        initial.setNew(false);
+        initial.access();
+        initial.endAccess();
+
+        StandardSession result = roundTrip(initial);
+
+        assertEquals("test-id", result.getIdInternal());
+        assertEquals(initial.getCreationTimeInternal(), result.getCreationTimeInternal());
+        assertEquals(initial.getLastAccessedTimeInternal(), result.getLastAccessedTimeInternal());
+        assertEquals(initial.getThisAccessedTimeInternal(), result.getThisAccessedTimeInternal());
+        assertEquals(1234, result.getMaxInactiveInterval());
+        assertFalse(result.isNew());
+        assertTrue(result.isValid());
+    }
+
+    @Test
+    public void nonSerializableAttribute() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setAttribute("test-object", new Object());
+
+        Session result = roundTrip(initial);
+
+        assertNull(result.getSession().getAttribute("test-object"));
+    }
+
+    @Before
+    public void setupManager() {
+        this.manager.setContext(new StandardContext());
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedVersion() throws ClassNotFoundException, IOException {
+        this.sessionSerializer.deserialize(new ByteArrayInputStream(new byte[]{Byte.MAX_VALUE}),
+                this.manager.createEmptySession());
+    }
+
+    private StandardSession roundTrip(Session session) throws ClassNotFoundException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.sessionSerializer.serialize(session, out);
+
+        StandardSession result = (StandardSession) this.manager.createEmptySession();
+        this.sessionSerializer.deserialize(new ByteArrayInputStream(out.toByteArray()), result);
+        return result;
+    }
+
+    private StandardSession session() {
+        StandardSession session = (StandardSession) this.manager.createEmptySession();
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setId("test-id", false);
+        return session;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public final class ClassResolutionCacheTest {
+
+    private final StubClassLoader classLoader = new StubClassLoader();
+
+    private ClassLoader oldThreadContextCL;
+
+    private byte[] serialized;
+
+    @Test
+    public void forClassLoader() {
+        ClassResolutionCache cache = ClassResolutionCache.forClassLoader(this.classLoader);
+
+        assertSame(cache, ClassResolutionCache.forClassLoader(this.classLoader));
+        assertNotSame(cache, ClassResolutionCache.forClassLoader(new StubClassLoader()));
+    }
+
+    @Test
+    public void get() throws ClassNotFoundException {
+        ClassResolutionCache cache = ClassResolutionCache.forClassLoader(this.classLoader);
+
+        assertNull(cache.get("test-class-name"));
+
+        cache.put("test-class-name", String.class);
+        assertSame(String.class, cache.get("test-class-name"));
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void getMissing() throws ClassNotFoundException {
+        ClassResolutionCache cache = ClassResolutionCache.forClassLoader(this.classLoader);
+        cache.putMissing("test-class-name");
+
+        cache.get("test-class-name");
+    }
+
+    @Test
+    public void invalidate() throws ClassNotFoundException {
+        ClassResolutionCache cache = ClassResolutionCache.forClassLoader(this.classLoader);
+        cache.put("test-class-name", String.class);
+
+        ClassResolutionCache.invalidate(this.classLoader);
+
+        assertNull(ClassResolutionCache.forClassLoader(this.classLoader).get("test-class-name"));
+    }
+
+    @Test
+    public void resolveClassCached() throws ClassNotFoundException, IOException {
+        readObject();
+
+        assertSame(SampleSessionObject.class,
+                ClassResolutionCache.forClassLoader(this.classLoader).get(SampleSessionObject.class.getName()));
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void resolveClassMissing() throws ClassNotFoundException, IOException {
+        ClassResolutionCache.forClassLoader(this.classLoader).putMissing(SampleSessionObject.class.getName());
+
+        readObject();
+    }
+
+    @After
+    public void restoreThreadContextCL() {
+        Thread.currentThread().setContextClassLoader(this.oldThreadContextCL);
+        ClassResolutionCache.invalidate(this.classLoader);
+    }
+
+    @Before
+    public void setupThreadContextCL() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new SampleSessionObject());
+        }
+        this.serialized = bytes.toByteArray();
+
+        this.oldThreadContextCL = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(this.classLoader);
+    }
+
+    private Object readObject() throws ClassNotFoundException, IOException {
+        try (ObjectInputStream in = new ContextClassLoaderObjectInputStream(
+                new ByteArrayInputStream(this.serialized))) {
+            return in.readObject();
+        }
+    }
+
+    private static final class StubClassLoader extends ClassLoader {
+
+        private StubClassLoader() {
+            super(ClassResolutionCacheTest.class.getClassLoader());
+        }
+
+    }
+
+}
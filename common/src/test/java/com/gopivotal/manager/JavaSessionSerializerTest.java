@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gopivotal.manager;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public final class JavaSessionSerializerTest {
+
+    private final Manager manager = new StandardManager();
+
+    private final JavaSessionSerializer sessionSerializer = new JavaSessionSerializer();
+
+    @Test
+    public void roundTrip() throws ClassNotFoundException, IOException {
+        Session initial = this.manager.createEmptySession();
+        initial.setValid(true);
+        initial.setMaxInactiveInterval(1234);
+        initial.getSession().setAttribute("test-key", "test-value");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.sessionSerializer.serialize(initial, out);
+
+        Session result = this.manager.createEmptySession();
+        this.sessionSerializer.deserialize(new ByteArrayInputStream(out.toByteArray()), result);
+
+        assertEquals(1234, result.getMaxInactiveInterval());
+        assertEquals("test-value", result.getSession().getAttribute("test-key"));
+    }
+
+    @Before
+    public void setupManager() {
+        this.manager.setContext(new StandardContext());
+    }
+
+}
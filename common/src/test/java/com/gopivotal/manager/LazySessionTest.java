@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.session.StandardSession;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpSessionActivationListener;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+import javax.servlet.http.HttpSessionEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class LazySessionTest {
+
+    private final Manager manager = new StandardManager();
+
+    private final BinarySessionSerializer sessionSerializer = new BinarySessionSerializer();
+
+    @Test
+    public void activationListener() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setAttribute("test-listener", new StubActivationListener());
+
+        LazySession result = load(serialize(initial));
+
+        assertTrue(result.isDeserialized("test-listener"));
+    }
+
+    @Test
+    public void getAttribute() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setAttribute("test-string", "test-value");
+
+        SampleSessionObject obj = new SampleSessionObject();
+        obj.setSampleField("field-set");
+        initial.setAttribute("test-object", obj);
+
+        LazySession result = load(serialize(initial));
+
+        assertTrue(result.isDeserialized("test-string"));
+        assertFalse(result.isDeserialized("test-object"));
+
+        assertEquals("field-set", ((SampleSessionObject) result.getAttribute("test-object")).getSampleField());
+        assertTrue(result.isDeserialized("test-object"));
+        assertEquals(result.getAttribute("test-object"), result.getAttribute("test-object"));
+    }
+
+    @Test
+    public void getAttributeNotDeserializable() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setAttribute("test-object", new StubUnreadableObject());
+
+        LazySession result = load(serialize(initial));
+
+        assertNull(result.getAttribute("test-object"));
+        assertFalse(result.getAttributeNames().hasMoreElements());
+    }
+
+    @Test
+    public void removeAttribute() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setAttribute("test-listener", new StubBindingListener());
+
+        LazySession result = load(serialize(initial));
+        StubBindingListener.unbound = false;
+
+        result.removeAttribute("test-listener");
+
+        assertTrue(StubBindingListener.unbound);
+    }
+
+    @Test
+    public void serializeUnread() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setAttribute("test-object", new SampleSessionObject());
+
+        byte[] serialized = serialize(initial);
+        LazySession result = load(serialized);
+
+        assertArrayEquals(serialized, serialize(result));
+        assertFalse(result.isDeserialized("test-object"));
+    }
+
+    @Test
+    public void setAttribute() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setAttribute("test-listener", new StubBindingListener());
+
+        LazySession result = load(serialize(initial));
+        StubBindingListener.unbound = false;
+
+        result.setAttribute("test-listener", "test-value");
+
+        assertTrue(StubBindingListener.unbound);
+        assertEquals("test-value", result.getAttribute("test-listener"));
+    }
+
+    @Before
+    public void setupManager() {
+        this.manager.setContext(new StandardContext());
+    }
+
+    @Test
+    public void writeObjectData() throws ClassNotFoundException, IOException {
+        StandardSession initial = session();
+        initial.setAttribute("test-object", new SampleSessionObject());
+
+        LazySession result = load(serialize(initial));
+        result.writeObjectData(new ObjectOutputStream(new ByteArrayOutputStream()));
+
+        assertTrue(result.isDeserialized("test-object"));
+    }
+
+    private LazySession load(byte[] serialized) throws ClassNotFoundException, IOException {
+        LazySession session = new LazySession(this.manager);
+        this.sessionSerializer.deserialize(new ByteArrayInputStream(serialized), session);
+        return session;
+    }
+
+    private byte[] serialize(StandardSession session) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.sessionSerializer.serialize(session, out);
+        return out.toByteArray();
+    }
+
+    private StandardSession session() {
+        StandardSession session = (StandardSession) this.manager.createEmptySession();
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setId("test-id", false);
+        return session;
+    }
+
+    private static final class StubActivationListener implements HttpSessionActivationListener, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void sessionWillPassivate(HttpSessionEvent se) {
+        }
+
+        @Override
+        public void sessionDidActivate(HttpSessionEvent se) {
+        }
+
+    }
+
+    private static final class StubBindingListener implements HttpSessionBindingListener, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static volatile boolean unbound;
+
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
+        }
+
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            unbound = true;
+        }
+
+    }
+
+    private static final class StubUnreadableObject implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private void readObject(ObjectInputStream in) throws IOException {
+            throw new IOException("test-message");
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public final class SerializationBufferTest {
+
+    private final SerializationBuffer buffer = SerializationBuffer.acquire();
+
+    @After
+    public void releaseBuffer() {
+        this.buffer.release();
+    }
+
+    @Test
+    public void acquire() {
+        SerializationBuffer nested = SerializationBuffer.acquire();
+        assertNotSame(this.buffer, nested);
+        nested.release();
+
+        this.buffer.release();
+        assertSame(this.buffer, SerializationBuffer.acquire());
+    }
+
+    @Test
+    public void release() {
+        this.buffer.write(new byte[SerializationBuffer.SEGMENT_SIZE + 1], 0, SerializationBuffer.SEGMENT_SIZE + 1);
+        this.buffer.release();
+
+        assertEquals(0, this.buffer.size());
+        assertArrayEquals(new byte[0], this.buffer.toByteArray());
+    }
+
+    @Test
+    public void releaseMaxRetainedSize() {
+        this.buffer.release();
+
+        SerializationBuffer buffer = SerializationBuffer.acquire(SerializationBuffer.SEGMENT_SIZE);
+        buffer.write(new byte[3 * SerializationBuffer.SEGMENT_SIZE], 0, 3 * SerializationBuffer.SEGMENT_SIZE);
+        buffer.release();
+
+        assertEquals(SerializationBuffer.SEGMENT_SIZE, buffer.capacity());
+    }
+
+    @Test
+    public void releaseOversized() {
+        int size = 2 * SerializationBuffer.DEFAULT_MAX_RETAINED_SIZE;
+        this.buffer.write(new byte[size], 0, size);
+        assertEquals(size, this.buffer.capacity());
+
+        this.buffer.release();
+
+        assertEquals(SerializationBuffer.DEFAULT_MAX_RETAINED_SIZE, this.buffer.capacity());
+    }
+
+    @Test
+    public void write() throws IOException {
+        byte[] data = new byte[2 * SerializationBuffer.SEGMENT_SIZE + 7];
+        new Random().nextBytes(data);
+
+        this.buffer.write(data[0]);
+        this.buffer.write(data, 1, SerializationBuffer.SEGMENT_SIZE - 1);
+        this.buffer.write(data[SerializationBuffer.SEGMENT_SIZE]);
+        this.buffer.write(data, SerializationBuffer.SEGMENT_SIZE + 1,
+                data.length - SerializationBuffer.SEGMENT_SIZE - 1);
+
+        assertEquals(data.length, this.buffer.size());
+        assertArrayEquals(data, this.buffer.toByteArray());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.buffer.writeTo(out);
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void writeExactSegment() throws IOException {
+        byte[] data = new byte[SerializationBuffer.SEGMENT_SIZE];
+        new Random().nextBytes(data);
+
+        this.buffer.write(data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.buffer.writeTo(out);
+        assertArrayEquals(data, out.toByteArray());
+        assertArrayEquals(data, this.buffer.toByteArray());
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Manager;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.session.StandardSession;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpSessionBindingEvent;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class SessionChangeTrackerTest {
+
+    private final Context context = new StandardContext();
+
+    private final Manager manager = new StandardManager();
+
+    private final StandardSession session = new StandardSession(this.manager);
+
+    private final SessionChangeTracker tracker = new SessionChangeTracker(this.context);
+
+    @Test
+    public void attributeAdded() {
+        SessionChangeTracker.markPersisted(this.session);
+
+        this.tracker.attributeAdded(new HttpSessionBindingEvent(this.session.getSession(), "test-name"));
+
+        assertTrue(SessionChangeTracker.isChanged(this.session));
+        assertEquals(Collections.singleton("test-name"), SessionChangeTracker.getChangedAttributeNames(this.session));
+    }
+
+    @Test
+    public void attributeRemoved() {
+        SessionChangeTracker.markPersisted(this.session);
+
+        this.tracker.attributeRemoved(new HttpSessionBindingEvent(this.session.getSession(), "test-name"));
+
+        assertTrue(SessionChangeTracker.isChanged(this.session));
+    }
+
+    @Test
+    public void attributeReplaced() {
+        SessionChangeTracker.markPersisted(this.session);
+
+        this.tracker.attributeReplaced(new HttpSessionBindingEvent(this.session.getSession(), "test-name"));
+
+        assertTrue(SessionChangeTracker.isChanged(this.session));
+    }
+
+    @Test
+    public void maxInactiveIntervalChanged() {
+        SessionChangeTracker.markPersisted(this.session);
+
+        this.session.setMaxInactiveInterval(60);
+
+        assertTrue(SessionChangeTracker.isChanged(this.session));
+    }
+
+    @Test
+    public void mutableAttribute() {
+        this.session.setAttribute("test-name", new MutableSessionAttribute() {
+        });
+        SessionChangeTracker.markPersisted(this.session);
+
+        assertTrue(SessionChangeTracker.isChanged(this.session));
+    }
+
+    @Test
+    public void notPersisted() {
+        assertTrue(SessionChangeTracker.isChanged(this.session));
+    }
+
+    @Test
+    public void unpersisted() {
+        SessionChangeTracker.markPersisted(this.session);
+
+        SessionChangeTracker.markUnpersisted(this.session);
+
+        assertTrue(SessionChangeTracker.isChanged(this.session));
+    }
+
+    @Test
+    public void persisted() {
+        this.session.setAttribute("test-name", "test-value");
+        SessionChangeTracker.markChanged(this.session, "test-name");
+
+        SessionChangeTracker.markPersisted(this.session);
+
+        assertFalse(SessionChangeTracker.isChanged(this.session));
+        assertTrue(SessionChangeTracker.getChangedAttributeNames(this.session).isEmpty());
+    }
+
+    @Before
+    public void session() {
+        this.context.setManager(this.manager);
+        this.session.setCreationTime(System.currentTimeMillis());
+        this.session.setValid(true);
+        this.session.setMaxInactiveInterval(1800);
+        this.session.setId("test-id");
+    }
+
+    @Test
+    public void setAttribute() {
+        this.context.setApplicationEventListeners(new Object[]{this.tracker});
+        SessionChangeTracker.markPersisted(this.session);
+
+        this.session.setAttribute("test-name", "test-value");
+
+        assertEquals(Collections.singleton("test-name"), SessionChangeTracker.getChangedAttributeNames(this.session));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gopivotal.manager;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class SessionCompressionTest {
+
+    private final SessionCompression sessionCompression = new SessionCompression();
+
+    @Test
+    public void belowMinSize() {
+        this.sessionCompression.setAlgorithm(SessionCompression.Algorithm.SNAPPY);
+        byte[] data = compressible(1023);
+
+        assertSame(data, this.sessionCompression.compress(data));
+    }
+
+    @Test(expected = IOException.class)
+    public void corrupt() throws IOException {
+        this.sessionCompression.decompress(new byte[]{(byte) 0xF1, 0, 0, 0, 10, 1, 2, 3});
+    }
+
+    @Test
+    public void defaults() {
+        assertEquals(SessionCompression.Algorithm.NONE, this.sessionCompression.getAlgorithm());
+        assertEquals(1024, this.sessionCompression.getMinSize());
+        assertEquals(1.0, this.sessionCompression.getCompressionRatio(), 0.0);
+    }
+
+    @Test
+    public void deflate() throws IOException {
+        this.sessionCompression.setAlgorithm(SessionCompression.Algorithm.DEFLATE);
+        byte[] data = compressible(40960);
+
+        byte[] compressed = this.sessionCompression.compress(data);
+
+        assertEquals((byte) 0xF1, compressed[0]);
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(data, this.sessionCompression.decompress(compressed));
+        assertTrue(this.sessionCompression.getCompressionRatio() > 1.0);
+    }
+
+    @Test
+    public void incompressible() throws IOException {
+        this.sessionCompression.setAlgorithm(SessionCompression.Algorithm.DEFLATE);
+        byte[] data = new byte[4096];
+        new Random(0).nextBytes(data);
+        data[0] = 1;
+
+        byte[] result = this.sessionCompression.compress(data);
+
+        assertSame(data, result);
+        assertSame(data, this.sessionCompression.decompress(result));
+    }
+
+    @Test
+    public void minSize() {
+        this.sessionCompression.setMinSize(0);
+
+        assertEquals(0, this.sessionCompression.getMinSize());
+    }
+
+    @Test
+    public void none() throws IOException {
+        byte[] data = compressible(40960);
+
+        assertSame(data, this.sessionCompression.compress(data));
+        assertSame(data, this.sessionCompression.decompress(data));
+    }
+
+    @Test
+    public void snappy() throws IOException {
+        this.sessionCompression.setAlgorithm(SessionCompression.Algorithm.SNAPPY);
+        byte[] data = compressible(40960);
+
+        byte[] compressed = this.sessionCompression.compress(data);
+
+        assertEquals((byte) 0xF2, compressed[0]);
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(data, this.sessionCompression.decompress(compressed));
+    }
+
+    @Test
+    public void uncompressedWithCompressionEnabled() throws IOException {
+        this.sessionCompression.setAlgorithm(SessionCompression.Algorithm.SNAPPY);
+        byte[] data = compressible(10);
+
+        assertSame(data, this.sessionCompression.decompress(data));
+    }
+
+    private static byte[] compressible(int length) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) 'a');
+        data[0] = (byte) 0xAC;
+        return data;
+    }
+
+}
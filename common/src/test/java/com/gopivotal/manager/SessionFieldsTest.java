@@ -0,0 +1,270 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class SessionFieldsTest {
+
+    private final Manager manager = new StandardManager();
+
+    private final SessionCompression sessionCompression = new SessionCompression();
+
+    private final SessionSerializationUtils sessionSerializationUtils = new SessionSerializationUtils(this.manager);
+
+    @Test
+    public void changedAttribute() throws IOException {
+        Session session = session();
+        SessionFields.diff(session, this.sessionCompression, false).markPersisted();
+
+        session.getSession().setAttribute("test-key-2", "test-value-3");
+        SessionFields.Delta delta = SessionFields.diff(session, this.sessionCompression, false);
+
+        assertFalse(delta.isReplace());
+        assertTrue(delta.getChangedFields().containsKey("attribute:test-key-2"));
+        assertFalse(delta.getChangedFields().containsKey("attribute:test-key-1"));
+        assertTrue(delta.getRemovedFields().isEmpty());
+    }
+
+    @Test
+    public void compressed() throws ClassNotFoundException, IOException {
+        this.sessionCompression.setAlgorithm(SessionCompression.Algorithm.DEFLATE);
+        this.sessionCompression.setMinSize(0);
+
+        Session session = session();
+        session.getSession().setAttribute("test-key-3", new String(new char[4096]));
+        SessionFields.Delta delta = SessionFields.diff(session, this.sessionCompression, false);
+
+        assertTrue(delta.getChangedFields().get("attribute:test-key-3").length < 4096);
+
+        Session result = this.manager.createEmptySession();
+        SessionFields.read(delta.getChangedFields(), result, this.sessionCompression);
+
+        assertEquals(new String(new char[4096]), result.getSession().getAttribute("test-key-3"));
+    }
+
+    @Test
+    public void lazy() throws ClassNotFoundException, IOException {
+        Session session = session();
+        session.getSession().setAttribute("test-key-3", Arrays.asList("test-value-3"));
+
+        LazySession result = new LazySession(this.manager);
+        SessionFields.read(SessionFields.diff(session, this.sessionCompression, false).getChangedFields(), result,
+                this.sessionCompression);
+
+        assertFalse(result.isDeserialized("test-key-3"));
+
+        // An attribute that has not been deserialized is not rewritten
+        SessionFields.Delta delta = SessionFields.diff(result, this.sessionCompression, false);
+        assertFalse(delta.getChangedFields().containsKey("attribute:test-key-3"));
+        assertFalse(delta.getRemovedFields().contains("attribute:test-key-3"));
+
+        assertEquals(Arrays.asList("test-value-3"), result.getAttribute("test-key-3"));
+    }
+
+    @Test
+    public void markPersisted() throws IOException {
+        Session session = session();
+
+        SessionFields.diff(session, this.sessionCompression, false);
+        assertTrue(SessionFields.diff(session, this.sessionCompression, false).isReplace());
+
+        SessionFields.diff(session, this.sessionCompression, false).markPersisted();
+        assertFalse(SessionFields.diff(session, this.sessionCompression, false).isReplace());
+    }
+
+    @Before
+    public void manager() {
+        this.manager.setContext(new StandardContext());
+    }
+
+    @Test(expected = IOException.class)
+    public void missingField() throws ClassNotFoundException, IOException {
+        Map<String, byte[]> fields = new HashMap<>();
+        fields.put(SessionFields.ID, "test-id".getBytes());
+
+        SessionFields.read(fields, this.manager.createEmptySession(), this.sessionCompression);
+    }
+
+    @Test
+    public void newSession() throws IOException {
+        SessionFields.Delta delta = SessionFields.diff(session(), this.sessionCompression, false);
+
+        assertTrue(delta.isReplace());
+        assertEquals(new HashSet<>(Arrays.asList("id", "creationTime", "lastAccessedTime", "thisAccessedTime",
+                "maxInactiveInterval", "isNew", "isValid", "attribute:test-key-1", "attribute:test-key-2")),
+                delta.getChangedFields().keySet());
+        assertTrue(delta.getRemovedFields().isEmpty());
+    }
+
+    @Test
+    public void read() throws ClassNotFoundException, IOException {
+        Session session = session();
+
+        Session result = this.manager.createEmptySession();
+        SessionFields.read(SessionFields.diff(session, this.sessionCompression, false).getChangedFields(), result,
+                this.sessionCompression);
+
+        assertEquals(session.getIdInternal(), result.getIdInternal());
+        assertEquals(session.getCreationTimeInternal(), result.getCreationTimeInternal());
+        assertEquals(session.getLastAccessedTimeInternal(), result.getLastAccessedTimeInternal());
+        assertEquals(session.getThisAccessedTimeInternal(), result.getThisAccessedTimeInternal());
+        assertEquals(1800, result.getMaxInactiveInterval());
+        assertTrue(result.isValid());
+        assertEquals("test-value-1", result.getSession().getAttribute("test-key-1"));
+        assertEquals(2, result.getSession().getAttribute("test-key-2"));
+
+        // A session that has been read only needs its changes written
+        assertFalse(SessionFields.diff(result, this.sessionCompression, false).isReplace());
+    }
+
+    @Test
+    public void removedAttribute() throws IOException {
+        Session session = session();
+        SessionFields.diff(session, this.sessionCompression, false).markPersisted();
+
+        session.getSession().removeAttribute("test-key-1");
+        SessionFields.Delta delta = SessionFields.diff(session, this.sessionCompression, false);
+
+        assertEquals(Collections.singleton("attribute:test-key-1"), delta.getRemovedFields());
+        assertFalse(delta.getChangedFields().containsKey("attribute:test-key-2"));
+    }
+
+    @Test
+    public void replace() throws IOException {
+        Session session = session();
+        SessionFields.diff(session, this.sessionCompression, false).markPersisted();
+
+        SessionFields.Delta delta = SessionFields.diff(session, this.sessionCompression, true);
+
+        assertTrue(delta.isReplace());
+        assertTrue(delta.getChangedFields().containsKey("attribute:test-key-1"));
+    }
+
+    @Test
+    public void serializationUtils() throws ClassNotFoundException, IOException {
+        Session session = session();
+
+        Session result = this.sessionSerializationUtils.deserializeFields(
+                this.sessionSerializationUtils.serializeFields(session).getChangedFields());
+
+        assertEquals("test-value-1", result.getSession().getAttribute("test-key-1"));
+        assertNull(this.sessionSerializationUtils.deserializeFields(Collections.<String, byte[]>emptyMap()));
+    }
+
+    @Test
+    public void tracked() throws IOException {
+        List<String> value = new ArrayList<>(Arrays.asList("test-value-3"));
+
+        Session session = session();
+        session.getSession().setAttribute("test-key-3", value);
+        SessionChangeTracker.track(session);
+        SessionFields.diff(session, this.sessionCompression, false).markPersisted();
+
+        // An attribute modified in place without being set again is not encoded
+        value.add("test-value-4");
+        session.getSession().setAttribute("test-key-2", 3);
+        SessionChangeTracker.markChanged(session, "test-key-2");
+        SessionFields.Delta delta = SessionFields.diff(session, this.sessionCompression, false);
+
+        assertFalse(delta.isReplace());
+        assertTrue(delta.getChangedFields().containsKey("attribute:test-key-2"));
+        assertFalse(delta.getChangedFields().containsKey("attribute:test-key-3"));
+        assertTrue(delta.getRemovedFields().isEmpty());
+
+        delta.markPersisted();
+        assertEquals(Collections.<String>emptySet(), SessionChangeTracker.getChangedFieldNames(session));
+    }
+
+    @Test
+    public void trackedMutableAttribute() throws IOException {
+        SampleMutableAttribute value = new SampleMutableAttribute();
+
+        Session session = session();
+        session.getSession().setAttribute("test-key-3", value);
+        SessionChangeTracker.track(session);
+        SessionFields.diff(session, this.sessionCompression, false).markPersisted();
+
+        assertFalse(SessionFields.diff(session, this.sessionCompression, false).getChangedFields()
+                .containsKey("attribute:test-key-3"));
+
+        value.count++;
+        SessionFields.Delta delta = SessionFields.diff(session, this.sessionCompression, false);
+
+        assertTrue(delta.getChangedFields().containsKey("attribute:test-key-3"));
+        assertFalse(delta.getChangedFields().containsKey("attribute:test-key-1"));
+    }
+
+    @Test
+    public void trackedRemovedAttribute() throws IOException {
+        Session session = session();
+        SessionChangeTracker.track(session);
+        SessionFields.diff(session, this.sessionCompression, false).markPersisted();
+
+        session.getSession().removeAttribute("test-key-1");
+        SessionChangeTracker.markChanged(session, "test-key-1");
+        SessionFields.Delta delta = SessionFields.diff(session, this.sessionCompression, false);
+
+        assertEquals(Collections.singleton("attribute:test-key-1"), delta.getRemovedFields());
+        assertFalse(delta.getChangedFields().containsKey("attribute:test-key-2"));
+    }
+
+    @Test
+    public void untracked() throws IOException {
+        assertNull(SessionChangeTracker.getChangedFieldNames(session()));
+    }
+
+    private Session session() {
+        Session session = this.manager.createEmptySession();
+        session.setCreationTime(System.currentTimeMillis());
+        session.setValid(true);
+        session.setId("test-id");
+        session.setMaxInactiveInterval(1800);
+        session.getSession().setAttribute("test-key-1", "test-value-1");
+        session.getSession().setAttribute("test-key-2", 2);
+        return session;
+    }
+
+    private static final class SampleMutableAttribute implements MutableSessionAttribute, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int count;
+
+    }
+
+}
@@ -23,15 +23,28 @@ import org.apache.catalina.Store;
 import org.apache.catalina.Valve;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.session.StandardSession;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -66,12 +79,92 @@ public final class SessionFlushValveTest {
         assertSame(context, this.valve.getContainer());
     }
 
+    @Test
+    public void dirtyTracking() {
+        assertFalse(this.valve.isDirtyTracking());
+
+        this.valve.setDirtyTracking(true);
+
+        assertTrue(this.valve.isDirtyTracking());
+    }
+
     @Before
     public void inject() throws Exception {
         this.valve.setNext(this.next);
         this.valve.setStore(this.store);
     }
 
+    @Test
+    public void invokeAsync() throws IOException, ServletException {
+        AsyncContext asyncContext = mock(AsyncContext.class);
+
+        when(this.request.getSessionInternal(false)).thenReturn(this.session);
+        when(this.request.isAsync()).thenReturn(true);
+        when(this.request.getAsyncContext()).thenReturn(asyncContext);
+        when(this.session.isValid()).thenReturn(true);
+
+        this.valve.invoke(this.request, this.response);
+
+        verify(this.next).invoke(this.request, this.response);
+        verify(this.store, never()).save(this.session);
+        verify(this.request).setNote(SessionFlushValve.class.getName() + ".ASYNC_FLUSH", Boolean.TRUE);
+
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(listener.capture());
+
+        listener.getValue().onComplete(new AsyncEvent(asyncContext));
+
+        verify(this.store).save(this.session);
+    }
+
+    @Test
+    public void invokeAsyncDispatched() throws IOException, ServletException {
+        when(this.request.getSessionInternal(false)).thenReturn(this.session);
+        when(this.request.getNote(SessionFlushValve.class.getName() + ".ASYNC_FLUSH")).thenReturn(Boolean.TRUE);
+        when(this.session.isValid()).thenReturn(true);
+
+        this.valve.invoke(this.request, this.response);
+
+        verify(this.next).invoke(this.request, this.response);
+        verify(this.request, never()).getAsyncContext();
+        verifyZeroInteractions(this.store);
+    }
+
+    @Test
+    public void invokeAsyncRestarted() throws IOException, ServletException {
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        AsyncContext restartedAsyncContext = mock(AsyncContext.class);
+
+        when(this.request.isAsync()).thenReturn(true);
+        when(this.request.getAsyncContext()).thenReturn(asyncContext);
+
+        this.valve.invoke(this.request, this.response);
+
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(listener.capture());
+
+        listener.getValue().onStartAsync(new AsyncEvent(restartedAsyncContext));
+
+        verify(restartedAsyncContext).addListener(listener.getValue());
+    }
+
+    @Test
+    public void invokeChangedSession() throws IOException, ServletException {
+        ExtendedStore extendedStore = mock(ExtendedStore.class);
+        StandardSession standardSession = standardSession();
+        SessionChangeTracker.markPersisted(standardSession);
+        SessionChangeTracker.markChanged(standardSession, "test-name");
+
+        this.valve.setDirtyTracking(true);
+        this.valve.setStore(extendedStore);
+        when(this.request.getSessionInternal(false)).thenReturn(standardSession);
+
+        this.valve.invoke(this.request, this.response);
+
+        verify(extendedStore).save(standardSession);
+        assertFalse(SessionChangeTracker.isChanged(standardSession));
+    }
+
     @Test
     public void invokeInvalidSession() throws IOException, ServletException {
         when(this.request.getSessionInternal(false)).thenReturn(this.session);
@@ -93,6 +186,31 @@ public final class SessionFlushValveTest {
         verifyZeroInteractions(this.store);
     }
 
+    @Test
+    public void invokeSaveFailure() throws IOException, ServletException {
+        ExtendedStore extendedStore = mock(ExtendedStore.class);
+        StandardSession standardSession = standardSession();
+        SessionChangeTracker.markPersisted(standardSession);
+        SessionChangeTracker.markChanged(standardSession, "test-name");
+
+        this.valve.setDirtyTracking(true);
+        this.valve.setStore(extendedStore);
+        when(this.request.getSessionInternal(false)).thenReturn(standardSession);
+        doThrow(new IOException()).doNothing().when(extendedStore).save(standardSession);
+
+        try {
+            this.valve.invoke(this.request, this.response);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(SessionChangeTracker.isChanged(standardSession));
+        }
+
+        this.valve.invoke(this.request, this.response);
+
+        verify(extendedStore, times(2)).save(standardSession);
+        verify(extendedStore, never()).touch(standardSession);
+    }
+
     @Test
     public void invokeSession() throws IOException, ServletException {
         when(this.request.getSessionInternal(false)).thenReturn(this.session);
@@ -104,9 +222,67 @@ public final class SessionFlushValveTest {
         verify(this.store).save(this.session);
     }
 
+    @Test
+    public void invokeUnchangedSession() throws IOException, ServletException {
+        ExtendedStore extendedStore = mock(ExtendedStore.class);
+        StandardSession standardSession = standardSession();
+        SessionChangeTracker.markPersisted(standardSession);
+
+        this.valve.setDirtyTracking(true);
+        this.valve.setStore(extendedStore);
+        when(this.request.getSessionInternal(false)).thenReturn(standardSession);
+
+        this.valve.invoke(this.request, this.response);
+
+        verify(extendedStore).touch(standardSession);
+        verify(extendedStore, never()).save(standardSession);
+    }
+
+    @Test
+    public void invokeUnchangedSessionStore() throws IOException, ServletException {
+        StandardSession standardSession = standardSession();
+        SessionChangeTracker.markPersisted(standardSession);
+
+        this.valve.setDirtyTracking(true);
+        when(this.request.getSessionInternal(false)).thenReturn(standardSession);
+
+        this.valve.invoke(this.request, this.response);
+
+        verify(this.store).save(standardSession);
+    }
+
+    @Test
+    public void invokeUnchangedSessionWriteBehind() throws IOException, ServletException {
+        Context context = mock(Context.class);
+        Host host = mock(Host.class);
+        ExtendedStore extendedStore = mock(ExtendedStore.class);
+        StandardSession standardSession = standardSession();
+
+        this.valve.setContainer(context);
+        this.valve.setDirtyTracking(true);
+        this.valve.setStore(extendedStore);
+        this.valve.setWriteBehind(true);
+        this.valve.setWriteBehindMaxLag(60000);
+        when(context.getName()).thenReturn("test-context-name");
+        when(context.getParent()).thenReturn(host);
+        when(context.getApplicationEventListeners()).thenReturn(new Object[0]);
+        when(host.getName()).thenReturn("test-host-name");
+        when(this.request.getSessionInternal(false)).thenReturn(standardSession);
+
+        this.valve.startInternal();
+        this.valve.invoke(this.request, this.response);
+        this.valve.invoke(this.request, this.response);
+
+        verify(extendedStore, never()).touch(standardSession);
+        verify(extendedStore, never()).save(standardSession);
+        assertEquals(1, this.valve.getWriteBehindQueueDepth());
+
+        this.valve.stopInternal();
+    }
+
     @Test
     public void isAsyncSupported() {
-        assertFalse(this.valve.isAsyncSupported());
+        assertTrue(this.valve.isAsyncSupported());
     }
 
     @Test
@@ -130,6 +306,34 @@ public final class SessionFlushValveTest {
                 "name=SessionFlushValve", this.valve);
     }
 
+    @Test
+    public void startInternalDirtyTracking() {
+        Context context = mock(Context.class);
+        Host host = mock(Host.class);
+        Object listener = new Object();
+
+        this.valve.setContainer(context);
+        this.valve.setDirtyTracking(true);
+        when(context.getName()).thenReturn("test-context-name");
+        when(context.getParent()).thenReturn(host);
+        when(context.getApplicationEventListeners()).thenReturn(new Object[]{listener});
+        when(host.getName()).thenReturn("test-host-name");
+
+        this.valve.startInternal();
+
+        ArgumentCaptor<Object[]> listeners = ArgumentCaptor.forClass(Object[].class);
+        verify(context).setApplicationEventListeners(listeners.capture());
+        assertEquals(2, listeners.getValue().length);
+        assertSame(listener, listeners.getValue()[0]);
+        assertTrue(listeners.getValue()[1] instanceof SessionChangeTracker);
+
+        when(context.getApplicationEventListeners()).thenReturn(listeners.getValue());
+
+        this.valve.stopInternal();
+
+        verify(context).setApplicationEventListeners(new Object[]{listener});
+    }
+
     @Test
     public void stopInternal() {
         Context context = mock(Context.class);
@@ -146,8 +350,99 @@ public final class SessionFlushValveTest {
                 "name=SessionFlushValve");
     }
 
+    @Test
+    public void startInternalWriteBehind() throws IOException, ServletException {
+        Context context = mock(Context.class);
+        Host host = mock(Host.class);
+        StandardSession standardSession = standardSession();
+
+        this.valve.setContainer(context);
+        this.valve.setWriteBehind(true);
+        this.valve.setWriteBehindMaxLag(60000);
+        when(context.getName()).thenReturn("test-context-name");
+        when(context.getParent()).thenReturn(host);
+        when(host.getName()).thenReturn("test-host-name");
+        when(this.request.getSessionInternal(false)).thenReturn(standardSession);
+
+        this.valve.startInternal();
+        this.valve.invoke(this.request, this.response);
+
+        verify(this.store, never()).save(standardSession);
+        assertEquals(1, this.valve.getWriteBehindQueueDepth());
+
+        this.valve.stopInternal();
+
+        verify(this.store).save(standardSession);
+        assertEquals(0, this.valve.getWriteBehindQueueDepth());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void startInternalWriteBehindInvalidBackpressure() {
+        Context context = mock(Context.class);
+
+        this.valve.setContainer(context);
+        this.valve.setWriteBehind(true);
+        this.valve.setWriteBehindBackpressure("test-backpressure");
+        when(context.getName()).thenReturn("test-context-name");
+
+        this.valve.startInternal();
+    }
+
     @Test
     public void store() {
         assertSame(this.store, this.valve.getStore());
     }
+
+    @Test
+    public void writeBehind() {
+        assertFalse(this.valve.isWriteBehind());
+
+        this.valve.setWriteBehind(true);
+
+        assertTrue(this.valve.isWriteBehind());
+    }
+
+    @Test
+    public void writeBehindBackpressure() {
+        assertEquals("callerRuns", this.valve.getWriteBehindBackpressure());
+
+        this.valve.setWriteBehindBackpressure("block");
+
+        assertEquals("block", this.valve.getWriteBehindBackpressure());
+    }
+
+    @Test
+    public void writeBehindMaxLag() {
+        assertEquals(1000, this.valve.getWriteBehindMaxLag());
+
+        this.valve.setWriteBehindMaxLag(Long.MAX_VALUE);
+
+        assertEquals(Long.MAX_VALUE, this.valve.getWriteBehindMaxLag());
+    }
+
+    @Test
+    public void writeBehindQueueCapacity() {
+        assertEquals(10000, this.valve.getWriteBehindQueueCapacity());
+
+        this.valve.setWriteBehindQueueCapacity(Integer.MAX_VALUE);
+
+        assertEquals(Integer.MAX_VALUE, this.valve.getWriteBehindQueueCapacity());
+    }
+
+    @Test
+    public void writeBehindQueueDepth() {
+        assertEquals(0, this.valve.getWriteBehindQueueDepth());
+    }
+
+    private StandardSession standardSession() {
+        StandardManager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+
+        StandardSession standardSession = new StandardSession(manager);
+        standardSession.setCreationTime(System.currentTimeMillis());
+        standardSession.setValid(true);
+        standardSession.setMaxInactiveInterval(1800);
+
+        return standardSession;
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class SessionMetadataTest {
+
+    private final Manager manager = new StandardManager();
+
+    @Test
+    public void expiration() {
+        Session session = this.manager.createEmptySession();
+        session.setCreationTime(1000);
+        session.setMaxInactiveInterval(60);
+
+        SessionMetadata metadata = SessionMetadata.forSession(session);
+
+        assertEquals(61000, metadata.getExpirationTime());
+        assertFalse(metadata.isExpired(60999));
+        assertTrue(metadata.isExpired(61000));
+    }
+
+    @Test
+    public void expirationNever() {
+        Session session = this.manager.createEmptySession();
+        session.setCreationTime(1000);
+        session.setMaxInactiveInterval(-1);
+
+        SessionMetadata metadata = SessionMetadata.forSession(session);
+
+        assertEquals(Long.MAX_VALUE, metadata.getExpirationTime());
+        assertFalse(metadata.isExpired(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void fromBytes() throws IOException {
+        Session session = this.manager.createEmptySession();
+        session.setCreationTime(1000);
+        session.setMaxInactiveInterval(1800);
+        session.setNew(true);
+        session.setValid(true);
+        session.access();
+
+        byte[] bytes = SessionMetadata.forSession(session).toBytes();
+        SessionMetadata metadata = SessionMetadata.fromBytes(bytes);
+
+        assertEquals(30, bytes.length);
+        assertEquals(1000, metadata.getCreationTime());
+        assertEquals(session.getLastAccessedTimeInternal(), metadata.getLastAccessedTime());
+        assertEquals(session.getThisAccessedTimeInternal(), metadata.getThisAccessedTime());
+        assertEquals(1800, metadata.getMaxInactiveInterval());
+        assertTrue(metadata.isNew());
+        assertTrue(metadata.isValid());
+    }
+
+    @Test(expected = IOException.class)
+    public void fromBytesCorrupt() throws IOException {
+        SessionMetadata.fromBytes(new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void fromBytesNull() throws IOException {
+        assertNull(SessionMetadata.fromBytes(null));
+    }
+
+    @Before
+    public void manager() {
+        this.manager.setContext(new StandardContext());
+    }
+
+    @Test
+    public void thisAccessedTimeOffset() {
+        Session session = this.manager.createEmptySession();
+        session.setCreationTime(1000);
+        session.access();
+
+        byte[] bytes = SessionMetadata.forSession(session).toBytes();
+
+        assertEquals(SessionMetadata.LENGTH, bytes.length);
+        assertEquals(SessionMetadata.FORMAT_VERSION, bytes[0]);
+        assertEquals(session.getThisAccessedTimeInternal(),
+                ByteBuffer.wrap(bytes).getLong(SessionMetadata.THIS_ACCESSED_TIME_OFFSET));
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures the heap allocated, and the time taken, per serialization of a session.  Each session is serialized into a
+ * freshly allocated {@link ByteArrayOutputStream} (the behaviour before serialization buffers were pooled), into the
+ * calling thread's pooled buffer and then copied into a {@code byte[]}, and into the pooled buffer and then written to
+ * a stream without a final copy.  Requires a HotSpot JVM.  Not run as part of the test suite.  Run with:
+ * <pre>
+ * java -cp ... com.gopivotal.manager.SessionSerializationBenchmark [iterations] [sessionSize]
+ * </pre>
+ */
+public final class SessionSerializationBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+    };
+
+    private SessionSerializationBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int sessionSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024 * 1024;
+
+        Manager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+
+        final SessionSerializationUtils sessionSerializationUtils = new SessionSerializationUtils(manager);
+        final SessionSerializer sessionSerializer = new JavaSessionSerializer();
+
+        byte[] value = new byte[sessionSize];
+        new Random().nextBytes(value);
+
+        final Session session = manager.createEmptySession();
+        session.setValid(true);
+        session.getSession().setAttribute("benchmark", value);
+
+        run("unpooled (byte[])", iterations, new Operation() {
+
+            @Override
+            public void invoke() throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                sessionSerializer.serialize(session, bytes);
+                NULL_OUTPUT_STREAM.write(bytes.toByteArray());
+            }
+
+        });
+
+        run("pooled (byte[])", iterations, new Operation() {
+
+            @Override
+            public void invoke() throws IOException {
+                NULL_OUTPUT_STREAM.write(sessionSerializationUtils.serialize(session));
+            }
+
+        });
+
+        run("pooled (stream)", iterations, new Operation() {
+
+            @Override
+            public void invoke() throws IOException {
+                try (SerializedSession serializedSession = sessionSerializationUtils.serializeToBuffer(session)) {
+                    serializedSession.writeTo(NULL_OUTPUT_STREAM);
+                }
+            }
+
+        });
+    }
+
+    private static void run(String name, int iterations, Operation operation) throws IOException {
+        for (int i = 0; i < iterations / 10; i++) {
+            operation.invoke();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocated = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            operation.invoke();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        allocated = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - allocated;
+
+        System.out.printf("%-20s %10.0f ops/s  mean %8.1f us  allocated %12d bytes/op%n", name,
+                iterations / (elapsed / 1e9), elapsed / 1e3 / iterations, allocated / iterations);
+    }
+
+    private interface Operation {
+
+        void invoke() throws IOException;
+    }
+
+}
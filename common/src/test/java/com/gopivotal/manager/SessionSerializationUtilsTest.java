@@ -16,10 +16,14 @@
 
 package com.gopivotal.manager;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import org.apache.catalina.Context;
@@ -64,6 +68,78 @@ public final class SessionSerializationUtilsTest {
         assertNotEquals(40L, obj2.getNonSerializableField());
     }
 
+    @Test
+    public void testSessionSerializer() throws IOException, ClassNotFoundException {
+        SessionSerializationUtils binarySerializationUtils = new SessionSerializationUtils(this.manager,
+                new BinarySessionSerializer());
+
+        Session initial = this.manager.createEmptySession();
+        initial.setValid(true);
+        initial.getSession().setAttribute("test-key", "test-value");
+
+        Session result = binarySerializationUtils.deserialize(binarySerializationUtils.serialize(initial));
+
+        assertEquals("test-value", result.getSession().getAttribute("test-key"));
+    }
+
+    @Test
+    public void testSerializeToBuffer() throws IOException, ClassNotFoundException {
+        Session initial = this.manager.createEmptySession();
+        initial.setValid(true);
+        initial.getSession().setAttribute("test-key", new byte[3 * SerializationBuffer.SEGMENT_SIZE]);
+
+        byte[] expected = this.sessionSerializationUtils.serialize(initial);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SerializedSession serializedSession = this.sessionSerializationUtils.serializeToBuffer(initial)) {
+            assertEquals(expected.length, serializedSession.getLength());
+            serializedSession.writeTo(out);
+        }
+
+        assertArrayEquals(expected, out.toByteArray());
+        assertArrayEquals(new byte[3 * SerializationBuffer.SEGMENT_SIZE],
+                (byte[]) this.sessionSerializationUtils.deserialize(out.toByteArray()).getSession()
+                        .getAttribute("test-key"));
+    }
+
+    @Test
+    public void testSerializeToBufferCompressed() throws IOException, ClassNotFoundException {
+        SessionCompression sessionCompression = new SessionCompression();
+        sessionCompression.setAlgorithm(SessionCompression.Algorithm.DEFLATE);
+        SessionSerializationUtils compressedSerializationUtils = new SessionSerializationUtils(this.manager,
+                new JavaSessionSerializer(), sessionCompression);
+
+        Session initial = this.manager.createEmptySession();
+        initial.setValid(true);
+        initial.getSession().setAttribute("test-key", new byte[3 * SerializationBuffer.SEGMENT_SIZE]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SerializedSession serializedSession = compressedSerializationUtils.serializeToBuffer(initial)) {
+            serializedSession.writeTo(out);
+            assertEquals(out.size(), serializedSession.getLength());
+        }
+
+        assertEquals(SessionCompression.Algorithm.DEFLATE.getHeader(), out.toByteArray()[0]);
+        assertArrayEquals(new byte[3 * SerializationBuffer.SEGMENT_SIZE],
+                (byte[]) compressedSerializationUtils.deserialize(out.toByteArray()).getSession()
+                        .getAttribute("test-key"));
+    }
+
+    @Test
+    public void testLazyAttributes() throws IOException, ClassNotFoundException {
+        SessionSerializationUtils lazySerializationUtils = new SessionSerializationUtils(this.manager,
+                new BinarySessionSerializer(), new SessionCompression(), true);
+
+        Session initial = this.manager.createEmptySession();
+        initial.setValid(true);
+        initial.getSession().setAttribute("test-key", new SampleSessionObject());
+
+        Session result = lazySerializationUtils.deserialize(lazySerializationUtils.serialize(initial));
+
+        assertTrue(result instanceof LazySession);
+        assertFalse(((LazySession) result).isDeserialized("test-key"));
+    }
+
     @Test
     public void testNullData() throws IOException, ClassNotFoundException {
         assertNull(this.sessionSerializationUtils.deserialize(null));
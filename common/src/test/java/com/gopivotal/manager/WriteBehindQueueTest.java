@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.Store;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class WriteBehindQueueTest {
+
+    private final Store store = mock(Store.class);
+
+    private final Session session1 = session("test-id-1");
+
+    private final Session session2 = session("test-id-2");
+
+    private final Session session3 = session("test-id-3");
+
+    @Test
+    public void addCallerRuns() throws IOException, InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                latch.await();
+                return null;
+            }
+
+        }).when(this.store).save(this.session1);
+
+        WriteBehindQueue queue = new WriteBehindQueue(this.store, 1, 60000, WriteBehindQueue.Backpressure.CALLER_RUNS);
+        queue.start("test-thread");
+
+        queue.add(this.session1);
+        verify(this.store, timeout(5000)).save(this.session1);
+
+        queue.add(this.session2);
+        queue.add(this.session3);
+
+        verify(this.store, never()).save(this.session2);
+        verify(this.store).save(this.session3);
+        assertEquals(1, queue.getDepth());
+
+        latch.countDown();
+        queue.stop();
+    }
+
+    @Test
+    public void addCoalesces() throws IOException, InterruptedException {
+        WriteBehindQueue queue = new WriteBehindQueue(this.store, 10, 60000, WriteBehindQueue.Backpressure.BLOCK);
+        queue.start("test-thread");
+
+        queue.add(this.session1);
+        queue.add(this.session1);
+
+        assertEquals(1, queue.getDepth());
+
+        queue.stop();
+
+        verify(this.store).save(this.session1);
+    }
+
+    @Test
+    public void addNotStarted() throws IOException, InterruptedException {
+        WriteBehindQueue queue = new WriteBehindQueue(this.store, 10, 60000, WriteBehindQueue.Backpressure.BLOCK);
+
+        queue.add(this.session1);
+
+        verify(this.store).save(this.session1);
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    public void maxLag() throws IOException, InterruptedException {
+        WriteBehindQueue queue = new WriteBehindQueue(this.store, 10, 10, WriteBehindQueue.Backpressure.BLOCK);
+        queue.start("test-thread");
+
+        queue.add(this.session1);
+
+        verify(this.store, timeout(5000)).save(this.session1);
+
+        queue.stop();
+    }
+
+    @Test
+    public void maxLagBatchFull() throws IOException, InterruptedException {
+        ExtendedStore extendedStore = mock(ExtendedStore.class);
+        when(extendedStore.getBatchSize()).thenReturn(2);
+        WriteBehindQueue queue = new WriteBehindQueue(extendedStore, 10, 60000, WriteBehindQueue.Backpressure.BLOCK);
+        queue.start("test-thread");
+
+        queue.add(this.session1);
+        queue.add(this.session2);
+
+        verify(extendedStore, timeout(5000)).saveAll(Arrays.asList(this.session1, this.session2));
+
+        queue.stop();
+    }
+
+    @Test
+    public void maxLagQueueFull() throws IOException, InterruptedException {
+        WriteBehindQueue queue = new WriteBehindQueue(this.store, 2, 60000, WriteBehindQueue.Backpressure.BLOCK);
+        queue.start("test-thread");
+
+        queue.add(this.session1);
+        queue.add(this.session2);
+
+        verify(this.store, timeout(5000)).save(this.session1);
+        verify(this.store, timeout(5000)).save(this.session2);
+
+        queue.stop();
+    }
+
+    @Test
+    public void saveAll() throws IOException, InterruptedException {
+        ExtendedStore extendedStore = mock(ExtendedStore.class);
+        WriteBehindQueue queue = new WriteBehindQueue(extendedStore, 10, 60000, WriteBehindQueue.Backpressure.BLOCK);
+        queue.start("test-thread");
+
+        queue.add(this.session1);
+        queue.add(this.session2);
+        queue.stop();
+
+        verify(extendedStore).saveAll(Arrays.asList(this.session1, this.session2));
+    }
+
+    @Test
+    public void stopInvalidSession() throws IOException, InterruptedException {
+        ExtendedStore extendedStore = mock(ExtendedStore.class);
+        WriteBehindQueue queue = new WriteBehindQueue(extendedStore, 10, 60000, WriteBehindQueue.Backpressure.BLOCK);
+        queue.start("test-thread");
+
+        queue.add(this.session1);
+        when(this.session1.isValid()).thenReturn(false);
+        queue.stop();
+
+        verify(extendedStore, never()).saveAll(anyCollectionOf(Session.class));
+    }
+
+    @Test
+    public void storeFailure() throws IOException, InterruptedException {
+        ExtendedStore extendedStore = mock(ExtendedStore.class);
+        WriteBehindQueue queue = new WriteBehindQueue(extendedStore, 10, 60000, WriteBehindQueue.Backpressure.BLOCK);
+        queue.start("test-thread");
+
+        queue.add(this.session1);
+        doThrow(new IOException()).when(extendedStore).saveAll(anyCollectionOf(Session.class));
+        queue.stop();
+
+        assertEquals(0, queue.getDepth());
+        verify(this.session1).removeNote(anyString());
+    }
+
+    private static Session session(String id) {
+        Session session = mock(Session.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isValid()).thenReturn(true);
+        return session;
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calls to a Redis server that keeps failing, so that they fail immediately instead of each waiting for the
+ * connection timeout.  The outcomes of the last {@value #WINDOW_SIZE} calls are recorded, and once at least {@value
+ * #MINIMUM_CALLS} have been recorded and the proportion that failed reaches the failure rate threshold, the circuit
+ * opens and calls are rejected.  After the open duration, a single probe call is let through: if it succeeds the
+ * circuit closes, and if it fails the circuit opens again.  A probe that has not completed within the open duration is
+ * assumed lost and another probe is let through.
+ */
+final class CircuitBreaker {
+
+    static final int MINIMUM_CALLS = 10;
+
+    static final int WINDOW_SIZE = 20;
+
+    private final int failureRateThreshold;
+
+    private final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final String name;
+
+    private final long openDuration;
+
+    private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+
+    private int calls = 0;
+
+    private int failures = 0;
+
+    private int index = 0;
+
+    private long openings = 0;
+
+    private long probeStarted = 0;
+
+    private long rejections = 0;
+
+    private State state = State.CLOSED;
+
+    private long stateChanged = 0;
+
+    /**
+     * Creates a new instance
+     *
+     * @param name                 the name of the server the calls are made to, used in log messages
+     * @param failureRateThreshold the percentage of failed calls at which the circuit opens, or {@code 0} to never
+     *                             open the circuit
+     * @param openDuration         how long the circuit stays open before a probe call is let through, in milliseconds
+     */
+    CircuitBreaker(String name, int failureRateThreshold, long openDuration) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.name = name;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Returns a circuit breaker that never opens
+     *
+     * @return a circuit breaker that never opens
+     */
+    static CircuitBreaker disabled() {
+        return new CircuitBreaker("Redis", 0, 0);
+    }
+
+    /**
+     * Returns whether a call may be made
+     *
+     * @param now the current time, in milliseconds since the epoch
+     * @return {@code true} if the call may be made, {@code false} if it must be rejected
+     */
+    synchronized boolean allow(long now) {
+        if (this.state == State.CLOSED) {
+            return true;
+        }
+
+        if (this.state == State.OPEN && now - this.stateChanged >= this.openDuration) {
+            transition(State.HALF_OPEN, now);
+        }
+
+        if (this.state == State.HALF_OPEN && now - this.probeStarted >= this.openDuration) {
+            this.probeStarted = now;
+            return true;
+        }
+
+        this.rejections++;
+        return false;
+    }
+
+    /**
+     * Returns the number of times the circuit has opened
+     *
+     * @return the number of times the circuit has opened
+     */
+    synchronized long getOpenings() {
+        return this.openings;
+    }
+
+    /**
+     * Returns the number of calls that have been rejected
+     *
+     * @return the number of calls that have been rejected
+     */
+    synchronized long getRejections() {
+        return this.rejections;
+    }
+
+    /**
+     * Returns the state of the circuit
+     *
+     * @return the state of the circuit: {@code closed}, {@code open} or {@code half-open}
+     */
+    synchronized String getState() {
+        return this.state.toString();
+    }
+
+    /**
+     * Records that a call has failed to reach the server
+     *
+     * @param now the current time, in milliseconds since the epoch
+     */
+    synchronized void onFailure(long now) {
+        if (this.failureRateThreshold <= 0) {
+            return;
+        }
+
+        if (this.state == State.HALF_OPEN) {
+            transition(State.OPEN, now);
+            return;
+        }
+
+        record(true);
+
+        if (this.state == State.CLOSED && this.calls >= MINIMUM_CALLS &&
+                this.failures * 100 >= this.failureRateThreshold * this.calls) {
+            this.logger.warn(String.format("%d of the last %d calls to %s failed. Failing calls immediately for %d ms.",
+                    this.failures, this.calls, this.name, this.openDuration));
+            this.openings++;
+            transition(State.OPEN, now);
+        }
+    }
+
+    /**
+     * Records that a call has reached the server
+     *
+     * @param now the current time, in milliseconds since the epoch
+     */
+    synchronized void onSuccess(long now) {
+        if (this.failureRateThreshold <= 0) {
+            return;
+        }
+
+        if (this.state == State.CLOSED) {
+            record(false);
+        } else {
+            this.logger.info(String.format("Calls to %s are succeeding again", this.name));
+            transition(State.CLOSED, now);
+        }
+    }
+
+    private void record(boolean failure) {
+        if (this.calls == WINDOW_SIZE) {
+            if (this.outcomes[this.index]) {
+                this.failures--;
+            }
+        } else {
+            this.calls++;
+        }
+
+        this.outcomes[this.index] = failure;
+        if (failure) {
+            this.failures++;
+        }
+
+        this.index = (this.index + 1) % WINDOW_SIZE;
+    }
+
+    private void transition(State state, long now) {
+        this.state = state;
+        this.stateChanged = now;
+        this.probeStarted = 0;
+
+        if (state == State.CLOSED) {
+            this.calls = 0;
+            this.failures = 0;
+            this.index = 0;
+        }
+    }
+
+    private enum State {
+
+        CLOSED("closed"), HALF_OPEN("half-open"), OPEN("open");
+
+        private final String name;
+
+        State(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Thrown instead of calling Redis while a {@link CircuitBreaker} is open.  It is a {@link JedisConnectionException},
+ * so it is handled wherever an unreachable server is, and it carries no stack trace, so that it is cheap to create.
+ */
+final class CircuitOpenException extends JedisConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    CircuitOpenException(String message) {
+        super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
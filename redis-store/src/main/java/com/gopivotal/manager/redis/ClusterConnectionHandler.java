@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+
+import java.util.Set;
+
+/**
+ * A {@link JedisSlotBasedConnectionHandler} that exposes the connection pool of the primary serving each Redis Cluster
+ * slot, so that commands for keys served by the same primary can be pipelined together
+ */
+class ClusterConnectionHandler extends JedisSlotBasedConnectionHandler {
+
+    ClusterConnectionHandler(Set<HostAndPort> nodes, GenericObjectPoolConfig poolConfig, int timeout,
+                             String password) {
+        super(nodes, poolConfig, timeout, timeout, password);
+    }
+
+    /**
+     * Returns the connection pool of the primary serving a slot
+     *
+     * @param slot the slot
+     * @return the connection pool of the primary serving the slot, or {@code null} if the slot is not known to be
+     * served
+     */
+    JedisPool getSlotPool(int slot) {
+        return this.cache.getSlotPool(slot);
+    }
+
+}
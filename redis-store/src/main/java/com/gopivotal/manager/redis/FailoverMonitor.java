@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the failovers of a Redis primary, as observed through the connections to it.  A failover is counted when a
+ * connection to a new primary is first obtained, and its duration is the time from the first failed connection to the
+ * previous primary until then.  A failed connection followed by a successful one to the same primary is not a
+ * failover.
+ */
+final class FailoverMonitor {
+
+    private final Logger logger = LoggerFactory.getLogger(FailoverMonitor.class);
+
+    private long failovers = 0;
+
+    private long failingSince = 0;
+
+    private long lastFailoverDuration = 0;
+
+    private String primary;
+
+    FailoverMonitor(String primary) {
+        this.primary = primary;
+    }
+
+    /**
+     * Records that a connection to a primary has been obtained
+     *
+     * @param primary the primary, as {@code host:port}
+     * @param now     the current time, in milliseconds since the epoch
+     */
+    synchronized void connected(String primary, long now) {
+        if (primary.equals(this.primary)) {
+            return;
+        }
+
+        this.failovers++;
+        this.lastFailoverDuration = this.failingSince == 0 ? 0 : now - this.failingSince;
+        this.logger.info(String.format("Redis primary failed over from %s to %s in %d ms", this.primary, primary,
+                this.lastFailoverDuration));
+
+        this.primary = primary;
+        this.failingSince = 0;
+    }
+
+    /**
+     * Records that a connection to a primary has failed
+     *
+     * @param primary the primary, as {@code host:port}
+     * @param now     the current time, in milliseconds since the epoch
+     */
+    synchronized void failed(String primary, long now) {
+        if (primary.equals(this.primary) && this.failingSince == 0) {
+            this.failingSince = now;
+        }
+    }
+
+    /**
+     * Returns the number of failovers
+     *
+     * @return the number of failovers
+     */
+    synchronized long getFailovers() {
+        return this.failovers;
+    }
+
+    /**
+     * Returns the duration of the last failover
+     *
+     * @return the duration of the last failover, in milliseconds, or {@code 0} if there has been no failover or no
+     * connection failed before it
+     */
+    synchronized long getLastFailoverDuration() {
+        return this.lastFailoverDuration;
+    }
+
+    /**
+     * Returns the current primary
+     *
+     * @return the current primary, as {@code host:port}
+     */
+    synchronized String getPrimary() {
+        return this.primary;
+    }
+
+    /**
+     * Records that a connection to a primary has been used successfully
+     *
+     * @param primary the primary, as {@code host:port}
+     */
+    synchronized void succeeded(String primary) {
+        if (primary.equals(this.primary)) {
+            this.failingSince = 0;
+        }
+    }
+
+}
@@ -17,22 +17,153 @@
 package com.gopivotal.manager.redis;
 
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
+
+import java.util.Collection;
+import java.util.Collections;
 
 final class JedisTemplate {
 
-    private final JedisPool jedisPool;
+    private final CircuitBreaker circuitBreaker;
+
+    private final ClusterConnectionHandler clusterConnectionHandler;
+
+    private final Pool<Jedis> jedisPool;
+
+    JedisTemplate(Pool<Jedis> jedisPool) {
+        this(jedisPool, CircuitBreaker.disabled());
+    }
 
-    JedisTemplate(JedisPool jedisPool) {
+    JedisTemplate(Pool<Jedis> jedisPool, CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        this.clusterConnectionHandler = null;
         this.jedisPool = jedisPool;
     }
 
+    JedisTemplate(ClusterConnectionHandler clusterConnectionHandler) {
+        this(clusterConnectionHandler, CircuitBreaker.disabled());
+    }
+
+    JedisTemplate(ClusterConnectionHandler clusterConnectionHandler, CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        this.clusterConnectionHandler = clusterConnectionHandler;
+        this.jedisPool = null;
+    }
+
+    /**
+     * Returns the circuit breaker guarding the calls made with this template
+     *
+     * @return the circuit breaker guarding the calls made with this template
+     */
+    CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    /**
+     * Returns the connection pool for a key.  With Redis Cluster, this is the pool of the primary serving the key's
+     * slot.
+     *
+     * @param key the key
+     * @return the connection pool for the key
+     * @throws JedisConnectionException if no primary is known to serve the key's slot
+     */
+    Pool<Jedis> getPool(String key) {
+        if (this.clusterConnectionHandler == null) {
+            return this.jedisPool;
+        }
+
+        int slot = JedisClusterCRC16.getSlot(key);
+        Pool<Jedis> pool = this.clusterConnectionHandler.getSlotPool(slot);
+
+        if (pool == null) {
+            this.clusterConnectionHandler.renewSlotCache();
+            pool = this.clusterConnectionHandler.getSlotPool(slot);
+        }
+
+        if (pool == null) {
+            throw new JedisConnectionException(String.format("No node is serving slot %d", slot));
+        }
+
+        return pool;
+    }
+
+    /**
+     * Returns the connection pools of all primaries
+     *
+     * @return the connection pools of all primaries
+     */
+    Collection<Pool<Jedis>> getPools() {
+        if (this.clusterConnectionHandler == null) {
+            return Collections.singleton(this.jedisPool);
+        }
+
+        Collection<? extends Pool<Jedis>> pools = this.clusterConnectionHandler.getNodes().values();
+        return Collections.unmodifiableCollection(pools);
+    }
+
+    /**
+     * Refreshes the mapping of Redis Cluster slots to primaries.  Has no effect without Redis Cluster.
+     */
+    void renewSlotCache() {
+        if (this.clusterConnectionHandler != null) {
+            this.clusterConnectionHandler.renewSlotCache();
+        }
+    }
+
     <T> T withJedis(JedisOperation<T> operation) {
-        try(Jedis jedis = this.jedisPool.getResource()) {
+        if (this.clusterConnectionHandler == null) {
+            return withJedis(this.jedisPool, operation);
+        }
+
+        return invoke(null, operation);
+    }
+
+    <T> T withJedis(Pool<Jedis> pool, JedisOperation<T> operation) {
+        return invoke(pool, operation);
+    }
+
+    /**
+     * Invokes an operation on a connection to the primary serving a key.  If the key's slot has moved to another
+     * primary, the mapping of slots to primaries is refreshed and the operation is invoked once more.
+     *
+     * @param key       the key
+     * @param operation the operation
+     * @param <T>       the type of the return value of the operation
+     * @return the return value of the operation
+     */
+    <T> T withJedis(String key, JedisOperation<T> operation) {
+        if (this.clusterConnectionHandler == null) {
+            return withJedis(this.jedisPool, operation);
+        }
+
+        try {
+            return withJedis(getPool(key), operation);
+        } catch (JedisMovedDataException e) {
+            this.clusterConnectionHandler.renewSlotCache();
+            return withJedis(getPool(key), operation);
+        }
+    }
+
+    private <T> T invoke(Pool<Jedis> pool, JedisOperation<T> operation) {
+        if (!this.circuitBreaker.allow(System.currentTimeMillis())) {
+            throw new CircuitOpenException("Circuit open, Redis call rejected");
+        }
+
+        boolean failed = false;
+        try (Jedis jedis = pool == null ? this.clusterConnectionHandler.getConnection() : pool.getResource()) {
             return operation.invoke(jedis);
         } catch (JedisConnectionException e) {
+            failed = true;
             throw e;
+        } finally {
+            if (failed) {
+                this.circuitBreaker.onFailure(System.currentTimeMillis());
+            } else {
+                this.circuitBreaker.onSuccess(System.currentTimeMillis());
+            }
         }
     }
 
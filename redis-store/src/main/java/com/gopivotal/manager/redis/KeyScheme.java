@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The names of the keys a {@link RedisStore} uses.  Sessions are divided into one or more shards, each with its own
+ * session index ({@code SET}), expiration index ({@code ZSET}) and metadata index ({@code HASH}).  Each session is
+ * recorded in the indexes of its shard under a member name, which is also the name of the key holding the session.
+ * <p>
+ * The {@link #standalone()} scheme has a single shard whose indexes are {@code sessions}, {@code sessions:expirations}
+ * and {@code sessions:metadata}, and stores each session under its id.  The {@link #cluster(int)} scheme has many
+ * shards, and every key of a shard, including the keys of its sessions, carries the hash tag {@code {sessions:<n>}}.
+ * All of the keys a script touches are then in the same Redis Cluster slot, while the shards, and with them the
+ * session writes, are spread across the cluster's primaries.
+ */
+final class KeyScheme {
+
+    private static final String EXPIRATIONS_SUFFIX = ":expirations";
+
+    private static final String METADATA_SUFFIX = ":metadata";
+
+    private static final String SESSION_INFIX = ":session:";
+
+    private static final String SESSIONS = "sessions";
+
+    private final int shards;
+
+    private KeyScheme(int shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Returns the scheme used with a single Redis server
+     *
+     * @return the scheme used with a single Redis server
+     */
+    static KeyScheme standalone() {
+        return new KeyScheme(0);
+    }
+
+    /**
+     * Returns the scheme used with Redis Cluster
+     *
+     * @param shards the number of shards to divide sessions into
+     * @return the scheme used with Redis Cluster
+     */
+    static KeyScheme cluster(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be positive");
+        }
+
+        return new KeyScheme(shards);
+    }
+
+    /**
+     * Returns the name of the expiration index of a shard
+     *
+     * @param shard the shard
+     * @return the name of the expiration index of the shard
+     */
+    String expirationsKey(int shard) {
+        return sessionsKey(shard) + EXPIRATIONS_SUFFIX;
+    }
+
+    /**
+     * Returns the number of shards
+     *
+     * @return the number of shards
+     */
+    int getShards() {
+        return Math.max(this.shards, 1);
+    }
+
+    /**
+     * Returns the session id a member of an index refers to
+     *
+     * @param member the member
+     * @return the session id
+     */
+    String id(String member) {
+        if (this.shards == 0) {
+            return member;
+        }
+
+        int index = member.indexOf(SESSION_INFIX);
+        return index < 0 ? member : member.substring(index + SESSION_INFIX.length());
+    }
+
+    /**
+     * Returns the keys passed to a script that operates on sessions of a single shard: the session, expiration and
+     * metadata indexes of the shard followed by the members
+     *
+     * @param shard   the shard
+     * @param members the members of the shard
+     * @return the keys passed to the script
+     */
+    List<byte[]> indexKeys(int shard, Collection<String> members) {
+        List<byte[]> keys = new ArrayList<>(members.size() + 3);
+        keys.add(SafeEncoder.encode(sessionsKey(shard)));
+        keys.add(SafeEncoder.encode(expirationsKey(shard)));
+        keys.add(SafeEncoder.encode(metadataKey(shard)));
+        for (String member : members) {
+            keys.add(SafeEncoder.encode(member));
+        }
+
+        return keys;
+    }
+
+    /**
+     * Returns the member name of a session, which is also the name of the key holding the session
+     *
+     * @param id the session id
+     * @return the member name of the session
+     */
+    String member(String id) {
+        return this.shards == 0 ? id : sessionsKey(shard(id)) + SESSION_INFIX + id;
+    }
+
+    /**
+     * Returns the name of the metadata index of a shard
+     *
+     * @param shard the shard
+     * @return the name of the metadata index of the shard
+     */
+    String metadataKey(int shard) {
+        return sessionsKey(shard) + METADATA_SUFFIX;
+    }
+
+    /**
+     * Returns the keys passed to a script that operates on a single session: the session, followed by the session,
+     * expiration and metadata indexes of its shard
+     *
+     * @param id the session id
+     * @return the keys passed to the script
+     */
+    List<byte[]> sessionKeys(String id) {
+        int shard = shard(id);
+        return Arrays.asList(SafeEncoder.encode(member(id)), SafeEncoder.encode(sessionsKey(shard)),
+                SafeEncoder.encode(expirationsKey(shard)), SafeEncoder.encode(metadataKey(shard)));
+    }
+
+    /**
+     * Returns the name of the session index of a shard
+     *
+     * @param shard the shard
+     * @return the name of the session index of the shard
+     */
+    String sessionsKey(int shard) {
+        return this.shards == 0 ? SESSIONS : String.format("{%s:%d}", SESSIONS, shard);
+    }
+
+    /**
+     * Returns the shard a session belongs to
+     *
+     * @param id the session id
+     * @return the shard the session belongs to
+     */
+    int shard(String id) {
+        return this.shards == 0 ? 0 : (id.hashCode() & Integer.MAX_VALUE) % this.shards;
+    }
+
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, in-process cache of persisted sessions, keyed by session id.  Entries are kept in least-recently-used
+ * order, and when the cache is full a new entry is only admitted if it has been requested more often than the entry it
+ * would evict.  Request frequencies are estimated with a small count-min sketch that is periodically halved, so that
+ * entries that were once popular do not stay in the cache forever.
+ * <p>
+ * The cache only serves entries while it is active, i.e. while its invalidations are known to be delivered.  An entry
+ * is stored in two steps: {@link #reserve(String)} before the value is read, and {@link #put(String, long, Object,
+ * long)} once it has been read.  An invalidation of the id in between discards the reservation, so that a value read
+ * before a concurrent write is never cached.
+ *
+ * @param <V> the type of the cached values
+ */
+final class NearCache<V> {
+
+    private static final int MAX_FREQUENCY = 15;
+
+    private final Map<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch frequencies;
+
+    private final int maximumSize;
+
+    private final Map<String, Long> reservations = new HashMap<>();
+
+    private boolean active = false;
+
+    private long evictions = 0;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private long nextToken = 0;
+
+    NearCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.frequencies = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Starts serving entries.  Should be called once invalidations are being delivered.
+     */
+    synchronized void activate() {
+        this.active = true;
+    }
+
+    /**
+     * Stops serving entries and discards all entries and reservations.  Should be called when invalidations may have
+     * been missed.
+     */
+    synchronized void deactivate() {
+        this.active = false;
+        clear();
+    }
+
+    /**
+     * Releases a reservation that will not be followed by a call to {@link #put(String, long, Object, long)}, e.g.
+     * because no value was read.  A newer reservation of the same id is kept.
+     *
+     * @param id    the session id
+     * @param token the token returned by {@link #reserve(String)}
+     */
+    synchronized void cancel(String id, long token) {
+        Long reservation = this.reservations.get(id);
+        if (reservation != null && reservation == token) {
+            this.reservations.remove(id);
+        }
+    }
+
+    /**
+     * Discards all entries and reservations
+     */
+    synchronized void clear() {
+        this.entries.clear();
+        this.reservations.clear();
+    }
+
+    /**
+     * Returns a cached value
+     *
+     * @param id  the session id
+     * @param now the current time, in milliseconds since the epoch
+     * @return the cached value, or {@code null} if no unexpired value is cached or the cache is not active
+     */
+    synchronized V get(String id, long now) {
+        if (!this.active) {
+            return null;
+        }
+
+        this.frequencies.increment(id);
+
+        Entry<V> entry = this.entries.get(id);
+        if (entry != null && entry.expiration <= now) {
+            this.entries.remove(id);
+            entry = null;
+        }
+
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+
+        this.hits++;
+        return entry.value;
+    }
+
+    /**
+     * Returns the number of entries that have been evicted to keep the cache within its maximum size
+     *
+     * @return the number of entries that have been evicted
+     */
+    synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Returns the number of requests that have been served from the cache
+     *
+     * @return the number of requests that have been served from the cache
+     */
+    synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of requests that could not be served from the cache while it was active
+     *
+     * @return the number of requests that could not be served from the cache
+     */
+    synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the number of reservations not yet followed by a value
+     *
+     * @return the number of reservations not yet followed by a value
+     */
+    synchronized int getReservations() {
+        return this.reservations.size();
+    }
+
+    /**
+     * Returns the number of cached entries
+     *
+     * @return the number of cached entries
+     */
+    synchronized int getSize() {
+        return this.entries.size();
+    }
+
+    /**
+     * Discards the cached value and any reservation for a session id
+     *
+     * @param id the session id
+     */
+    synchronized void invalidate(String id) {
+        this.entries.remove(id);
+        this.reservations.remove(id);
+    }
+
+    /**
+     * Caches a value read after a call to {@link #reserve(String)}.  The value is discarded if the id has been
+     * invalidated since the reservation was made, or if it is not admitted because the cache is full of more
+     * frequently requested entries.
+     *
+     * @param id         the session id
+     * @param token      the token returned by {@link #reserve(String)}
+     * @param value      the value to cache
+     * @param expiration the time after which the value must not be served, in milliseconds since the epoch
+     */
+    synchronized void put(String id, long token, V value, long expiration) {
+        Long reservation = this.reservations.get(id);
+        if (reservation == null || reservation != token) {
+            return;
+        }
+
+        this.reservations.remove(id);
+
+        if (!this.entries.containsKey(id) && this.entries.size() >= this.maximumSize) {
+            Iterator<Map.Entry<String, Entry<V>>> i = this.entries.entrySet().iterator();
+            String victim = i.next().getKey();
+
+            if (this.frequencies.frequency(id) <= this.frequencies.frequency(victim)) {
+                return;
+            }
+
+            i.remove();
+            this.evictions++;
+        }
+
+        this.entries.put(id, new Entry<>(value, expiration));
+    }
+
+    /**
+     * Reserves an entry for a value that is about to be read
+     *
+     * @param id the session id
+     * @return the token to pass to {@link #put(String, long, Object, long)}, or {@code -1} if the cache is not active
+     */
+    synchronized long reserve(String id) {
+        if (!this.active) {
+            return -1;
+        }
+
+        long token = this.nextToken++;
+        this.reservations.put(id, token);
+        return token;
+    }
+
+    private static final class Entry<V> {
+
+        private final long expiration;
+
+        private final V value;
+
+        private Entry(V value, long expiration) {
+            this.expiration = expiration;
+            this.value = value;
+        }
+
+    }
+
+    private static final class FrequencySketch {
+
+        private static final int[] SEEDS = {0x97cb3127, 0xb7e15163, 0x8ebc6af1, 0x9e3779b9};
+
+        private final int[] counters;
+
+        private final int mask;
+
+        private final int sampleSize;
+
+        private int samples = 0;
+
+        private FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(maximumSize, 8) * 4 - 1) << 1;
+            this.counters = new int[width];
+            this.mask = width - 1;
+            this.sampleSize = Math.max(maximumSize, 8) * 10;
+        }
+
+        private int frequency(String id) {
+            int frequency = MAX_FREQUENCY;
+            for (int seed : SEEDS) {
+                frequency = Math.min(frequency, this.counters[index(id, seed)]);
+            }
+
+            return frequency;
+        }
+
+        private void increment(String id) {
+            int frequency = frequency(id);
+            if (frequency < MAX_FREQUENCY) {
+                for (int seed : SEEDS) {
+                    int index = index(id, seed);
+                    if (this.counters[index] == frequency) {
+                        this.counters[index]++;
+                    }
+                }
+            }
+
+            if (++this.samples == this.sampleSize) {
+                for (int i = 0; i < this.counters.length; i++) {
+                    this.counters[i] >>>= 1;
+                }
+
+                this.samples /= 2;
+            }
+        }
+
+        private int index(String id, int seed) {
+            int hash = id.hashCode() * seed;
+            return (hash ^ (hash >>> 16)) & this.mask;
+        }
+
+    }
+
+}
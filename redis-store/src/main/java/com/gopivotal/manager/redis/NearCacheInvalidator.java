@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Invalidates the entries of a {@link NearCache} when their keys are written, using Redis keyspace notifications.  A
+ * dedicated thread holds a subscription to the notifications of the store's database, and the cache is only active
+ * while that subscription is established.  When the subscription is lost the cache is deactivated, since
+ * notifications may have been missed, and the subscription is retried.
+ * <p>
+ * Keyspace notifications must be enabled on the Redis server for the generic, string, hash, expired and evicted event
+ * classes, e.g. {@code notify-keyspace-events K$ghxe}.
+ */
+final class NearCacheInvalidator extends JedisPubSub implements Runnable {
+
+    private static final String IGNORED_EVENT = "expire";
+
+    private final String channelPrefix;
+
+    private final JedisTemplate jedisTemplate;
+
+    private final Logger logger = LoggerFactory.getLogger(NearCacheInvalidator.class);
+
+    private final NearCache<?> nearCache;
+
+    private final long retryInterval;
+
+    private volatile boolean running = false;
+
+    private volatile Thread thread;
+
+    NearCacheInvalidator(JedisTemplate jedisTemplate, NearCache<?> nearCache, int database, long retryInterval) {
+        this.channelPrefix = String.format("__keyspace@%d__:", database);
+        this.jedisTemplate = jedisTemplate;
+        this.nearCache = nearCache;
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Returns whether a {@code notify-keyspace-events} configuration delivers all of the notifications needed to
+     * invalidate cached sessions
+     *
+     * @param notifyKeyspaceEvents the value of the {@code notify-keyspace-events} configuration
+     * @return {@code true} if all of the notifications needed are delivered, otherwise {@code false}
+     */
+    static boolean isConfigured(String notifyKeyspaceEvents) {
+        if (notifyKeyspaceEvents == null || notifyKeyspaceEvents.indexOf('K') < 0) {
+            return false;
+        }
+
+        if (notifyKeyspaceEvents.indexOf('A') >= 0) {
+            return true;
+        }
+
+        for (char eventClass : "g$hxe".toCharArray()) {
+            if (notifyKeyspaceEvents.indexOf(eventClass) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void onPMessage(String pattern, String channel, String message) {
+        // Extending the time-to-live of a session does not change its contents
+        if (channel.startsWith(this.channelPrefix) && !IGNORED_EVENT.equals(message)) {
+            this.nearCache.invalidate(channel.substring(this.channelPrefix.length()));
+        }
+    }
+
+    @Override
+    public void onPSubscribe(String pattern, int subscribedChannels) {
+        if (!this.running) {
+            punsubscribe();
+            return;
+        }
+
+        this.logger.debug("Subscribed to keyspace notifications, activating near cache");
+        this.nearCache.activate();
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                this.jedisTemplate.withJedis(new JedisTemplate.JedisOperation<Void>() {
+
+                    @Override
+                    public Void invoke(Jedis jedis) {
+                        jedis.psubscribe(NearCacheInvalidator.this,
+                                String.format("%s*", NearCacheInvalidator.this.channelPrefix));
+                        return null;
+                    }
+
+                });
+            } catch (JedisConnectionException e) {
+                if (this.running) {
+                    this.logger.warn("Lost subscription to keyspace notifications, deactivating near cache", e);
+                }
+            } finally {
+                this.nearCache.deactivate();
+            }
+
+            if (this.running) {
+                try {
+                    Thread.sleep(this.retryInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the subscriber thread
+     *
+     * @param name the name of the subscriber thread
+     */
+    void start(String name) {
+        this.running = true;
+
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the subscriber thread and deactivates the cache
+     *
+     * @throws InterruptedException if interrupted while waiting for the subscriber thread to stop
+     */
+    void stop() throws InterruptedException {
+        this.running = false;
+
+        if (isSubscribed()) {
+            punsubscribe();
+        }
+
+        if (this.thread != null) {
+            this.thread.interrupt();
+            this.thread.join(this.retryInterval);
+            this.thread = null;
+        }
+
+        this.nearCache.deactivate();
+    }
+
+}
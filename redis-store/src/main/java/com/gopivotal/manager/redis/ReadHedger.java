@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a second, hedged read when the first read of a value takes longer than usual, and uses whichever read answers
+ * first.  The delay before the hedged read is sent is a percentile of the latencies of recent first reads, so that
+ * only the slowest reads are hedged.  Until enough latencies have been recorded, reads are invoked directly and are
+ * not hedged.  When every thread reads are sent on is busy, reads are invoked directly on the calling thread and are
+ * not hedged.
+ */
+final class ReadHedger {
+
+    private static final int RECALCULATION_INTERVAL = 128;
+
+    private static final int SAMPLE_SIZE = 1024;
+
+    private final ExecutorService executor;
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final double percentile;
+
+    private final long[] samples = new long[SAMPLE_SIZE];
+
+    private final AtomicLong unhedged = new AtomicLong();
+
+    private final AtomicLong wins = new AtomicLong();
+
+    private long count = 0;
+
+    private long delay = -1;
+
+    ReadHedger(ExecutorService executor, double percentile) {
+        this.executor = executor;
+        this.percentile = percentile;
+    }
+
+    /**
+     * Returns the current delay before a hedged read is sent
+     *
+     * @return the current delay before a hedged read is sent, in nanoseconds, or {@code -1} if reads are not yet
+     * hedged
+     */
+    synchronized long getDelay() {
+        return this.delay;
+    }
+
+    /**
+     * Returns the number of hedged reads that have been sent
+     *
+     * @return the number of hedged reads that have been sent
+     */
+    long getHedges() {
+        return this.hedges.get();
+    }
+
+    /**
+     * Returns the number of reads that were not hedged because every thread reads are sent on was busy
+     *
+     * @return the number of reads that were not hedged because every thread reads are sent on was busy
+     */
+    long getUnhedged() {
+        return this.unhedged.get();
+    }
+
+    /**
+     * Returns the number of hedged reads whose result was used
+     *
+     * @return the number of hedged reads whose result was used
+     */
+    long getWins() {
+        return this.wins.get();
+    }
+
+    /**
+     * Reads a value, sending the hedged read if the first read has not answered within the current delay or has failed.
+     * A first read that answers within the delay without a value is not hedged.
+     *
+     * @param first  the first read
+     * @param hedged the hedged read
+     * @param <T>    the type of the value
+     * @return the first value read that is not {@code null}, or {@code null} if the first read answered within the
+     * delay without a value or neither read returned a value
+     * @throws Exception if neither read returned a value and the first read failed
+     */
+    <T> T read(Callable<T> first, Callable<T> hedged) throws Exception {
+        long delay = getDelay();
+        if (delay < 0) {
+            return timed(first).call();
+        }
+
+        CompletionService<T> completionService = new ExecutorCompletionService<>(this.executor);
+        Future<T> firstFuture;
+        try {
+            firstFuture = completionService.submit(timed(first));
+        } catch (RejectedExecutionException e) {
+            this.unhedged.incrementAndGet();
+            return timed(first).call();
+        }
+
+        Future<T> hedgedFuture = null;
+        boolean hedgeSent = false;
+
+        Future<T> completed = completionService.poll(delay, TimeUnit.NANOSECONDS);
+        if (completed == null) {
+            hedgedFuture = hedge(completionService, hedged);
+            hedgeSent = true;
+        }
+
+        Exception failure = null;
+        for (int pending = hedgedFuture == null ? 1 : 2; pending > 0; pending--) {
+            if (completed == null) {
+                completed = completionService.take();
+            }
+
+            try {
+                T value = completed.get();
+                if (value != null) {
+                    if (completed == hedgedFuture) {
+                        this.wins.incrementAndGet();
+                    } else if (hedgedFuture != null) {
+                        hedgedFuture.cancel(false);
+                    }
+
+                    return value;
+                }
+
+                if (!hedgeSent) {
+                    return null;
+                }
+            } catch (ExecutionException e) {
+                if (completed == firstFuture) {
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+
+            // The first read failed before the delay elapsed, so the hedged read is sent straight away
+            if (!hedgeSent) {
+                hedgedFuture = hedge(completionService, hedged);
+                hedgeSent = true;
+
+                if (hedgedFuture != null) {
+                    pending++;
+                }
+            }
+
+            completed = null;
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        return null;
+    }
+
+    private <T> Future<T> hedge(CompletionService<T> completionService, Callable<T> hedged) {
+        try {
+            Future<T> future = completionService.submit(hedged);
+            this.hedges.incrementAndGet();
+            return future;
+        } catch (RejectedExecutionException e) {
+            this.unhedged.incrementAndGet();
+            return null;
+        }
+    }
+
+    private synchronized void record(long latency) {
+        this.samples[(int) (this.count++ % SAMPLE_SIZE)] = latency;
+
+        if (this.count >= SAMPLE_SIZE / 8 && this.count % RECALCULATION_INTERVAL == 0) {
+            long[] sorted = Arrays.copyOf(this.samples, (int) Math.min(this.count, SAMPLE_SIZE));
+            Arrays.sort(sorted);
+            this.delay = sorted[(int) Math.min(sorted.length - 1, Math.floor(sorted.length * this.percentile / 100))];
+        }
+    }
+
+    /**
+     * Stops the threads the reads are sent on once the reads in progress have completed
+     */
+    void shutdown() {
+        this.executor.shutdown();
+    }
+
+    private <T> Callable<T> timed(final Callable<T> read) {
+        return new Callable<T>() {
+
+            @Override
+            public T call() throws Exception {
+                long start = System.nanoTime();
+
+                try {
+                    return read.call();
+                } finally {
+                    record(System.nanoTime() - start);
+                }
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import com.gopivotal.manager.SerializedSession;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Lua script that is invoked by its SHA1 digest using {@code EVALSHA}.  If the server's script cache does not contain
+ * the script (e.g. after a restart, failover or {@code SCRIPT FLUSH}), the script is sent with {@code EVAL}, which also
+ * caches it for subsequent invocations.
+ */
+final class RedisScript {
+
+    private final byte[] sha;
+
+    private final byte[] source;
+
+    RedisScript(String source) {
+        this.source = SafeEncoder.encode(source);
+        this.sha = SafeEncoder.encode(sha1(this.source));
+    }
+
+    /**
+     * Invokes the script
+     *
+     * @param jedis the connection to invoke the script on
+     * @param keys  the keys passed to the script
+     * @param args  the arguments passed to the script
+     * @return the result of the script
+     */
+    Object evalsha(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return jedis.evalsha(this.sha, keys, args);
+        } catch (JedisNoScriptException e) {
+            return jedis.eval(this.source, keys, args);
+        }
+    }
+
+    /**
+     * Invokes the script, passing a serialized session as the final argument.  The serialized session is streamed to
+     * the connection rather than being copied into the command.
+     *
+     * @param jedis   the connection to invoke the script on
+     * @param keys    the keys passed to the script
+     * @param args    the arguments passed to the script, excluding the final argument
+     * @param payload the final argument passed to the script
+     * @return the result of the script
+     * @see StreamingCommand
+     */
+    Object evalsha(Jedis jedis, List<byte[]> keys, List<byte[]> args, SerializedSession payload) {
+        try {
+            return command(Protocol.Command.EVALSHA, this.sha, keys, args, payload).execute(jedis);
+        } catch (JedisNoScriptException e) {
+            return command(Protocol.Command.EVAL, this.source, keys, args, payload).execute(jedis);
+        }
+    }
+
+    /**
+     * Queues an invocation of the script on a pipeline.  The script cache is not consulted until the pipeline is
+     * synchronized, so callers should check the response with {@link #isNoScript(Response)} and invoke the script
+     * again with {@link #evalsha(Jedis, List, List)} if the script was not cached.
+     *
+     * @param pipeline the pipeline to queue the invocation on
+     * @param keys     the keys passed to the script
+     * @param args     the arguments passed to the script
+     * @return the response of the invocation
+     */
+    Response<Object> evalsha(Pipeline pipeline, List<byte[]> keys, List<byte[]> args) {
+        return pipeline.evalsha(this.sha, keys, args);
+    }
+
+    /**
+     * Loads the script into the server's script cache
+     *
+     * @param jedis the connection to load the script on
+     */
+    void load(Jedis jedis) {
+        jedis.scriptLoad(this.source);
+    }
+
+    /**
+     * Returns whether a pipelined invocation failed because the script was not cached
+     *
+     * @param response the response of the pipelined invocation
+     * @return {@code true} if the invocation failed because the script was not cached, otherwise {@code false}
+     */
+    static boolean isNoScript(Response<Object> response) {
+        try {
+            response.get();
+            return false;
+        } catch (JedisNoScriptException e) {
+            return true;
+        } catch (JedisDataException e) {
+            return false;
+        }
+    }
+
+    private static StreamingCommand command(Protocol.Command command, byte[] script, List<byte[]> keys,
+                                            List<byte[]> args, SerializedSession payload) {
+        List<byte[]> arguments = new ArrayList<>(keys.size() + args.size() + 3);
+        arguments.add(command.raw);
+        arguments.add(script);
+        arguments.add(Protocol.toByteArray(keys.size()));
+        arguments.addAll(keys);
+        arguments.addAll(args);
+
+        return new StreamingCommand(arguments, payload);
+    }
+
+    private static String sha1(byte[] source) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(source)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -17,52 +17,256 @@
 package com.gopivotal.manager.redis;
 
 import com.gopivotal.manager.AbstractLifecycle;
+import com.gopivotal.manager.ExtendedStore;
+import com.gopivotal.manager.JavaSessionSerializer;
 import com.gopivotal.manager.JmxSupport;
 import com.gopivotal.manager.LockTemplate;
 import com.gopivotal.manager.PropertyChangeSupport;
+import com.gopivotal.manager.SerializedSession;
+import com.gopivotal.manager.SessionFields;
 import com.gopivotal.manager.SessionFlushValve;
+import com.gopivotal.manager.SessionChangeTracker;
+import com.gopivotal.manager.SessionCompression;
+import com.gopivotal.manager.SessionMetadata;
 import com.gopivotal.manager.SessionSerializationUtils;
+import com.gopivotal.manager.SessionSerializer;
 import com.gopivotal.manager.StandardJmxSupport;
 import com.gopivotal.manager.StandardPropertyChangeSupport;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Loader;
 import org.apache.catalina.Manager;
 import org.apache.catalina.Session;
 import org.apache.catalina.Store;
 import org.apache.catalina.Valve;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Protocol;
 import redis.clients.jedis.Response;
-import redis.clients.jedis.Transaction;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
 
 import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * An implementation of {@link Store} that persists data to Redis
+ * An implementation of {@link Store} that persists data to Redis.  Each session is stored with a time-to-live derived
+ * from its maximum inactive interval so that abandoned sessions are expired by Redis itself, and is recorded in an
+ * expiration index that allows expired sessions to be removed from the session index without a full enumeration.
  */
-public final class RedisStore extends AbstractLifecycle implements RedisStoreManagement, Store {
+public final class RedisStore extends AbstractLifecycle implements ExtendedStore, RedisStoreManagement {
+
+    private static final long ERROR_LOG_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    private static final RedisScript EXPIRE_SCRIPT = new RedisScript(
+            "local removed = 0\n" +
+            "for i = 4, #KEYS do\n" +
+            "  local expiration = redis.call('ZSCORE', KEYS[2], KEYS[i])\n" +
+            "  if expiration and tonumber(expiration) <= tonumber(ARGV[1]) then\n" +
+            "    redis.call('DEL', KEYS[i])\n" +
+            "    redis.call('SREM', KEYS[1], KEYS[i])\n" +
+            "    redis.call('ZREM', KEYS[2], KEYS[i])\n" +
+            "    redis.call('HDEL', KEYS[3], KEYS[i])\n" +
+            "    removed = removed + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "return removed");
+
+    private static final RedisScript HASH_SAVE_SCRIPT = new RedisScript(
+            "if ARGV[5] == '1' then\n" +
+            "  redis.call('DEL', KEYS[1])\n" +
+            "elseif redis.call('TYPE', KEYS[1]).ok ~= 'hash' then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "local removed = tonumber(ARGV[6])\n" +
+            "for i = 7, 6 + removed do\n" +
+            "  redis.call('HDEL', KEYS[1], ARGV[i])\n" +
+            "end\n" +
+            "for i = 7 + removed, #ARGV, 2 do\n" +
+            "  redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+            "end\n" +
+            "if tonumber(ARGV[2]) > 0 then\n" +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+            "  redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])\n" +
+            "else\n" +
+            "  redis.call('PERSIST', KEYS[1])\n" +
+            "  redis.call('ZREM', KEYS[3], ARGV[1])\n" +
+            "end\n" +
+            "redis.call('SADD', KEYS[2], ARGV[1])\n" +
+            "redis.call('HSET', KEYS[4], ARGV[1], ARGV[4])\n" +
+            "return 1");
+
+    private static final long JOURNAL_REPLAY_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    // Saves a journaled session unless the session in Redis has been accessed more recently than ARGV[6]
+    private static final RedisScript JOURNAL_SAVE_SCRIPT = new RedisScript(
+            "local function accessed(metadata)\n" +
+            "  local time = 0\n" +
+            String.format("  for i = %d, %d do\n", SessionMetadata.THIS_ACCESSED_TIME_OFFSET + 1,
+                    SessionMetadata.THIS_ACCESSED_TIME_OFFSET + 8) +
+            "    time = time * 256 + string.byte(metadata, i)\n" +
+            "  end\n" +
+            "  return time\n" +
+            "end\n" +
+            "local current = redis.call('HGET', KEYS[4], ARGV[1])\n" +
+            String.format("if current and #current == %d and string.byte(current, 1) == %d and\n",
+                    SessionMetadata.LENGTH, SessionMetadata.FORMAT_VERSION) +
+            "    redis.call('EXISTS', KEYS[1]) == 1 and accessed(current) > tonumber(ARGV[6]) then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "if tonumber(ARGV[2]) > 0 then\n" +
+            "  redis.call('SETEX', KEYS[1], ARGV[2], ARGV[5])\n" +
+            "  redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])\n" +
+            "else\n" +
+            "  redis.call('SET', KEYS[1], ARGV[5])\n" +
+            "  redis.call('ZREM', KEYS[3], ARGV[1])\n" +
+            "end\n" +
+            "redis.call('SADD', KEYS[2], ARGV[1])\n" +
+            "redis.call('HSET', KEYS[4], ARGV[1], ARGV[4])\n" +
+            "return 1");
+
+    private static final long NEAR_CACHE_RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    private static final String NOTIFY_KEYSPACE_EVENTS = "notify-keyspace-events";
+
+    private static final RedisScript REMOVE_SCRIPT = new RedisScript(
+            "redis.call('DEL', KEYS[1])\n" +
+            "redis.call('SREM', KEYS[2], ARGV[1])\n" +
+            "redis.call('ZREM', KEYS[3], ARGV[1])\n" +
+            "redis.call('HDEL', KEYS[4], ARGV[1])\n" +
+            "return 1");
+
+    private static final RedisScript SAVE_SCRIPT = new RedisScript(
+            "if tonumber(ARGV[2]) > 0 then\n" +
+            "  redis.call('SETEX', KEYS[1], ARGV[2], ARGV[5])\n" +
+            "  redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])\n" +
+            "else\n" +
+            "  redis.call('SET', KEYS[1], ARGV[5])\n" +
+            "  redis.call('ZREM', KEYS[3], ARGV[1])\n" +
+            "end\n" +
+            "redis.call('SADD', KEYS[2], ARGV[1])\n" +
+            "redis.call('HSET', KEYS[4], ARGV[1], ARGV[4])\n" +
+            "return 1");
+
+    private static final RedisScript TOUCH_SCRIPT = new RedisScript(
+            "if redis.call('EXPIRE', KEYS[1], ARGV[2]) == 0 then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])\n" +
+            "redis.call('HSET', KEYS[4], ARGV[1], ARGV[4])\n" +
+            "return 1");
+
+    private static final RedisScript UNLINK_SCRIPT = new RedisScript(
+            "local command = 'UNLINK'\n" +
+            "for i = 4, #KEYS do\n" +
+            "  redis.call('SREM', KEYS[1], KEYS[i])\n" +
+            "  redis.call('ZREM', KEYS[2], KEYS[i])\n" +
+            "  redis.call('HDEL', KEYS[3], KEYS[i])\n" +
+            "  local result = redis.pcall(command, KEYS[i])\n" +
+            "  if type(result) == 'table' and result.err then\n" +
+            "    command = 'DEL'\n" +
+            "    redis.call(command, KEYS[i])\n" +
+            "  end\n" +
+            "end\n" +
+            "return #KEYS - 3");
+
+    private static final List<RedisScript> SCRIPTS = Arrays.asList(EXPIRE_SCRIPT, HASH_SAVE_SCRIPT,
+            JOURNAL_SAVE_SCRIPT, REMOVE_SCRIPT, SAVE_SCRIPT, TOUCH_SCRIPT, UNLINK_SCRIPT);
+
+    private final LifecycleListener expirationListener = new LifecycleListener() {
+
+        @Override
+        public void lifecycleEvent(LifecycleEvent event) {
+            if (Lifecycle.PERIODIC_EVENT.equals(event.getType())) {
+                processExpires();
+            }
+        }
+
+    };
 
-    private static final String SESSIONS_KEY = "sessions";
     private final JmxSupport jmxSupport;
     private final LockTemplate lockTemplate = new LockTemplate();
     private final Logger logger = LoggerFactory.getLogger(RedisStore.class);
     private final PropertyChangeSupport propertyChangeSupport;
+    private final SessionCompression sessionCompression = new SessionCompression();
+    private final ThrottledLogger throttledLogger = new ThrottledLogger(this.logger, ERROR_LOG_INTERVAL);
+    private volatile int batchSize = 1000;
+    private volatile int circuitBreakerFailureRate = 50;
+    private volatile int circuitBreakerOpenDuration = 5000;
+    private volatile ClusterConnectionHandler clusterConnectionHandler;
+    private volatile int clusterIndexShards = 128;
+    private volatile String clusterNodes;
+    private volatile boolean connectionPoolBlockWhenExhausted = true;
+    private volatile int connectionPoolEvictionInterval = 30000;
+    private volatile int connectionPoolMaxIdle = GenericObjectPoolConfig.DEFAULT_MAX_IDLE;
+    private volatile int connectionPoolMaxWait = -1;
+    private volatile int connectionPoolMinEvictableIdleTime = 60000;
+    private volatile int connectionPoolMinIdle = GenericObjectPoolConfig.DEFAULT_MIN_IDLE;
     private volatile int connectionPoolSize = GenericKeyedObjectPoolConfig.DEFAULT_MAX_TOTAL;
+    private volatile boolean connectionPoolTestOnBorrow = GenericObjectPoolConfig.DEFAULT_TEST_ON_BORROW;
+    private volatile boolean connectionPoolTestWhileIdle = true;
     private volatile int database = Protocol.DEFAULT_DATABASE;
+    private volatile int hedgePercentile = 0;
     private volatile String host = "localhost";
-    private volatile JedisPool jedisPool;
+    private volatile Pool<Jedis> jedisPool;
     private volatile JedisTemplate jedisTemplate;
+    private volatile SessionJournal journal;
+    private volatile String journalDirectory;
+    private volatile int journalMaxSize = 100;
+    private volatile double journalReplayThroughput = 0;
+    private volatile ScheduledExecutorService journalReplayer;
+    private volatile KeyScheme keyScheme = KeyScheme.standalone();
+    private volatile boolean lazyAttributes = false;
     private volatile Manager manager;
+    private volatile NearCache<StoredSession> nearCache;
+    private volatile NearCacheInvalidator nearCacheInvalidator;
+    private volatile int nearCacheSize = 0;
     private volatile String password;
     private volatile int port = Protocol.DEFAULT_PORT;
+    private volatile ReadHedger readHedger;
+    private volatile int readYourWritesWindow = 5000;
+    private volatile ReplicaRouter replicaRouter;
+    private volatile String replicas;
+    private volatile String sentinelMaster = "mymaster";
+    private volatile String sentinels;
+    private volatile int serializationBufferSize = SessionSerializationUtils.DEFAULT_MAX_BUFFER_SIZE;
     private volatile SessionSerializationUtils sessionSerializationUtils;
+    private volatile SessionSerializer sessionSerializer = new JavaSessionSerializer();
+    private volatile StorageLayout storageLayout = StorageLayout.STRING;
     private volatile int timeout = Protocol.DEFAULT_TIMEOUT;
 
     /**
@@ -76,10 +280,23 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
         this.propertyChangeSupport = new StandardPropertyChangeSupport(this);
     }
 
-    RedisStore(JedisPool jedisPool, JmxSupport jmxSupport, PropertyChangeSupport propertyChangeSupport,
+    RedisStore(Pool<Jedis> jedisPool, JmxSupport jmxSupport, PropertyChangeSupport propertyChangeSupport,
             SessionSerializationUtils sessionSerializationUtils) {
+        this(new JedisTemplate(jedisPool), KeyScheme.standalone(), jmxSupport, propertyChangeSupport,
+                sessionSerializationUtils);
         this.jedisPool = jedisPool;
-        this.jedisTemplate = new JedisTemplate(this.jedisPool);
+    }
+
+    RedisStore(Pool<Jedis> jedisPool, ReplicaRouter replicaRouter, JmxSupport jmxSupport,
+            PropertyChangeSupport propertyChangeSupport, SessionSerializationUtils sessionSerializationUtils) {
+        this(jedisPool, jmxSupport, propertyChangeSupport, sessionSerializationUtils);
+        this.replicaRouter = replicaRouter;
+    }
+
+    RedisStore(JedisTemplate jedisTemplate, KeyScheme keyScheme, JmxSupport jmxSupport,
+            PropertyChangeSupport propertyChangeSupport, SessionSerializationUtils sessionSerializationUtils) {
+        this.jedisTemplate = jedisTemplate;
+        this.keyScheme = keyScheme;
         this.jmxSupport = jmxSupport;
         this.propertyChangeSupport = propertyChangeSupport;
         this.sessionSerializationUtils = sessionSerializationUtils;
@@ -97,24 +314,34 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
             @Override
             public Void invoke() {
                 try {
-                    RedisStore.this.jedisTemplate.withJedis(new JedisTemplate.JedisOperation<Void>() {
+                    Iterator<String> sessionIds = keyIterator();
+                    Map<Integer, List<String>> batches = new HashMap<>();
 
-                        @Override
-                        public Void invoke(Jedis jedis) {
-                            Set<String> sessions = jedis.smembers(SESSIONS_KEY);
-                            String[] sessionsArray = sessions.toArray(new String[sessions.size()]);
+                    while (sessionIds.hasNext()) {
+                        String sessionId = sessionIds.next();
+                        int shard = RedisStore.this.keyScheme.shard(sessionId);
+
+                        List<String> batch = batches.get(shard);
+                        if (batch == null) {
+                            batch = new ArrayList<>();
+                            batches.put(shard, batch);
+                        }
 
-                            Transaction t = jedis.multi();
-                            t.srem(SESSIONS_KEY, sessionsArray);
-                            t.del(sessionsArray);
-                            t.exec();
+                        batch.add(sessionId);
 
-                            return null;
+                        if (batch.size() == RedisStore.this.batchSize) {
+                            unlink(shard, batch);
+                            batch.clear();
                         }
+                    }
 
-                    });
+                    for (Map.Entry<Integer, List<String>> batch : batches.entrySet()) {
+                        if (!batch.getValue().isEmpty()) {
+                            unlink(batch.getKey(), batch.getValue());
+                        }
+                    }
                 } catch (JedisConnectionException e) {
-                    RedisStore.this.logger.error("Unable to clear persisted sessions", e);
+                    RedisStore.this.throttledLogger.error("Unable to clear persisted sessions", e);
                 }
 
                 return null;
@@ -124,31 +351,34 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public int getConnectionPoolSize() {
+    public int getBatchSize() {
         return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
 
             @Override
             public Integer invoke() {
-                return RedisStore.this.connectionPoolSize;
+                return RedisStore.this.batchSize;
             }
 
         });
     }
 
     /**
-     * Sets the connection pool size
+     * Sets the maximum number of sessions handled by a single Redis command during bulk operations.  Must be positive.
      *
-     * @param connectionPoolSize the connectionPoolSize
+     * @param batchSize the maximum number of sessions handled by a single Redis command
      */
-    public void setConnectionPoolSize(final int connectionPoolSize) {
+    public void setBatchSize(final int batchSize) {
         this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
             public Void invoke() {
-                int previous = RedisStore.this.connectionPoolSize;
-                RedisStore.this.connectionPoolSize = connectionPoolSize;
-                RedisStore.this.propertyChangeSupport.notify("connectionPoolSize", previous,
-                        RedisStore.this.connectionPoolSize);
+                if (batchSize < 1) {
+                    throw new IllegalArgumentException("The batch size must be positive");
+                }
+
+                int previous = RedisStore.this.batchSize;
+                RedisStore.this.batchSize = batchSize;
+                RedisStore.this.propertyChangeSupport.notify("batchSize", previous, RedisStore.this.batchSize);
                 return null;
             }
 
@@ -156,30 +386,32 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public int getDatabase() {
+    public int getCircuitBreakerFailureRate() {
         return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
 
             @Override
             public Integer invoke() {
-                return RedisStore.this.database;
+                return RedisStore.this.circuitBreakerFailureRate;
             }
 
         });
     }
 
     /**
-     * Sets the database to connect to
+     * Sets the percentage of the last 20 calls to a Redis server that must fail for calls to it to be failed
+     * immediately rather than waiting for the connection timeout.  {@code 0} disables the circuit breaker.
      *
-     * @param database the database to connect to
+     * @param circuitBreakerFailureRate the percentage of failed calls at which calls are failed immediately
      */
-    public void setDatabase(final int database) {
+    public void setCircuitBreakerFailureRate(final int circuitBreakerFailureRate) {
         this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
             public Void invoke() {
-                int previous = RedisStore.this.database;
-                RedisStore.this.database = database;
-                RedisStore.this.propertyChangeSupport.notify("database", previous, RedisStore.this.database);
+                int previous = RedisStore.this.circuitBreakerFailureRate;
+                RedisStore.this.circuitBreakerFailureRate = circuitBreakerFailureRate;
+                RedisStore.this.propertyChangeSupport.notify("circuitBreakerFailureRate", previous,
+                        RedisStore.this.circuitBreakerFailureRate);
                 return null;
             }
 
@@ -187,30 +419,32 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public String getHost() {
-        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+    public int getCircuitBreakerOpenDuration() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
 
             @Override
-            public String invoke() {
-                return RedisStore.this.host;
+            public Integer invoke() {
+                return RedisStore.this.circuitBreakerOpenDuration;
             }
 
         });
     }
 
     /**
-     * Sets the host to connect to
+     * Sets how long calls to a failing Redis server are failed immediately before a single call is let through to
+     * probe whether it has recovered
      *
-     * @param host the host to connect to
+     * @param circuitBreakerOpenDuration how long calls are failed immediately, in milliseconds
      */
-    public void setHost(final String host) {
+    public void setCircuitBreakerOpenDuration(final int circuitBreakerOpenDuration) {
         this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
             public Void invoke() {
-                String previous = RedisStore.this.host;
-                RedisStore.this.host = host;
-                RedisStore.this.propertyChangeSupport.notify("host", previous, RedisStore.this.host);
+                int previous = RedisStore.this.circuitBreakerOpenDuration;
+                RedisStore.this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+                RedisStore.this.propertyChangeSupport.notify("circuitBreakerOpenDuration", previous,
+                        RedisStore.this.circuitBreakerOpenDuration);
                 return null;
             }
 
@@ -218,27 +452,51 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public Manager getManager() {
-        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Manager>() {
+    public long getCircuitBreakerOpenings() {
+        JedisTemplate jedisTemplate = this.jedisTemplate;
+        return jedisTemplate == null ? 0 : jedisTemplate.getCircuitBreaker().getOpenings();
+    }
+
+    @Override
+    public long getCircuitBreakerRejections() {
+        JedisTemplate jedisTemplate = this.jedisTemplate;
+        return jedisTemplate == null ? 0 : jedisTemplate.getCircuitBreaker().getRejections();
+    }
+
+    @Override
+    public String getCircuitBreakerState() {
+        JedisTemplate jedisTemplate = this.jedisTemplate;
+        return jedisTemplate == null ? null : jedisTemplate.getCircuitBreaker().getState();
+    }
+
+    @Override
+    public int getClusterIndexShards() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
 
             @Override
-            public Manager invoke() {
-                return RedisStore.this.manager;
+            public Integer invoke() {
+                return RedisStore.this.clusterIndexShards;
             }
 
         });
     }
 
-    @Override
-    public void setManager(final Manager manager) {
+    /**
+     * Sets the number of shards the session indexes are divided into with Redis Cluster.  Each shard's indexes and
+     * sessions are stored in a single slot, so more shards spread the indexes across more primaries.  Must be the same
+     * on every instance sharing the cluster.
+     *
+     * @param clusterIndexShards the number of shards the session indexes are divided into
+     */
+    public void setClusterIndexShards(final int clusterIndexShards) {
         this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
             public Void invoke() {
-                Manager previous = RedisStore.this.manager;
-                RedisStore.this.manager = manager;
-                RedisStore.this.sessionSerializationUtils = new SessionSerializationUtils(manager);
-                RedisStore.this.propertyChangeSupport.notify("manager", previous, RedisStore.this.manager);
+                int previous = RedisStore.this.clusterIndexShards;
+                RedisStore.this.clusterIndexShards = clusterIndexShards;
+                RedisStore.this.propertyChangeSupport.notify("clusterIndexShards", previous,
+                        RedisStore.this.clusterIndexShards);
                 return null;
             }
 
@@ -246,30 +504,32 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public String getPassword() {
+    public String getClusterNodes() {
         return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
 
             @Override
             public String invoke() {
-                return RedisStore.this.password;
+                return RedisStore.this.clusterNodes;
             }
 
         });
     }
 
     /**
-     * Sets the password to use when connecting
+     * Sets the Redis Cluster nodes to discover the cluster from, as a comma-separated list of {@code host:port} pairs.
+     * When set, sessions are stored in Redis Cluster instead of on the server configured by {@code host} and {@code
+     * port}, and {@code database} is ignored.
      *
-     * @param password the password to use when connecting
+     * @param clusterNodes the Redis Cluster nodes to discover the cluster from
      */
-    public void setPassword(final String password) {
+    public void setClusterNodes(final String clusterNodes) {
         this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
             public Void invoke() {
-                String previous = RedisStore.this.password;
-                RedisStore.this.password = password;
-                RedisStore.this.propertyChangeSupport.notify("password", previous, RedisStore.this.password);
+                String previous = RedisStore.this.clusterNodes;
+                RedisStore.this.clusterNodes = clusterNodes;
+                RedisStore.this.propertyChangeSupport.notify("clusterNodes", previous, RedisStore.this.clusterNodes);
                 return null;
             }
 
@@ -277,30 +537,31 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public int getPort() {
-        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+    public String getCompression() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
 
             @Override
-            public Integer invoke() {
-                return RedisStore.this.port;
+            public String invoke() {
+                return RedisStore.this.sessionCompression.getAlgorithm().name().toLowerCase(Locale.ENGLISH);
             }
 
         });
     }
 
     /**
-     * Sets the port to connect to
+     * Sets the algorithm used to compress serialized sessions: {@code none}, {@code snappy} or {@code deflate}
      *
-     * @param port the port to connect to
+     * @param compression the algorithm used to compress serialized sessions
      */
-    public void setPort(final int port) {
+    public void setCompression(final String compression) {
         this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
             public Void invoke() {
-                int previous = RedisStore.this.port;
-                RedisStore.this.port = port;
-                RedisStore.this.propertyChangeSupport.notify("port", previous, RedisStore.this.port);
+                String previous = getCompression();
+                RedisStore.this.sessionCompression.setAlgorithm(
+                        SessionCompression.Algorithm.valueOf(compression.toUpperCase(Locale.ENGLISH)));
+                RedisStore.this.propertyChangeSupport.notify("compression", previous, getCompression());
                 return null;
             }
 
@@ -308,62 +569,73 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public int getSize() {
+    public int getCompressionMinSize() {
         return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
 
             @Override
             public Integer invoke() {
-                int size;
-
-                try {
-                    size = RedisStore.this.jedisTemplate.withJedis(new JedisTemplate.JedisOperation<Integer>() {
-
-                        @Override
-                        public Integer invoke(Jedis jedis) {
-                            Transaction t = jedis.multi();
-                            Response<Long> count = t.scard(SESSIONS_KEY);
-                            t.exec();
+                return RedisStore.this.sessionCompression.getMinSize();
+            }
 
-                            return count.get().intValue();
-                        }
+        });
+    }
 
-                    });
-                } catch (JedisConnectionException e) {
-                    RedisStore.this.logger.error("Unable to get the number of persisted sessions", e);
-                    size = Integer.MIN_VALUE;
-                }
+    /**
+     * Sets the minimum size of a serialized session for it to be compressed
+     *
+     * @param compressionMinSize the minimum size of a serialized session for it to be compressed, in bytes
+     */
+    public void setCompressionMinSize(final int compressionMinSize) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
-                return size;
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.sessionCompression.getMinSize();
+                RedisStore.this.sessionCompression.setMinSize(compressionMinSize);
+                RedisStore.this.propertyChangeSupport.notify("compressionMinSize", previous, compressionMinSize);
+                return null;
             }
 
         });
     }
 
     @Override
-    public int getTimeout() {
-        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+    public double getCompressionRatio() {
+        return this.sessionCompression.getCompressionRatio();
+    }
+
+    @Override
+    public long getCompressionTime() {
+        return this.sessionCompression.getCompressionTime();
+    }
+
+    @Override
+    public boolean isConnectionPoolBlockWhenExhausted() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Boolean>() {
 
             @Override
-            public Integer invoke() {
-                return RedisStore.this.timeout;
+            public Boolean invoke() {
+                return RedisStore.this.connectionPoolBlockWhenExhausted;
             }
 
         });
     }
 
     /**
-     * Sets the connection timeout
+     * Sets whether a request for a connection waits, for up to {@code connectionPoolMaxWait}, when every connection in
+     * the pool is in use.  Otherwise the request fails immediately.
      *
-     * @param timeout the connection timeout
+     * @param connectionPoolBlockWhenExhausted whether a request for a connection waits when every connection is in use
      */
-    public void setTimeout(final int timeout) {
+    public void setConnectionPoolBlockWhenExhausted(final boolean connectionPoolBlockWhenExhausted) {
         this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
             public Void invoke() {
-                int previous = RedisStore.this.timeout;
-                RedisStore.this.timeout = timeout;
-                RedisStore.this.propertyChangeSupport.notify("timeout", previous, RedisStore.this.timeout);
+                boolean previous = RedisStore.this.connectionPoolBlockWhenExhausted;
+                RedisStore.this.connectionPoolBlockWhenExhausted = connectionPoolBlockWhenExhausted;
+                RedisStore.this.propertyChangeSupport.notify("connectionPoolBlockWhenExhausted", previous,
+                        RedisStore.this.connectionPoolBlockWhenExhausted);
                 return null;
             }
 
@@ -371,31 +643,33 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public String getUri() {
-        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+    public int getConnectionPoolEvictionInterval() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
             @Override
-            public String invoke() {
-                return String.format("redis://%s%s:%d/%d", getUserInfo(), RedisStore.this.host,
-                        RedisStore.this.port, RedisStore.this.database);
+            public Integer invoke() {
+                return RedisStore.this.connectionPoolEvictionInterval;
             }
+
         });
     }
 
     /**
-     * Sets the connection URI
+     * Sets the interval between runs of the idle connection evictor, which closes connections that have been idle for
+     * too long, tests idle connections and opens connections up to {@code connectionPoolMinIdle}.  A negative value
+     * disables the evictor.
      *
-     * @param uri the connection URI
+     * @param connectionPoolEvictionInterval the interval between runs of the idle connection evictor, in milliseconds
      */
-    public void setUri(final String uri) {
+    public void setConnectionPoolEvictionInterval(final int connectionPoolEvictionInterval) {
         this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
             public Void invoke() {
-                URI richUri = URI.create(uri);
-                setHost(richUri.getHost());
-                setPort(richUri.getPort());
-                setPassword(parsePassword(richUri));
-                setDatabase(parseDatabase(richUri));
+                int previous = RedisStore.this.connectionPoolEvictionInterval;
+                RedisStore.this.connectionPoolEvictionInterval = connectionPoolEvictionInterval;
+                RedisStore.this.propertyChangeSupport.notify("connectionPoolEvictionInterval", previous,
+                        RedisStore.this.connectionPoolEvictionInterval);
                 return null;
             }
 
@@ -403,97 +677,99 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public String[] keys() {
-        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String[]>() {
+    public int getConnectionPoolMaxIdle() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
 
             @Override
-            public String[] invoke() {
-                String[] keys;
-
-                try {
-                    keys = RedisStore.this.jedisTemplate.withJedis(new JedisTemplate.JedisOperation<String[]>() {
-
-                        @Override
-                        public String[] invoke(Jedis jedis) {
-                            Transaction t = jedis.multi();
-                            Response<Set<String>> sessionIds = t.smembers(SESSIONS_KEY);
-                            t.exec();
+            public Integer invoke() {
+                return RedisStore.this.connectionPoolMaxIdle;
+            }
 
-                            return sessionIds.get().toArray(new String[sessionIds.get().size()]);
-                        }
+        });
+    }
 
-                    });
-                } catch (JedisConnectionException e) {
-                    RedisStore.this.logger.error("Unable to get the keys of persisted sessions", e);
-                    keys = new String[0];
-                }
+    /**
+     * Sets the maximum number of idle connections kept in the pool.  Connections returned to a pool that already holds
+     * this many idle connections are closed.
+     *
+     * @param connectionPoolMaxIdle the maximum number of idle connections kept in the pool
+     */
+    public void setConnectionPoolMaxIdle(final int connectionPoolMaxIdle) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
-                return keys;
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.connectionPoolMaxIdle;
+                RedisStore.this.connectionPoolMaxIdle = connectionPoolMaxIdle;
+                RedisStore.this.propertyChangeSupport.notify("connectionPoolMaxIdle", previous,
+                        RedisStore.this.connectionPoolMaxIdle);
+                return null;
             }
 
         });
     }
 
     @Override
-    public Session load(final String id) {
-        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Session>() {
+    public int getConnectionPoolMaxWait() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
 
             @Override
-            public Session invoke() {
-                Session session;
-
-                try {
-                    session = RedisStore.this.jedisTemplate.withJedis(new JedisTemplate.JedisOperation<Session>() {
+            public Integer invoke() {
+                return RedisStore.this.connectionPoolMaxWait;
+            }
 
-                        @Override
-                        public Session invoke(Jedis jedis) {
-                            try {
-                                Transaction t = jedis.multi();
-                                Response<byte[]> session = t.get(id.getBytes(Protocol.CHARSET));
-                                t.exec();
+        });
+    }
 
-                                return RedisStore.this.sessionSerializationUtils.deserialize(session.get());
-                            } catch (ClassNotFoundException | IOException e) {
-                                RedisStore.this.logger.error("Unable to load session {}. Empty session created.", id, e);
-                                return RedisStore.this.manager.createSession(id);
-                            }
-                        }
-                    });
-                } catch (JedisConnectionException e) {
-                    RedisStore.this.logger.error("Unable to load session {}. Empty session created", id, e);
-                    session = RedisStore.this.manager.createSession(id);
-                }
+    /**
+     * Sets the maximum time a request waits for a connection when every connection in the pool is in use.  A negative
+     * value waits indefinitely.
+     *
+     * @param connectionPoolMaxWait the maximum time a request waits for a connection, in milliseconds
+     */
+    public void setConnectionPoolMaxWait(final int connectionPoolMaxWait) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
-                return session;
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.connectionPoolMaxWait;
+                RedisStore.this.connectionPoolMaxWait = connectionPoolMaxWait;
+                RedisStore.this.propertyChangeSupport.notify("connectionPoolMaxWait", previous,
+                        RedisStore.this.connectionPoolMaxWait);
+                return null;
             }
 
         });
     }
 
     @Override
-    public void remove(final String id) {
-        this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
+    public int getConnectionPoolMinEvictableIdleTime() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
 
             @Override
-            public Void invoke() {
-                try {
-                    RedisStore.this.jedisTemplate.withJedis(new JedisTemplate.JedisOperation<Void>() {
-
-                        @Override
-                        public Void invoke(Jedis jedis) {
-                            Transaction t = jedis.multi();
-                            t.srem(SESSIONS_KEY, id);
-                            t.del(id);
-                            t.exec();
+            public Integer invoke() {
+                return RedisStore.this.connectionPoolMinEvictableIdleTime;
+            }
 
-                            return null;
-                        }
+        });
+    }
 
-                    });
-                } catch (JedisConnectionException e) {
-                    RedisStore.this.logger.error("Unable to remove session {}", id, e);
-                }
+    /**
+     * Sets the time a connection must have been idle for before the idle connection evictor can close it.  A negative
+     * value keeps idle connections open.
+     *
+     * @param connectionPoolMinEvictableIdleTime the time a connection must have been idle for before it can be
+     *                                           evicted, in milliseconds
+     */
+    public void setConnectionPoolMinEvictableIdleTime(final int connectionPoolMinEvictableIdleTime) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.connectionPoolMinEvictableIdleTime;
+                RedisStore.this.connectionPoolMinEvictableIdleTime = connectionPoolMinEvictableIdleTime;
+                RedisStore.this.propertyChangeSupport.notify("connectionPoolMinEvictableIdleTime", previous,
+                        RedisStore.this.connectionPoolMinEvictableIdleTime);
                 return null;
             }
 
@@ -501,107 +777,2245 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
     }
 
     @Override
-    public void removePropertyChangeListener(PropertyChangeListener propertyChangeListener) {
-        this.propertyChangeSupport.remove(propertyChangeListener);
+    public int getConnectionPoolMinIdle() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.connectionPoolMinIdle;
+            }
+
+        });
     }
 
-    @Override
-    public void save(final Session session) {
-        this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
+    /**
+     * Sets the minimum number of idle connections kept in the pool.  This many connections are opened when the store
+     * starts, and the idle connection evictor opens connections to replace those that have been closed.
+     *
+     * @param connectionPoolMinIdle the minimum number of idle connections kept in the pool
+     */
+    public void setConnectionPoolMinIdle(final int connectionPoolMinIdle) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
 
             @Override
             public Void invoke() {
-                final String sessionId = session.getId();
+                int previous = RedisStore.this.connectionPoolMinIdle;
+                RedisStore.this.connectionPoolMinIdle = connectionPoolMinIdle;
+                RedisStore.this.propertyChangeSupport.notify("connectionPoolMinIdle", previous,
+                        RedisStore.this.connectionPoolMinIdle);
+                return null;
+            }
 
-                try {
-                    RedisStore.this.jedisTemplate.withJedis(new JedisTemplate.JedisOperation<Void>() {
+        });
+    }
 
-                        @Override
-                        public Void invoke(Jedis jedis) {
-                            try {
-                                Transaction t = jedis.multi();
-                                t.set(session.getId().getBytes(Protocol.CHARSET), RedisStore.this.sessionSerializationUtils
-                                        .serialize(session));
-                                t.sadd(SESSIONS_KEY, sessionId);
-                                t.exec();
-                            } catch (IOException e) {
-                                RedisStore.this.logger.error("Unable to save session {}", sessionId, e);
-                            }
+    @Override
+    public int getConnectionPoolSize() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
 
-                            return null;
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.connectionPoolSize;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the connection pool size
+     *
+     * @param connectionPoolSize the connectionPoolSize
+     */
+    public void setConnectionPoolSize(final int connectionPoolSize) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.connectionPoolSize;
+                RedisStore.this.connectionPoolSize = connectionPoolSize;
+                RedisStore.this.propertyChangeSupport.notify("connectionPoolSize", previous,
+                        RedisStore.this.connectionPoolSize);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public boolean isConnectionPoolTestOnBorrow() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Boolean>() {
+
+            @Override
+            public Boolean invoke() {
+                return RedisStore.this.connectionPoolTestOnBorrow;
+            }
+
+        });
+    }
+
+    /**
+     * Sets whether connections are tested with a {@code PING} before they are taken from the pool.  Connections that
+     * fail the test are closed and another connection is taken.
+     *
+     * @param connectionPoolTestOnBorrow whether connections are tested before they are taken from the pool
+     */
+    public void setConnectionPoolTestOnBorrow(final boolean connectionPoolTestOnBorrow) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                boolean previous = RedisStore.this.connectionPoolTestOnBorrow;
+                RedisStore.this.connectionPoolTestOnBorrow = connectionPoolTestOnBorrow;
+                RedisStore.this.propertyChangeSupport.notify("connectionPoolTestOnBorrow", previous,
+                        RedisStore.this.connectionPoolTestOnBorrow);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public boolean isConnectionPoolTestWhileIdle() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Boolean>() {
+
+            @Override
+            public Boolean invoke() {
+                return RedisStore.this.connectionPoolTestWhileIdle;
+            }
+
+        });
+    }
+
+    /**
+     * Sets whether idle connections are tested with a {@code PING} by the idle connection evictor.  Connections that
+     * fail the test are closed.
+     *
+     * @param connectionPoolTestWhileIdle whether idle connections are tested by the idle connection evictor
+     */
+    public void setConnectionPoolTestWhileIdle(final boolean connectionPoolTestWhileIdle) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                boolean previous = RedisStore.this.connectionPoolTestWhileIdle;
+                RedisStore.this.connectionPoolTestWhileIdle = connectionPoolTestWhileIdle;
+                RedisStore.this.propertyChangeSupport.notify("connectionPoolTestWhileIdle", previous,
+                        RedisStore.this.connectionPoolTestWhileIdle);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getDatabase() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.database;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the database to connect to
+     *
+     * @param database the database to connect to
+     */
+    public void setDatabase(final int database) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.database;
+                RedisStore.this.database = database;
+                RedisStore.this.propertyChangeSupport.notify("database", previous, RedisStore.this.database);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public long getDecompressionTime() {
+        return this.sessionCompression.getDecompressionTime();
+    }
+
+    @Override
+    public long getFailovers() {
+        Pool<Jedis> jedisPool = this.jedisPool;
+        return jedisPool instanceof SentinelPool ? ((SentinelPool) jedisPool).getFailovers() : 0;
+    }
+
+    @Override
+    public long getHedgeDelay() {
+        ReadHedger readHedger = this.readHedger;
+        return readHedger == null ? -1 : TimeUnit.NANOSECONDS.toMicros(readHedger.getDelay());
+    }
+
+    @Override
+    public int getHedgePercentile() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.hedgePercentile;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the percentile of recent replica read latencies after which a read is hedged by sending it to another
+     * replica, or to the primary if there is only one replica.  Requires {@code replicas}.  {@code 0} disables hedged
+     * reads.
+     *
+     * @param hedgePercentile the percentile of recent read latencies after which a read is hedged
+     */
+    public void setHedgePercentile(final int hedgePercentile) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                if (hedgePercentile < 0 || hedgePercentile >= 100) {
+                    throw new IllegalArgumentException(String.format("Invalid hedge percentile %d",
+                            hedgePercentile));
+                }
+
+                int previous = RedisStore.this.hedgePercentile;
+                RedisStore.this.hedgePercentile = hedgePercentile;
+                RedisStore.this.propertyChangeSupport.notify("hedgePercentile", previous,
+                        RedisStore.this.hedgePercentile);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public long getHedgedReads() {
+        ReadHedger readHedger = this.readHedger;
+        return readHedger == null ? 0 : readHedger.getHedges();
+    }
+
+    @Override
+    public long getHedgedReadWins() {
+        ReadHedger readHedger = this.readHedger;
+        return readHedger == null ? 0 : readHedger.getWins();
+    }
+
+    @Override
+    public String getHost() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+
+            @Override
+            public String invoke() {
+                return RedisStore.this.host;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the host to connect to
+     *
+     * @param host the host to connect to
+     */
+    public void setHost(final String host) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                String previous = RedisStore.this.host;
+                RedisStore.this.host = host;
+                RedisStore.this.propertyChangeSupport.notify("host", previous, RedisStore.this.host);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public String getJournalDirectory() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+
+            @Override
+            public String invoke() {
+                return RedisStore.this.journalDirectory;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the directory of the journal sessions are saved to while Redis is unavailable.  Journaled sessions are
+     * replayed to Redis once it is available again.  {@code null} disables the journal.
+     *
+     * @param journalDirectory the directory of the journal
+     */
+    public void setJournalDirectory(final String journalDirectory) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                String previous = RedisStore.this.journalDirectory;
+                RedisStore.this.journalDirectory = journalDirectory;
+                RedisStore.this.propertyChangeSupport.notify("journalDirectory", previous,
+                        RedisStore.this.journalDirectory);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getJournalMaxSize() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.journalMaxSize;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the maximum size of the journal.  Sessions that do not fit in the journal are not saved.
+     *
+     * @param journalMaxSize the maximum size of the journal, in megabytes
+     */
+    public void setJournalMaxSize(final int journalMaxSize) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.journalMaxSize;
+                RedisStore.this.journalMaxSize = journalMaxSize;
+                RedisStore.this.propertyChangeSupport.notify("journalMaxSize", previous,
+                        RedisStore.this.journalMaxSize);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getJournalPendingSessions() {
+        SessionJournal journal = this.journal;
+        return journal == null ? 0 : journal.getPending();
+    }
+
+    @Override
+    public long getJournalReplayLag() {
+        SessionJournal journal = this.journal;
+        return journal == null ? 0 : journal.getLag(System.currentTimeMillis());
+    }
+
+    @Override
+    public double getJournalReplayThroughput() {
+        return this.journalReplayThroughput;
+    }
+
+    @Override
+    public long getJournalReplayedSessions() {
+        SessionJournal journal = this.journal;
+        return journal == null ? 0 : journal.getReplayed();
+    }
+
+    @Override
+    public long getJournalSize() {
+        SessionJournal journal = this.journal;
+        return journal == null ? 0 : journal.getSize();
+    }
+
+    @Override
+    public long getLastFailoverDuration() {
+        Pool<Jedis> jedisPool = this.jedisPool;
+        return jedisPool instanceof SentinelPool ? ((SentinelPool) jedisPool).getLastFailoverDuration() : 0;
+    }
+
+    @Override
+    public boolean isLazyAttributes() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Boolean>() {
+
+            @Override
+            public Boolean invoke() {
+                return RedisStore.this.lazyAttributes;
+            }
+
+        });
+    }
+
+    /**
+     * Sets whether the attributes of loaded sessions are only deserialized when first read.  Only has an effect with
+     * {@link com.gopivotal.manager.BinarySessionSerializer}.
+     *
+     * @param lazyAttributes whether the attributes of loaded sessions are only deserialized when first read
+     * @see com.gopivotal.manager.LazySession
+     */
+    public void setLazyAttributes(final boolean lazyAttributes) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                boolean previous = RedisStore.this.lazyAttributes;
+                RedisStore.this.lazyAttributes = lazyAttributes;
+                updateSessionSerializationUtils();
+                RedisStore.this.propertyChangeSupport.notify("lazyAttributes", previous,
+                        RedisStore.this.lazyAttributes);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public Manager getManager() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Manager>() {
+
+            @Override
+            public Manager invoke() {
+                return RedisStore.this.manager;
+            }
+
+        });
+    }
+
+    @Override
+    public void setManager(final Manager manager) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                Manager previous = RedisStore.this.manager;
+                RedisStore.this.manager = manager;
+                updateSessionSerializationUtils();
+                RedisStore.this.propertyChangeSupport.notify("manager", previous, RedisStore.this.manager);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public long getNearCacheEvictions() {
+        NearCache<StoredSession> nearCache = this.nearCache;
+        return nearCache == null ? 0 : nearCache.getEvictions();
+    }
+
+    @Override
+    public long getNearCacheHits() {
+        NearCache<StoredSession> nearCache = this.nearCache;
+        return nearCache == null ? 0 : nearCache.getHits();
+    }
+
+    @Override
+    public long getNearCacheMisses() {
+        NearCache<StoredSession> nearCache = this.nearCache;
+        return nearCache == null ? 0 : nearCache.getMisses();
+    }
+
+    /**
+     * Returns the number of near cache reservations not yet followed by a cached session
+     *
+     * @return the number of near cache reservations not yet followed by a cached session
+     */
+    int getNearCacheReservations() {
+        NearCache<StoredSession> nearCache = this.nearCache;
+        return nearCache == null ? 0 : nearCache.getReservations();
+    }
+
+    @Override
+    public int getNearCacheSize() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.nearCacheSize;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the maximum number of sessions held in an in-process near cache in front of Redis.  A session loaded from
+     * Redis is cached in its serialized form and later loads of it are deserialized from the cache.  Cached sessions
+     * are invalidated using Redis keyspace notifications, which must be enabled on the server, and the cache is
+     * bypassed whenever those notifications may have been missed.  {@code 0} disables the near cache.  Takes effect
+     * when the store is started.
+     *
+     * @param nearCacheSize the maximum number of sessions held in the near cache
+     */
+    public void setNearCacheSize(final int nearCacheSize) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.nearCacheSize;
+                RedisStore.this.nearCacheSize = nearCacheSize;
+                RedisStore.this.propertyChangeSupport.notify("nearCacheSize", previous,
+                        RedisStore.this.nearCacheSize);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public String getPassword() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+
+            @Override
+            public String invoke() {
+                return RedisStore.this.password;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the password to use when connecting
+     *
+     * @param password the password to use when connecting
+     */
+    public void setPassword(final String password) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                String previous = RedisStore.this.password;
+                RedisStore.this.password = password;
+                RedisStore.this.propertyChangeSupport.notify("password", previous, RedisStore.this.password);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getPort() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.port;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the port to connect to
+     *
+     * @param port the port to connect to
+     */
+    public void setPort(final int port) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.port;
+                RedisStore.this.port = port;
+                RedisStore.this.propertyChangeSupport.notify("port", previous, RedisStore.this.port);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getReadYourWritesWindow() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.readYourWritesWindow;
+            }
+
+        });
+    }
+
+    /**
+     * Sets how long after this instance writes a session its reads are sent to the primary rather than to a replica,
+     * so that they are not served by a replica that has not yet received the write
+     *
+     * @param readYourWritesWindow how long reads of a written session are sent to the primary, in milliseconds
+     */
+    public void setReadYourWritesWindow(final int readYourWritesWindow) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.readYourWritesWindow;
+                RedisStore.this.readYourWritesWindow = readYourWritesWindow;
+                RedisStore.this.propertyChangeSupport.notify("readYourWritesWindow", previous,
+                        RedisStore.this.readYourWritesWindow);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public long getReplicaFallbacks() {
+        ReplicaRouter replicaRouter = this.replicaRouter;
+        return replicaRouter == null ? 0 : replicaRouter.getFallbacks();
+    }
+
+    @Override
+    public long getReplicaReads() {
+        ReplicaRouter replicaRouter = this.replicaRouter;
+        return replicaRouter == null ? 0 : replicaRouter.getReads();
+    }
+
+    @Override
+    public String getReplicas() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+
+            @Override
+            public String invoke() {
+                return RedisStore.this.replicas;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the Redis replicas to send session loads, key enumerations and size queries to, as a comma-separated list of
+     * {@code host:port} pairs.  Reads that a replica cannot serve are sent to the primary.  Not supported with Redis
+     * Cluster.
+     *
+     * @param replicas the Redis replicas to send reads to
+     */
+    public void setReplicas(final String replicas) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                String previous = RedisStore.this.replicas;
+                RedisStore.this.replicas = replicas;
+                RedisStore.this.propertyChangeSupport.notify("replicas", previous, RedisStore.this.replicas);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public String getSentinelMaster() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+
+            @Override
+            public String invoke() {
+                return RedisStore.this.sentinelMaster;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the name under which the Redis Sentinels monitor the primary
+     *
+     * @param sentinelMaster the name under which the Redis Sentinels monitor the primary
+     */
+    public void setSentinelMaster(final String sentinelMaster) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                String previous = RedisStore.this.sentinelMaster;
+                RedisStore.this.sentinelMaster = sentinelMaster;
+                RedisStore.this.propertyChangeSupport.notify("sentinelMaster", previous,
+                        RedisStore.this.sentinelMaster);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public String getSentinels() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+
+            @Override
+            public String invoke() {
+                return RedisStore.this.sentinels;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the Redis Sentinels to discover the primary from, as a comma-separated list of {@code host:port} pairs.
+     * When set, the store connects to the primary the Sentinels report for {@code sentinelMaster} instead of the server
+     * configured by {@code host} and {@code port}, and follows the primary when it fails over.
+     *
+     * @param sentinels the Redis Sentinels to discover the primary from
+     */
+    public void setSentinels(final String sentinels) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                String previous = RedisStore.this.sentinels;
+                RedisStore.this.sentinels = sentinels;
+                RedisStore.this.propertyChangeSupport.notify("sentinels", previous, RedisStore.this.sentinels);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getSerializationBufferSize() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.serializationBufferSize;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the maximum number of bytes of serialization buffer each thread keeps between saves.  A session that
+     * serializes to more than this is still saved, but the extra buffer is released afterwards.  Must not be negative.
+     *
+     * @param serializationBufferSize the maximum number of bytes of serialization buffer each thread keeps between
+     *                                saves
+     */
+    public void setSerializationBufferSize(final int serializationBufferSize) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                if (serializationBufferSize < 0) {
+                    throw new IllegalArgumentException("The serialization buffer size must not be negative");
+                }
+
+                int previous = RedisStore.this.serializationBufferSize;
+                RedisStore.this.serializationBufferSize = serializationBufferSize;
+                updateSessionSerializationUtils();
+                RedisStore.this.propertyChangeSupport.notify("serializationBufferSize", previous,
+                        RedisStore.this.serializationBufferSize);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getSize() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                int size;
+
+                try {
+                    size = 0;
+
+                    for (int shard = 0; shard < RedisStore.this.keyScheme.getShards(); shard++) {
+                        final String key = RedisStore.this.keyScheme.sessionsKey(shard);
+
+                        size += routeRead(null, key, new JedisTemplate.JedisOperation<Integer>() {
+
+                            @Override
+                            public Integer invoke(Jedis jedis) {
+                                return jedis.scard(key).intValue();
+                            }
+
+                        });
+                    }
+                } catch (JedisConnectionException e) {
+                    RedisStore.this.throttledLogger.error("Unable to get the number of persisted sessions", e);
+                    size = Integer.MIN_VALUE;
+                }
+
+                return size;
+            }
+
+        });
+    }
+
+    @Override
+    public String getSessionSerializer() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+
+            @Override
+            public String invoke() {
+                return RedisStore.this.sessionSerializer.getClass().getName();
+            }
+
+        });
+    }
+
+    /**
+     * Sets the class name of the serializer used to convert sessions to and from bytes.  The class must implement
+     * {@link SessionSerializer} and have a public no-argument constructor.  The class is loaded by the web
+     * application's class loader once the store belongs to a manager, and otherwise by the thread context class loader.
+     *
+     * @param sessionSerializer the class name of the serializer used to convert sessions to and from bytes
+     */
+    public void setSessionSerializer(final String sessionSerializer) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() throws ReflectiveOperationException {
+                String previous = RedisStore.this.sessionSerializer.getClass().getName();
+                RedisStore.this.sessionSerializer = (SessionSerializer) Class.forName(sessionSerializer, true,
+                        getClassLoader()).getDeclaredConstructor().newInstance();
+
+                updateSessionSerializationUtils();
+                RedisStore.this.propertyChangeSupport.notify("sessionSerializer", previous, sessionSerializer);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public String getStorageLayout() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+
+            @Override
+            public String invoke() {
+                return RedisStore.this.storageLayout.name().toLowerCase(Locale.ENGLISH);
+            }
+
+        });
+    }
+
+    /**
+     * Sets how sessions are stored: {@code string}, where each session is a single serialized value, or {@code hash},
+     * where each session is a hash with a field for each item of metadata and each attribute so that only the changed
+     * attributes are written when a session is saved.  Sessions stored with either layout can be loaded with the
+     * other.
+     *
+     * @param storageLayout how sessions are stored
+     */
+    public void setStorageLayout(final String storageLayout) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                String previous = getStorageLayout();
+                RedisStore.this.storageLayout = StorageLayout.valueOf(storageLayout.toUpperCase(Locale.ENGLISH));
+                RedisStore.this.propertyChangeSupport.notify("storageLayout", previous, getStorageLayout());
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public int getTimeout() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                return RedisStore.this.timeout;
+            }
+
+        });
+    }
+
+    /**
+     * Sets the connection timeout
+     *
+     * @param timeout the connection timeout
+     */
+    public void setTimeout(final int timeout) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                int previous = RedisStore.this.timeout;
+                RedisStore.this.timeout = timeout;
+                RedisStore.this.propertyChangeSupport.notify("timeout", previous, RedisStore.this.timeout);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public long getUnhedgedReads() {
+        ReadHedger readHedger = this.readHedger;
+        return readHedger == null ? 0 : readHedger.getUnhedged();
+    }
+
+    @Override
+    public String getUri() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String>() {
+            @Override
+            public String invoke() {
+                return String.format("redis://%s%s:%d/%d", getUserInfo(), RedisStore.this.host,
+                        RedisStore.this.port, RedisStore.this.database);
+            }
+        });
+    }
+
+    /**
+     * Sets the connection URI
+     *
+     * @param uri the connection URI
+     */
+    public void setUri(final String uri) {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                URI richUri = URI.create(uri);
+                setHost(richUri.getHost());
+                setPort(richUri.getPort());
+                setPassword(parsePassword(richUri));
+                setDatabase(parseDatabase(richUri));
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public String[] keys() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<String[]>() {
+
+            @Override
+            public String[] invoke() {
+                String[] keys;
+
+                try {
+                    keys = null;
+
+                    if (RedisStore.this.replicaRouter != null) {
+                        try {
+                            keys = keys(RedisStore.this.replicaRouter.replica());
+                        } catch (JedisConnectionException e) {
+                            RedisStore.this.throttledLogger.error("Unable to read the keys of persisted sessions " +
+                                    "from a replica, reading from the primary", e);
+                            RedisStore.this.replicaRouter.fallback();
+                        }
+                    }
+
+                    if (keys == null) {
+                        keys = keys(RedisStore.this.jedisTemplate);
+                    }
+                } catch (JedisConnectionException e) {
+                    RedisStore.this.throttledLogger.error("Unable to get the keys of persisted sessions", e);
+                    keys = new String[0];
+                }
+
+                return keys;
+            }
+
+        });
+    }
+
+    /**
+     * Returns an {@link Iterator} over the ids of the persisted sessions.  The ids are read incrementally from Redis,
+     * {@code batchSize} at a time, so that neither Redis nor the heap has to hold the complete set at once.  An id may
+     * be returned more than once, and a {@link JedisConnectionException} may be thrown while iterating.
+     *
+     * @return an {@link Iterator} over the ids of the persisted sessions
+     */
+    public Iterator<String> keyIterator() {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Iterator<String>>() {
+
+            @Override
+            public Iterator<String> invoke() {
+                return new SessionIdIterator(RedisStore.this.jedisTemplate, RedisStore.this.keyScheme,
+                        RedisStore.this.batchSize);
+            }
+
+        });
+    }
+
+    @Override
+    public Session load(final String id) {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Session>() {
+
+            @Override
+            public Session invoke() {
+                SessionJournal journal = RedisStore.this.journal;
+                if (journal != null && journal.contains(id)) {
+                    return loadJournaled(journal, id);
+                }
+
+                Session session = loadCached(id);
+                if (session != null) {
+                    return session;
+                }
+
+                final long token = reserve(id);
+
+                // A session read from a replica is not cached, since the replica may lag behind the invalidations
+                if (token < 0) {
+                    session = loadReplica(id);
+                    if (session != null) {
+                        return session;
+                    }
+                }
+
+                try {
+                    session = RedisStore.this.jedisTemplate.withJedis(RedisStore.this.keyScheme.member(id),
+                            new JedisTemplate.JedisOperation<Session>() {
+
+                        @Override
+                        public Session invoke(Jedis jedis) {
+                            try {
+                                StoredSession stored = fetch(jedis, id, RedisStore.this.storageLayout, true);
+                                Session session = deserialize(stored.storageLayout, stored.data);
+
+                                if (session == null) {
+                                    Pipeline p = jedis.pipelined();
+                                    unindex(p, id);
+                                    p.sync();
+
+                                    return null;
+                                }
+
+                                cache(id, token, stored, session);
+                                return refreshAccessTime(session);
+                            } catch (ClassNotFoundException | IOException e) {
+                                RedisStore.this.logger.error("Unable to load session {}. Empty session created.", id, e);
+                                return RedisStore.this.manager.createSession(id);
+                            }
+                        }
+                    });
+                } catch (JedisConnectionException e) {
+                    RedisStore.this.throttledLogger.error("Unable to load session {}. Empty session created", id, e);
+                    session = RedisStore.this.manager.createSession(id);
+                } finally {
+                    // A reservation that was not followed by a cached session, e.g. of a missing one, is released
+                    cancel(id, token);
+                }
+
+                return session;
+            }
+
+        });
+    }
+
+    /**
+     * Loads a collection of sessions, pipelining the reads in batches of {@code batchSize}.  As with {@link
+     * #load(String)}, sessions that are no longer persisted are removed from the session and expiration indexes.
+     *
+     * @param ids the ids of the sessions to load
+     * @return the loaded sessions, keyed by id.  Sessions that are not persisted or cannot be read are absent.
+     */
+    @Override
+    public Map<String, Session> loadAll(final Collection<String> ids) {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Map<String, Session>>() {
+
+            @Override
+            public Map<String, Session> invoke() {
+                Map<String, Session> sessions = new LinkedHashMap<>(ids.size());
+
+                Map<Pool<Jedis>, List<String>> groups;
+                try {
+                    groups = groupByPool(ids);
+                } catch (JedisConnectionException e) {
+                    RedisStore.this.throttledLogger.error("Unable to load {} sessions", ids.size(), e);
+                    return sessions;
+                }
+
+                for (Map.Entry<Pool<Jedis>, List<String>> group : groups.entrySet()) {
+                    List<String> groupIds = group.getValue();
+
+                    for (int i = 0; i < groupIds.size(); i += RedisStore.this.batchSize) {
+                        loadBatch(group.getKey(), groupIds.subList(i,
+                                Math.min(i + RedisStore.this.batchSize, groupIds.size())), sessions);
+                    }
+                }
+
+                return sessions;
+            }
+
+        });
+    }
+
+    /**
+     * Loads the metadata of persisted sessions from the metadata indexes, without reading the sessions themselves.  The
+     * metadata of the sessions of each shard is read with a single {@code HMGET}, and the reads are pipelined in
+     * batches of up to {@code batchSize} sessions.
+     *
+     * @param ids the ids of the sessions
+     * @return the metadata of the sessions, keyed by id.  Sessions that are not persisted or whose metadata cannot be
+     * read are absent.
+     */
+    @Override
+    public Map<String, SessionMetadata> loadAllMetadata(final Collection<String> ids) {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Map<String, SessionMetadata>>() {
+
+            @Override
+            public Map<String, SessionMetadata> invoke() {
+                Map<String, SessionMetadata> metadata = new LinkedHashMap<>(ids.size());
+
+                Map<Pool<Jedis>, List<String>> groups;
+                try {
+                    groups = groupByPool(ids);
+                } catch (JedisConnectionException e) {
+                    RedisStore.this.throttledLogger.error("Unable to load metadata of {} sessions", ids.size(), e);
+                    return metadata;
+                }
+
+                for (Map.Entry<Pool<Jedis>, List<String>> group : groups.entrySet()) {
+                    List<String> groupIds = group.getValue();
+
+                    for (int i = 0; i < groupIds.size(); i += RedisStore.this.batchSize) {
+                        loadMetadataBatch(group.getKey(), groupIds.subList(i,
+                                Math.min(i + RedisStore.this.batchSize, groupIds.size())), metadata);
+                    }
+                }
+
+                return metadata;
+            }
+
+        });
+    }
+
+    /**
+     * Loads the metadata of a persisted session from the metadata index, without reading the session itself.  The
+     * metadata is written each time the session is saved or touched, so its access times are at least as recent as
+     * those of the persisted session.
+     *
+     * @param id the id of the session
+     * @return the metadata of the session, or {@code null} if the session is not persisted or its metadata cannot be
+     * read
+     */
+    @Override
+    public SessionMetadata loadMetadata(final String id) {
+        return this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<SessionMetadata>() {
+
+            @Override
+            public SessionMetadata invoke() {
+                SessionMetadata metadata;
+
+                try {
+                    final String member = RedisStore.this.keyScheme.member(id);
+                    final String key = RedisStore.this.keyScheme.metadataKey(RedisStore.this.keyScheme.shard(id));
+
+                    metadata = routeRead(id, member, new JedisTemplate.JedisOperation<SessionMetadata>() {
+
+                        @Override
+                        public SessionMetadata invoke(Jedis jedis) {
+                            try {
+                                return SessionMetadata.fromBytes(jedis.hget(SafeEncoder.encode(key),
+                                        SafeEncoder.encode(member)));
+                            } catch (IOException e) {
+                                RedisStore.this.logger.error("Unable to load metadata of session {}", id, e);
+                                return null;
+                            }
+                        }
+
+                    });
+                } catch (JedisConnectionException e) {
+                    RedisStore.this.throttledLogger.error("Unable to load metadata of session {}", id, e);
+                    metadata = null;
+                }
+
+                return metadata;
+            }
+
+        });
+    }
+
+    /**
+     * Removes all persisted sessions whose expiration time has passed.  Only the ids recorded as expired in the
+     * expiration index are read and no session is deserialized.  Invoked on each periodic event of the {@link
+     * org.apache.catalina.Context} the store's {@link Manager} belongs to.
+     */
+    public void processExpires() {
+        this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                try {
+                    final String now = String.valueOf(System.currentTimeMillis());
+                    int removed = 0;
+
+                    for (int i = 0; i < RedisStore.this.keyScheme.getShards(); i++) {
+                        final int shard = i;
+                        final String key = RedisStore.this.keyScheme.expirationsKey(shard);
+
+                        removed += RedisStore.this.jedisTemplate.withJedis(key,
+                                new JedisTemplate.JedisOperation<Integer>() {
+
+                                    @Override
+                                    public Integer invoke(Jedis jedis) {
+                                        int count = 0;
+
+                                        Set<String> expired;
+                                        do {
+                                            expired = jedis.zrangeByScore(key, "-inf", now, 0,
+                                                    RedisStore.this.batchSize);
+
+                                            if (!expired.isEmpty()) {
+                                                count += ((Long) EXPIRE_SCRIPT.evalsha(jedis,
+                                                        RedisStore.this.keyScheme.indexKeys(shard, expired),
+                                                        Collections.singletonList(SafeEncoder.encode(now))))
+                                                        .intValue();
+                                            }
+                                        } while (expired.size() == RedisStore.this.batchSize);
+
+                                        return count;
+                                    }
+
+                                });
+                    }
+
+                    RedisStore.this.logger.debug("Removed {} expired sessions", removed);
+                } catch (JedisConnectionException e) {
+                    RedisStore.this.throttledLogger.error("Unable to remove expired sessions", e);
+                }
+
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public void remove(final String id) {
+        this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                try {
+                    final String member = RedisStore.this.keyScheme.member(id);
+
+                    RedisStore.this.jedisTemplate.withJedis(member, new JedisTemplate.JedisOperation<Void>() {
+
+                        @Override
+                        public Void invoke(Jedis jedis) {
+                            REMOVE_SCRIPT.evalsha(jedis, RedisStore.this.keyScheme.sessionKeys(id),
+                                    Collections.singletonList(SafeEncoder.encode(member)));
+                            invalidate(id);
+                            return null;
+                        }
+
+                    });
+
+                    if (RedisStore.this.journal != null && RedisStore.this.journal.contains(id)) {
+                        journalRemoval(id);
+                    }
+                } catch (JedisConnectionException e) {
+                    if (!journalRemoval(id)) {
+                        RedisStore.this.throttledLogger.error("Unable to remove session {}", id, e);
+                    }
+                }
+
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public void removePropertyChangeListener(PropertyChangeListener propertyChangeListener) {
+        this.propertyChangeSupport.remove(propertyChangeListener);
+    }
+
+    @Override
+    public void save(final Session session) {
+        this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                final String sessionId = session.getId();
+
+                try {
+                    RedisStore.this.jedisTemplate.withJedis(RedisStore.this.keyScheme.member(sessionId),
+                            new JedisTemplate.JedisOperation<Void>() {
+
+                        @Override
+                        public Void invoke(Jedis jedis) {
+                            if (RedisStore.this.storageLayout == StorageLayout.HASH) {
+                                try {
+                                    saveFields(jedis, session,
+                                            RedisStore.this.sessionSerializationUtils.serializeFields(session));
+                                } catch (IOException e) {
+                                    RedisStore.this.logger.error("Unable to save session {}", sessionId, e);
+                                    SessionChangeTracker.markUnpersisted(session);
+                                }
+
+                                return null;
+                            }
+
+                            try (SerializedSession data = RedisStore.this.sessionSerializationUtils.serializeToBuffer(
+                                    session)) {
+                                SAVE_SCRIPT.evalsha(jedis, RedisStore.this.keyScheme.sessionKeys(sessionId),
+                                        saveArguments(session), data);
+                            } catch (IOException e) {
+                                RedisStore.this.logger.error("Unable to save session {}", sessionId, e);
+                                SessionChangeTracker.markUnpersisted(session);
+                            }
+
+                            return null;
+                        }
+
+                    }
+
+                    );
+                } catch (JedisConnectionException e) {
+                    if (!journal(session)) {
+                        RedisStore.this.throttledLogger.error("Unable to persist session {}", sessionId, e);
+                        SessionChangeTracker.markUnpersisted(session);
+                    }
+                } finally {
+                    invalidate(sessionId);
+                }
+
+                return null;
+            }
+
+        }
+
+        );
+    }
+
+    /**
+     * Saves a collection of {@link Session}s, pipelining the writes in batches of {@code batchSize}.  Unlike {@link
+     * #save(Session)}, the writes for each session are not applied as a transaction.
+     *
+     * @param sessions the {@link Session}s to save
+     * @throws IOException if any of the {@link Session}s could not be saved.  The remaining sessions are still saved.
+     */
+    @Override
+    public void saveAll(final Collection<Session> sessions) throws IOException {
+        int failed = this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Integer>() {
+
+            @Override
+            public Integer invoke() {
+                Map<String, Session> byId = new LinkedHashMap<>(sessions.size());
+                for (Session session : sessions) {
+                    byId.put(session.getId(), session);
+                }
+
+                Map<Pool<Jedis>, List<String>> groups;
+                try {
+                    groups = groupByPool(byId.keySet());
+                } catch (JedisConnectionException e) {
+                    RedisStore.this.throttledLogger.error("Unable to persist {} sessions", sessions.size(), e);
+                    return sessions.size();
+                }
+
+                int failed = 0;
+                for (Map.Entry<Pool<Jedis>, List<String>> group : groups.entrySet()) {
+                    List<Session> batch = new ArrayList<>(Math.min(group.getValue().size(),
+                            RedisStore.this.batchSize));
+
+                    for (String id : group.getValue()) {
+                        batch.add(byId.get(id));
+
+                        if (batch.size() == RedisStore.this.batchSize) {
+                            failed += saveBatch(group.getKey(), batch);
+                            batch.clear();
+                        }
+                    }
+
+                    if (!batch.isEmpty()) {
+                        failed += saveBatch(group.getKey(), batch);
+                    }
+                }
+
+                return failed;
+            }
+
+        });
+
+        if (failed > 0) {
+            throw new IOException(String.format("Unable to save %d of %d sessions", failed, sessions.size()));
+        }
+    }
+
+    @Override
+    public void touch(final Session session) {
+        this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                final String sessionId = session.getId();
+                final int ttl = session.getMaxInactiveInterval();
+
+                if (ttl <= 0) {
+                    return null;
+                }
+
+                try {
+                    boolean touched = RedisStore.this.jedisTemplate.withJedis(
+                            RedisStore.this.keyScheme.member(sessionId), new JedisTemplate.JedisOperation<Boolean>() {
+
+                        @Override
+                        public Boolean invoke(Jedis jedis) {
+                            return ((Long) TOUCH_SCRIPT.evalsha(jedis, RedisStore.this.keyScheme.sessionKeys(sessionId),
+                                    saveArguments(session))) == 1;
+                        }
+
+                    });
+
+                    if (touched) {
+                        written(sessionId);
+                    } else {
+                        RedisStore.this.logger.debug("Session {} is no longer persisted, saving", sessionId);
+                        save(session);
+                    }
+                } catch (JedisConnectionException e) {
+                    RedisStore.this.throttledLogger.error("Unable to touch session {}", sessionId, e);
+                }
+
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    protected void initInternal() {
+        this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                for (Valve valve : RedisStore.this.manager.getContext().getPipeline().getValves()) {
+                    if (valve instanceof SessionFlushValve) {
+                        RedisStore.this.logger.debug("Setting '{}' as the store for '{}'", this, valve);
+                        ((SessionFlushValve) valve).setStore(RedisStore.this);
+                    }
+                }
+
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    protected void startInternal() {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() {
+                JedisPoolConfig poolConfig = new JedisPoolConfig();
+                poolConfig.setBlockWhenExhausted(RedisStore.this.connectionPoolBlockWhenExhausted);
+                poolConfig.setMaxIdle(RedisStore.this.connectionPoolMaxIdle);
+                poolConfig.setMaxTotal(RedisStore.this.connectionPoolSize);
+                poolConfig.setMaxWaitMillis(RedisStore.this.connectionPoolMaxWait);
+                poolConfig.setMinEvictableIdleTimeMillis(RedisStore.this.connectionPoolMinEvictableIdleTime);
+                poolConfig.setMinIdle(RedisStore.this.connectionPoolMinIdle);
+                poolConfig.setTestOnBorrow(RedisStore.this.connectionPoolTestOnBorrow);
+                poolConfig.setTestWhileIdle(RedisStore.this.connectionPoolTestWhileIdle);
+                poolConfig.setTimeBetweenEvictionRunsMillis(RedisStore.this.connectionPoolEvictionInterval);
+
+                if (RedisStore.this.clusterNodes != null) {
+                    RedisStore.this.clusterConnectionHandler = new ClusterConnectionHandler(
+                            parseNodes(RedisStore.this.clusterNodes), poolConfig, RedisStore.this.timeout,
+                            RedisStore.this.password);
+                    RedisStore.this.jedisTemplate = new JedisTemplate(RedisStore.this.clusterConnectionHandler,
+                            newCircuitBreaker("Redis Cluster"));
+                    RedisStore.this.keyScheme = KeyScheme.cluster(RedisStore.this.clusterIndexShards);
+
+                    if (RedisStore.this.replicas != null) {
+                        RedisStore.this.logger.warn("Replica reads are not supported with Redis Cluster. Replicas " +
+                                "ignored.");
+                    }
+                } else {
+                    if (RedisStore.this.jedisPool == null && RedisStore.this.sentinels != null) {
+                        RedisStore.this.jedisPool = new SentinelPool(RedisStore.this.sentinelMaster,
+                                parseSentinels(RedisStore.this.sentinels), poolConfig, RedisStore.this.timeout,
+                                RedisStore.this.password, RedisStore.this.database);
+                    } else if (RedisStore.this.jedisPool == null) {
+                        RedisStore.this.jedisPool = new JedisPool(poolConfig, RedisStore.this.host,
+                                RedisStore.this.port, RedisStore.this.timeout, RedisStore.this.password,
+                                RedisStore.this.database);
+                    }
+
+                    RedisStore.this.jedisTemplate = new JedisTemplate(RedisStore.this.jedisPool,
+                            newCircuitBreaker("the Redis primary"));
+                    RedisStore.this.keyScheme = KeyScheme.standalone();
+
+                    if (RedisStore.this.replicas != null) {
+                        List<JedisTemplate> replicaTemplates = new ArrayList<>();
+                        for (HostAndPort replica : parseNodes(RedisStore.this.replicas)) {
+                            replicaTemplates.add(new JedisTemplate(new JedisPool(poolConfig, replica.getHost(),
+                                    replica.getPort(), RedisStore.this.timeout, RedisStore.this.password,
+                                    RedisStore.this.database), newCircuitBreaker(String.format("the Redis replica %s",
+                                    replica))));
+                        }
+
+                        RedisStore.this.logger.info(String.format("Reading sessions from Redis replicas at %s",
+                                RedisStore.this.replicas));
+                        RedisStore.this.replicaRouter = new ReplicaRouter(replicaTemplates,
+                                RedisStore.this.readYourWritesWindow);
+                    }
+                }
+
+                if (RedisStore.this.hedgePercentile > 0 && RedisStore.this.replicaRouter == null) {
+                    RedisStore.this.logger.warn("Hedged reads require replicas. Hedged reads disabled.");
+                } else if (RedisStore.this.hedgePercentile > 0) {
+                    // A hedged read holds a connection, so there is no use in more threads than connections
+                    int hedgeThreads = RedisStore.this.connectionPoolSize > 0 ? RedisStore.this.connectionPoolSize :
+                            GenericObjectPoolConfig.DEFAULT_MAX_TOTAL;
+                    RedisStore.this.readHedger = new ReadHedger(new ThreadPoolExecutor(0, hedgeThreads, 60,
+                            TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                            daemonThreadFactory(String.format("RedisStore[%s]-hedge", getContext()))),
+                            RedisStore.this.hedgePercentile);
+                }
+
+                connect();
+                startNearCache();
+                startJournal();
+                RedisStore.this.manager.getContext().addLifecycleListener(RedisStore.this.expirationListener);
+                RedisStore.this.jmxSupport.register(getObjectName(), RedisStore.this);
+
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    protected void stopInternal() {
+        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+
+            @Override
+            public Void invoke() throws InterruptedException, IOException {
+                if (RedisStore.this.journalReplayer != null) {
+                    RedisStore.this.journalReplayer.shutdown();
+                    RedisStore.this.journalReplayer.awaitTermination(RedisStore.this.timeout, TimeUnit.MILLISECONDS);
+                    RedisStore.this.journalReplayer = null;
+                }
+
+                if (RedisStore.this.journal != null) {
+                    RedisStore.this.journal.close();
+                    RedisStore.this.journal = null;
+                }
+
+                if (RedisStore.this.nearCacheInvalidator != null) {
+                    RedisStore.this.nearCacheInvalidator.stop();
+                    RedisStore.this.nearCacheInvalidator = null;
+                    RedisStore.this.nearCache = null;
+                }
+
+                if (RedisStore.this.jedisPool != null) {
+                    RedisStore.this.logger.info("Closing connection to Redis Server");
+                    RedisStore.this.jedisPool.destroy();
+                }
+
+                if (RedisStore.this.readHedger != null) {
+                    RedisStore.this.readHedger.shutdown();
+                    RedisStore.this.readHedger = null;
+                }
+
+                if (RedisStore.this.replicaRouter != null) {
+                    RedisStore.this.logger.info("Closing connections to Redis replicas");
+                    for (Pool<Jedis> pool : RedisStore.this.replicaRouter.getPools()) {
+                        pool.destroy();
+                    }
+                    RedisStore.this.replicaRouter = null;
+                }
+
+                if (RedisStore.this.clusterConnectionHandler != null) {
+                    RedisStore.this.logger.info("Closing connections to Redis Cluster");
+                    RedisStore.this.clusterConnectionHandler.close();
+                    RedisStore.this.clusterConnectionHandler = null;
+                }
+
+                RedisStore.this.manager.getContext().removeLifecycleListener(RedisStore.this.expirationListener);
+                RedisStore.this.jmxSupport.unregister(getObjectName());
+                RedisStore.this.sessionSerializationUtils.invalidateClassCache();
+
+                return null;
+            }
+
+        });
+    }
+
+    private void cache(String id, long token, StoredSession stored, Session session) {
+        NearCache<StoredSession> nearCache = this.nearCache;
+        if (nearCache != null && token >= 0) {
+            nearCache.put(id, token, stored, SessionMetadata.forSession(session).getExpirationTime());
+        }
+    }
+
+    private void connect() {
+        if (this.clusterNodes != null) {
+            this.logger.info(String.format("Connecting to Redis Cluster at %s", this.clusterNodes));
+        } else if (this.jedisPool instanceof SentinelPool) {
+            this.logger.info(String.format("Connecting to Redis Server at redis://%s/%d, the primary of %s reported " +
+                    "by Redis Sentinel at %s", ((SentinelPool) this.jedisPool).getCurrentHostMaster(), this.database,
+                    this.sentinelMaster, this.sentinels));
+        } else {
+            this.logger.info(String.format("Connecting to Redis Server at redis://%s:%d/%d", this.host, this.port,
+                    this.database));
+        }
+
+        for (Pool<Jedis> pool : this.jedisTemplate.getPools()) {
+            this.jedisTemplate.withJedis(pool, new JedisTemplate.JedisOperation<Void>() {
+
+                @Override
+                public Void invoke(Jedis jedis) {
+                    RedisStore.this.logger.info("Connection to Redis Server successful");
+
+                    for (RedisScript script : SCRIPTS) {
+                        script.load(jedis);
+                    }
+
+                    return null;
+                }
+
+            });
+        }
+
+        prewarm(this.jedisTemplate.getPools());
+        if (this.replicaRouter != null) {
+            prewarm(this.replicaRouter.getPools());
+        }
+    }
+
+    private StoredSession fetch(Jedis jedis, String id, StorageLayout storageLayout, boolean fallback)
+            throws IOException {
+        byte[] key = this.keyScheme.member(id).getBytes(Protocol.CHARSET);
+
+        try {
+            return new StoredSession(storageLayout, storageLayout == StorageLayout.STRING ? jedis.get(key) :
+                    jedis.hgetAll(key));
+        } catch (JedisDataException e) {
+            // The session was saved with the other layout
+            if (fallback && isWrongType(e)) {
+                return fetch(jedis, id, storageLayout.other(), false);
+            }
+
+            throw e;
+        }
+    }
+
+    private ClassLoader getClassLoader() {
+        Manager manager = this.manager;
+        Loader loader = manager == null || manager.getContext() == null ? null : manager.getContext().getLoader();
+        if (loader != null && loader.getClassLoader() != null) {
+            return loader.getClassLoader();
+        }
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return classLoader == null ? RedisStore.class.getClassLoader() : classLoader;
+    }
+
+    private String getContext() {
+        String name = this.manager.getContext().getName();
+        return name.startsWith("/") ? name : String.format("/%s", name);
+    }
+
+    private long getExpiration(Session session) {
+        return session.getThisAccessedTimeInternal() + TimeUnit.SECONDS.toMillis(session.getMaxInactiveInterval());
+    }
+
+    private String getObjectName() {
+        String contextPath = getContext();
+        String hostName = this.manager.getContext().getParent().getName();
+
+        return String.format("Catalina:type=Store,context=%s,host=%s,name=%s", contextPath, hostName,
+                getClass().getSimpleName());
+    }
+
+    private String getUserInfo() {
+        String candidate = RedisStore.this.password;
+        return candidate == null ? "" : String.format(":%s@", candidate);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Session deserialize(StorageLayout storageLayout, Object data) throws ClassNotFoundException, IOException {
+        if (storageLayout == StorageLayout.STRING) {
+            return this.sessionSerializationUtils.deserialize((byte[]) data);
+        }
+
+        Map<String, byte[]> fields = new HashMap<>();
+        for (Map.Entry<byte[], byte[]> field : ((Map<byte[], byte[]>) data).entrySet()) {
+            fields.put(SafeEncoder.encode(field.getKey()), field.getValue());
+        }
+
+        return this.sessionSerializationUtils.deserializeFields(fields);
+    }
+
+    private Map<Integer, List<String>> groupByShard(Collection<String> ids) {
+        Map<Integer, List<String>> groups = new LinkedHashMap<>();
+
+        for (String id : ids) {
+            int shard = this.keyScheme.shard(id);
+
+            List<String> group = groups.get(shard);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(shard, group);
+            }
+
+            group.add(id);
+        }
+
+        return groups;
+    }
+
+    private Map<Pool<Jedis>, List<String>> groupByPool(Collection<String> ids) {
+        Map<Pool<Jedis>, List<String>> groups = new LinkedHashMap<>();
+
+        for (String id : ids) {
+            Pool<Jedis> pool = this.jedisTemplate.getPool(this.keyScheme.member(id));
+
+            List<String> group = groups.get(pool);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(pool, group);
+            }
+
+            group.add(id);
+        }
+
+        return groups;
+    }
+
+    private void invalidate(String id) {
+        NearCache<StoredSession> nearCache = this.nearCache;
+        if (nearCache != null) {
+            nearCache.invalidate(id);
+        }
+
+        written(id);
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String name) {
+        return new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, String.format("%s-%d", name, this.count.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        };
+    }
+
+    private static <T> Callable<T> invocation(final JedisTemplate jedisTemplate,
+                                              final JedisTemplate.JedisOperation<T> operation) {
+        return new Callable<T>() {
+
+            @Override
+            public T call() {
+                return jedisTemplate.withJedis(operation);
+            }
+
+        };
+    }
+
+    private boolean isKeyspaceNotificationConfigured() {
+        return this.jedisTemplate.withJedis(new JedisTemplate.JedisOperation<Boolean>() {
+
+            @Override
+            public Boolean invoke(Jedis jedis) {
+                try {
+                    List<String> config = jedis.configGet(NOTIFY_KEYSPACE_EVENTS);
+                    return config != null && config.size() == 2 && NearCacheInvalidator.isConfigured(config.get(1));
+                } catch (JedisDataException e) {
+                    RedisStore.this.logger.warn("Unable to read the '{}' configuration", NOTIFY_KEYSPACE_EVENTS, e);
+                    return false;
+                }
+            }
+
+        });
+    }
+
+    private static boolean isMoved(Response<Object> response) {
+        try {
+            response.get();
+            return false;
+        } catch (JedisMovedDataException e) {
+            return true;
+        } catch (JedisDataException e) {
+            return false;
+        }
+    }
+
+    private static long getRemainingTime(SessionJournal.Entry entry, long now) {
+        int maxInactiveInterval = Integer.parseInt(SafeEncoder.encode(entry.getValues().get(0)));
+        if (maxInactiveInterval <= 0) {
+            return maxInactiveInterval;
+        }
+
+        long expiration = Long.parseLong(SafeEncoder.encode(entry.getValues().get(1)));
+        return Math.max(TimeUnit.MILLISECONDS.toSeconds(expiration - now + 999), 1);
+    }
+
+    private static boolean isExpired(SessionJournal.Entry entry, long now) {
+        // A session that expired while it was journaled is not brought back to life
+        return !entry.isRemoval() && Integer.parseInt(SafeEncoder.encode(entry.getValues().get(0))) > 0 &&
+                Long.parseLong(SafeEncoder.encode(entry.getValues().get(1))) <= now;
+    }
+
+    private static boolean isWrongType(JedisDataException e) {
+        return e.getMessage() != null && e.getMessage().startsWith("WRONGTYPE");
+    }
+
+    private boolean journal(Session session) {
+        SessionJournal journal = this.journal;
+        if (journal == null) {
+            return false;
+        }
+
+        try {
+            List<byte[]> values = Arrays.asList(SafeEncoder.encode(String.valueOf(session.getMaxInactiveInterval())),
+                    SafeEncoder.encode(String.valueOf(getExpiration(session))),
+                    SessionMetadata.forSession(session).toBytes(), this.sessionSerializationUtils.serialize(session));
+
+            if (!journal.append(session.getId(), session.getThisAccessedTimeInternal(), values)) {
+                this.logger.debug("Journal full, unable to journal session {}", session.getId());
+                return false;
+            }
+
+            this.logger.debug("Redis unavailable, session {} journaled", session.getId());
+            return true;
+        } catch (IOException e) {
+            this.logger.error("Unable to journal session {}", session.getId(), e);
+            return false;
+        }
+    }
+
+    private boolean journalRemoval(String id) {
+        SessionJournal journal = this.journal;
+        if (journal == null) {
+            return false;
+        }
+
+        try {
+            // A removal supersedes every save of the session
+            return journal.append(id, Long.MAX_VALUE, Collections.<byte[]>emptyList());
+        } catch (IOException e) {
+            this.logger.error("Unable to journal the removal of session {}", id, e);
+            return false;
+        }
+    }
+
+    private String[] keys(JedisTemplate jedisTemplate) {
+        Set<String> sessionIds = new LinkedHashSet<>();
+        for (Iterator<String> i = new SessionIdIterator(jedisTemplate, this.keyScheme, this.batchSize); i.hasNext(); ) {
+            sessionIds.add(i.next());
+        }
+
+        return sessionIds.toArray(new String[sessionIds.size()]);
+    }
+
+    private void loadMetadataBatch(Pool<Jedis> pool, final List<String> ids,
+                                   final Map<String, SessionMetadata> metadata) {
+        final List<String> moved = new ArrayList<>();
+
+        try {
+            this.jedisTemplate.withJedis(pool, new JedisTemplate.JedisOperation<Void>() {
+
+                @Override
+                public Void invoke(Jedis jedis) {
+                    Map<Integer, List<String>> shards = groupByShard(ids);
+                    List<Response<List<byte[]>>> responses = new ArrayList<>(shards.size());
+
+                    Pipeline p = jedis.pipelined();
+                    for (Map.Entry<Integer, List<String>> shard : shards.entrySet()) {
+                        List<String> shardIds = shard.getValue();
+                        byte[][] members = new byte[shardIds.size()][];
+                        for (int i = 0; i < shardIds.size(); i++) {
+                            members[i] = SafeEncoder.encode(RedisStore.this.keyScheme.member(shardIds.get(i)));
+                        }
+
+                        responses.add(p.hmget(SafeEncoder.encode(RedisStore.this.keyScheme.metadataKey(
+                                shard.getKey())), members));
+                    }
+                    p.sync();
+
+                    int index = 0;
+                    for (List<String> shardIds : shards.values()) {
+                        List<byte[]> values;
+                        try {
+                            values = responses.get(index++).get();
+                        } catch (JedisMovedDataException e) {
+                            moved.addAll(shardIds);
+                            continue;
+                        } catch (JedisDataException e) {
+                            RedisStore.this.logger.error("Unable to load metadata of {} sessions", shardIds.size(),
+                                    e);
+                            continue;
+                        }
+
+                        for (int i = 0; i < shardIds.size(); i++) {
+                            try {
+                                SessionMetadata value = SessionMetadata.fromBytes(values.get(i));
+                                if (value != null) {
+                                    metadata.put(shardIds.get(i), value);
+                                }
+                            } catch (IOException e) {
+                                RedisStore.this.logger.error("Unable to load metadata of session {}", shardIds.get(i),
+                                        e);
+                            }
+                        }
+                    }
+
+                    return null;
+                }
+
+            });
+        } catch (JedisConnectionException e) {
+            this.throttledLogger.error("Unable to load metadata of {} sessions", ids.size(), e);
+        }
+
+        if (!moved.isEmpty()) {
+            // The slots of these sessions have moved to another primary since the slot cache was last refreshed
+            this.jedisTemplate.renewSlotCache();
+
+            for (String id : moved) {
+                SessionMetadata value = loadMetadata(id);
+                if (value != null) {
+                    metadata.put(id, value);
+                }
+            }
+        }
+    }
+
+    private void loadBatch(Pool<Jedis> pool, final List<String> ids, final Map<String, Session> sessions) {
+        final List<String> moved = new ArrayList<>();
+
+        try {
+            this.jedisTemplate.withJedis(pool, new JedisTemplate.JedisOperation<Void>() {
+
+                @Override
+                public Void invoke(Jedis jedis) {
+                    StorageLayout storageLayout = RedisStore.this.storageLayout;
+                    List<Response<?>> responses = new ArrayList<>(ids.size());
+
+                    Pipeline p = jedis.pipelined();
+                    for (String id : ids) {
+                        byte[] key = SafeEncoder.encode(RedisStore.this.keyScheme.member(id));
+                        responses.add(storageLayout == StorageLayout.STRING ? p.get(key) : p.hgetAll(key));
+                    }
+                    p.sync();
+
+                    List<String> missing = new ArrayList<>();
+                    for (int i = 0; i < ids.size(); i++) {
+                        String id = ids.get(i);
+
+                        try {
+                            Session session;
+                            try {
+                                session = deserialize(storageLayout, responses.get(i).get());
+                            } catch (JedisMovedDataException e) {
+                                moved.add(id);
+                                continue;
+                            } catch (JedisDataException e) {
+                                if (!isWrongType(e)) {
+                                    throw e;
+                                }
+
+                                session = read(jedis, id, storageLayout.other(), false);
+                            }
+
+                            if (session == null) {
+                                missing.add(id);
+                            } else {
+                                sessions.put(id, refreshAccessTime(session));
+                            }
+                        } catch (ClassNotFoundException | IOException | JedisDataException e) {
+                            RedisStore.this.logger.error("Unable to load session {}", id, e);
                         }
+                    }
 
+                    if (!missing.isEmpty()) {
+                        p = jedis.pipelined();
+                        for (String id : missing) {
+                            unindex(p, id);
+                        }
+                        p.sync();
                     }
 
-                    );
-                } catch (JedisConnectionException e) {
-                    RedisStore.this.logger.error("Unable to persist session {}", sessionId, e);
+                    return null;
                 }
 
+            });
+        } catch (JedisConnectionException e) {
+            this.throttledLogger.error("Unable to load {} sessions", ids.size(), e);
+        }
+
+        if (!moved.isEmpty()) {
+            // The slots of these sessions have moved to another primary since the slot cache was last refreshed
+            this.jedisTemplate.renewSlotCache();
+
+            for (String id : moved) {
+                Session session = load(id);
+                if (session != null) {
+                    sessions.put(id, session);
+                }
+            }
+        }
+    }
+
+    private Session loadJournaled(SessionJournal journal, String id) {
+        try {
+            SessionJournal.Entry entry = journal.get(id);
+            if (entry == null || entry.isRemoval()) {
                 return null;
             }
 
+            Session session = deserialize(StorageLayout.STRING, entry.getValues().get(3));
+            return session == null ? null : refreshAccessTime(session);
+        } catch (ClassNotFoundException | IOException e) {
+            return logAndCreateEmptySession(id, e);
         }
+    }
 
-        );
+    private Session loadCached(String id) {
+        NearCache<StoredSession> nearCache = this.nearCache;
+        if (nearCache == null) {
+            return null;
+        }
+
+        StoredSession stored = nearCache.get(id, System.currentTimeMillis());
+        if (stored == null) {
+            return null;
+        }
+
+        try {
+            Session session = deserialize(stored.storageLayout, stored.data);
+            if (session != null) {
+                return refreshAccessTime(session);
+            }
+        } catch (ClassNotFoundException | IOException e) {
+            this.logger.warn("Unable to load session {} from the near cache", id, e);
+        }
+
+        nearCache.invalidate(id);
+        return null;
     }
 
-    @Override
-    protected void initInternal() {
-        this.lockTemplate.withReadLock(new LockTemplate.LockedOperation<Void>() {
+    private Session loadReplica(final String id) {
+        // Only the read is hedged; the session is deserialized on the request thread
+        StoredSession stored = readReplica(id, new JedisTemplate.JedisOperation<StoredSession>() {
 
             @Override
-            public Void invoke() {
-                for (Valve valve : RedisStore.this.manager.getContext().getPipeline().getValves()) {
-                    if (valve instanceof SessionFlushValve) {
-                        RedisStore.this.logger.debug("Setting '{}' as the store for '{}'", this, valve);
-                        ((SessionFlushValve) valve).setStore(RedisStore.this);
-                    }
+            public StoredSession invoke(Jedis jedis) {
+                try {
+                    StoredSession stored = fetch(jedis, id, RedisStore.this.storageLayout, true);
+                    return stored.isEmpty() ? null : stored;
+                } catch (IOException e) {
+                    return null;
                 }
-
-                return null;
             }
 
         });
+
+        if (stored == null) {
+            return null;
+        }
+
+        try {
+            Session session = deserialize(stored.storageLayout, stored.data);
+            return session == null ? null : refreshAccessTime(session);
+        } catch (ClassNotFoundException | IOException e) {
+            // Reported when the session is read again from the primary
+            return null;
+        }
     }
 
-    @Override
-    protected void startInternal() {
-        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+    private Session logAndCreateEmptySession(String id, Exception e) {
+        RedisStore.this.logger.error("Unable to load session {}. Empty session created.", id, e);
+        return RedisStore.this.manager.createSession(id);
+    }
 
-            @Override
-            public Void invoke() {
-                if (RedisStore.this.jedisPool == null) {
-                    JedisPoolConfig poolConfig = new JedisPoolConfig();
-                    poolConfig.setMaxTotal(RedisStore.this.connectionPoolSize);
+    private List<byte[]> saveArguments(Session session) {
+        List<byte[]> arguments = new ArrayList<>(5);
+        arguments.add(SafeEncoder.encode(this.keyScheme.member(session.getId())));
+        arguments.add(SafeEncoder.encode(String.valueOf(session.getMaxInactiveInterval())));
+        arguments.add(SafeEncoder.encode(String.valueOf(getExpiration(session))));
+        arguments.add(SessionMetadata.forSession(session).toBytes());
+        return arguments;
+    }
+
+    private void saveAllFields(Jedis jedis, Session session) {
+        try {
+            saveFields(jedis, session, this.sessionSerializationUtils.serializeAllFields(session));
+        } catch (IOException e) {
+            this.logger.error("Unable to save session {}", session.getId(), e);
+            SessionChangeTracker.markUnpersisted(session);
+        }
+    }
+
+    private void saveFields(Jedis jedis, Session session, SessionFields.Delta delta) {
+        if (((Long) HASH_SAVE_SCRIPT.evalsha(jedis, this.keyScheme.sessionKeys(session.getId()),
+                saveFieldsArguments(session, delta))) == 0) {
+            // The hash has been removed since the session was last saved, so a partial write would be incomplete
+            saveAllFields(jedis, session);
+            return;
+        }
+
+        delta.markPersisted();
+    }
+
+    private void completeSaveFields(Jedis jedis, Session session, SessionFields.Delta delta,
+                                    Response<Object> response) {
+        if (RedisScript.isNoScript(response)) {
+            saveFields(jedis, session, delta);
+            return;
+        }
+
+        if (Long.valueOf(0).equals(response.get())) {
+            saveAllFields(jedis, session);
+        } else {
+            delta.markPersisted();
+        }
+    }
+
+    private List<byte[]> saveFieldsArguments(Session session, SessionFields.Delta delta) {
+        List<byte[]> arguments = saveArguments(session);
+        arguments.add(SafeEncoder.encode(delta.isReplace() ? "1" : "0"));
+        arguments.add(SafeEncoder.encode(String.valueOf(delta.getRemovedFields().size())));
+        for (String field : delta.getRemovedFields()) {
+            arguments.add(SafeEncoder.encode(field));
+        }
+        for (Map.Entry<String, byte[]> field : delta.getChangedFields().entrySet()) {
+            arguments.add(SafeEncoder.encode(field.getKey()));
+            arguments.add(field.getValue());
+        }
+
+        return arguments;
+    }
 
-                    RedisStore.this.jedisPool = new JedisPool(poolConfig, RedisStore.this.host, RedisStore.this.port,
-                            RedisStore.this.timeout, RedisStore.this.password, RedisStore.this.database);
+    private int saveBatch(Pool<Jedis> pool, final List<Session> sessions) {
+        final List<Session> moved = new ArrayList<>();
+        int failed;
+
+        try {
+            failed = this.jedisTemplate.withJedis(pool, new JedisTemplate.JedisOperation<Integer>() {
+
+                @Override
+                public Integer invoke(Jedis jedis) {
+                    List<List<byte[]>> keys = new ArrayList<>(sessions.size());
+                    List<List<byte[]>> args = new ArrayList<>(sessions.size());
+                    List<Response<Object>> responses = new ArrayList<>(sessions.size());
+                    List<Session> saved = new ArrayList<>(sessions.size());
+                    List<SessionFields.Delta> deltas = new ArrayList<>(sessions.size());
+
+                    boolean hash = RedisStore.this.storageLayout == StorageLayout.HASH;
+                    RedisScript script = hash ? HASH_SAVE_SCRIPT : SAVE_SCRIPT;
+                    int failed = 0;
+                    Pipeline p = jedis.pipelined();
+
+                    for (Session session : sessions) {
+                        try {
+                            List<byte[]> arguments;
+                            if (hash) {
+                                SessionFields.Delta delta =
+                                        RedisStore.this.sessionSerializationUtils.serializeFields(session);
+                                arguments = saveFieldsArguments(session, delta);
+                                deltas.add(delta);
+                            } else {
+                                arguments = saveArguments(session);
+                                arguments.add(RedisStore.this.sessionSerializationUtils.serialize(session));
+                            }
+
+                            keys.add(RedisStore.this.keyScheme.sessionKeys(session.getId()));
+                            args.add(arguments);
+                            saved.add(session);
+                            responses.add(script.evalsha(p, keys.get(keys.size() - 1), args.get(args.size() - 1)));
+                        } catch (IOException e) {
+                            RedisStore.this.logger.error("Unable to save session {}", session.getId(), e);
+                            SessionChangeTracker.markUnpersisted(session);
+                            failed++;
+                        }
+                    }
+
+                    p.sync();
+
+                    for (int i = 0; i < responses.size(); i++) {
+                        if (isMoved(responses.get(i))) {
+                            moved.add(saved.get(i));
+                            continue;
+                        }
+
+                        try {
+                            if (hash) {
+                                completeSaveFields(jedis, saved.get(i), deltas.get(i), responses.get(i));
+                            } else if (RedisScript.isNoScript(responses.get(i))) {
+                                SAVE_SCRIPT.evalsha(jedis, keys.get(i), args.get(i));
+                            } else {
+                                responses.get(i).get();
+                            }
+                        } catch (JedisDataException e) {
+                            RedisStore.this.logger.error("Unable to save session {}", saved.get(i).getId(), e);
+                            SessionChangeTracker.markUnpersisted(saved.get(i));
+                            failed++;
+                        }
+
+                        invalidate(saved.get(i).getId());
+                    }
+
+                    return failed;
                 }
 
+            });
+        } catch (JedisConnectionException e) {
+            int unsaved = 0;
+            for (Session session : sessions) {
+                if (!journal(session)) {
+                    SessionChangeTracker.markUnpersisted(session);
+                    unsaved++;
+                }
 
-                RedisStore.this.jedisTemplate = new JedisTemplate(RedisStore.this.jedisPool);
-                connect();
-                RedisStore.this.jmxSupport.register(getObjectName(), RedisStore.this);
+                invalidate(session.getId());
+            }
 
-                return null;
+            if (unsaved > 0) {
+                this.throttledLogger.error("Unable to persist {} sessions", unsaved, e);
             }
 
-        });
+            return unsaved;
+        }
+
+        if (!moved.isEmpty()) {
+            // The slots of these sessions have moved to another primary since the slot cache was last refreshed
+            this.jedisTemplate.renewSlotCache();
+
+            for (Session session : moved) {
+                save(session);
+            }
+        }
+
+        return failed;
     }
 
-    @Override
-    protected void stopInternal() {
-        this.lockTemplate.withWriteLock(new LockTemplate.LockedOperation<Void>() {
+    private void unindex(Pipeline p, String id) {
+        int shard = this.keyScheme.shard(id);
+        String member = this.keyScheme.member(id);
+
+        p.srem(this.keyScheme.sessionsKey(shard), member);
+        p.zrem(this.keyScheme.expirationsKey(shard), member);
+        p.hdel(this.keyScheme.metadataKey(shard), member);
+    }
+
+    private void unlink(final int shard, final List<String> sessionIds) {
+        this.jedisTemplate.withJedis(this.keyScheme.sessionsKey(shard), new JedisTemplate.JedisOperation<Void>() {
 
             @Override
-            public Void invoke() {
-                if (RedisStore.this.jedisPool != null) {
-                    RedisStore.this.logger.info("Closing connection to Redis Server");
-                    RedisStore.this.jedisPool.destroy();
+            public Void invoke(Jedis jedis) {
+                List<String> members = new ArrayList<>(sessionIds.size());
+                for (String sessionId : sessionIds) {
+                    members.add(RedisStore.this.keyScheme.member(sessionId));
                 }
 
-                RedisStore.this.jmxSupport.unregister(getObjectName());
+                UNLINK_SCRIPT.evalsha(jedis, RedisStore.this.keyScheme.indexKeys(shard, members),
+                        Collections.<byte[]>emptyList());
+
+                for (String sessionId : sessionIds) {
+                    invalidate(sessionId);
+                }
 
                 return null;
             }
@@ -609,42 +3023,313 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
         });
     }
 
-    private void connect() {
-        this.logger.info(String.format("Connecting to Redis Server at redis://%s:%d/%d", this.host, this.port,
-                    this.database));
+    private Session read(Jedis jedis, String id, StorageLayout storageLayout, boolean fallback)
+            throws ClassNotFoundException, IOException {
+        StoredSession stored = fetch(jedis, id, storageLayout, fallback);
+        return deserialize(stored.storageLayout, stored.data);
+    }
+
+    private <T> T readReplica(String id, JedisTemplate.JedisOperation<T> operation) {
+        ReplicaRouter replicaRouter = this.replicaRouter;
+        if (replicaRouter == null) {
+            return null;
+        }
+
+        JedisTemplate replica = id == null ? replicaRouter.replica() :
+                replicaRouter.replica(id, System.currentTimeMillis());
+        if (replica == null) {
+            return null;
+        }
 
-        this.jedisTemplate.withJedis(new JedisTemplate.JedisOperation<Void>() {
+        T result;
+        try {
+            ReadHedger readHedger = this.readHedger;
+            if (readHedger == null) {
+                result = replica.withJedis(operation);
+            } else {
+                JedisTemplate alternative = replicaRouter.next(replica);
+                result = readHedger.read(invocation(replica, operation),
+                        invocation(alternative == null ? this.jedisTemplate : alternative, operation));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = null;
+        } catch (Exception e) {
+            this.throttledLogger.error("Unable to read from a replica, reading from the primary", e);
+            result = null;
+        }
+
+        if (result == null) {
+            replicaRouter.fallback();
+        }
+
+        return result;
+    }
+
+    private void cancel(String id, long token) {
+        NearCache<StoredSession> nearCache = this.nearCache;
+        if (nearCache != null && token >= 0) {
+            nearCache.cancel(id, token);
+        }
+    }
+
+    private long reserve(String id) {
+        NearCache<StoredSession> nearCache = this.nearCache;
+        return nearCache == null ? -1 : nearCache.reserve(id);
+    }
+
+    private Session refreshAccessTime(Session session) {
+        // A session that has only been touched since it was last saved carries the access time of that save.  Its key
+        // still existing means it has been accessed within its maximum inactive interval, so it must not be expired
+        // when the manager validates it.
+        long maxInactive = TimeUnit.SECONDS.toMillis(session.getMaxInactiveInterval());
+        if (maxInactive > 0 && System.currentTimeMillis() - session.getThisAccessedTimeInternal() >= maxInactive) {
+            session.access();
+            session.endAccess();
+        }
+
+        return session;
+    }
+
+    /**
+     * Replays journaled writes to Redis, in pipelined batches of {@code batchSize}, until the journal is empty or Redis
+     * becomes unavailable.  Invoked periodically by the journal replayer thread.
+     */
+    void replayJournal() {
+        SessionJournal journal = this.journal;
+        if (journal == null || journal.getPending() == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long replayed = 0;
+
+        try {
+            List<SessionJournal.Entry> entries;
+            while (!(entries = journal.pending(this.batchSize)).isEmpty()) {
+                Map<String, SessionJournal.Entry> byId = new LinkedHashMap<>(entries.size());
+                for (SessionJournal.Entry entry : entries) {
+                    byId.put(entry.getId(), entry);
+                }
+
+                int count = 0;
+                for (Map.Entry<Pool<Jedis>, List<String>> group : groupByPool(byId.keySet()).entrySet()) {
+                    List<SessionJournal.Entry> batch = new ArrayList<>(group.getValue().size());
+                    for (String id : group.getValue()) {
+                        batch.add(byId.get(id));
+                    }
+
+                    count += replayBatch(journal, group.getKey(), batch);
+                }
+
+                if (count == 0) {
+                    break;
+                }
+
+                replayed += count;
+            }
+        } catch (JedisConnectionException e) {
+            this.logger.debug("Redis unavailable, {} journaled sessions still to replay", journal.getPending());
+        } catch (IOException e) {
+            this.logger.error("Unable to replay the journal", e);
+        }
+
+        if (replayed > 0) {
+            this.journalReplayThroughput = replayed * 1e9 / Math.max(System.nanoTime() - start, 1);
+            this.logger.info("Replayed {} journaled sessions to Redis, {} still to replay", replayed,
+                    journal.getPending());
+        }
+    }
+
+    private int replayBatch(SessionJournal journal, Pool<Jedis> pool, final List<SessionJournal.Entry> entries)
+            throws IOException {
+        final List<SessionJournal.Entry> moved = new ArrayList<>();
+
+        List<SessionJournal.Entry> replayed = this.jedisTemplate.withJedis(pool,
+                new JedisTemplate.JedisOperation<List<SessionJournal.Entry>>() {
 
             @Override
-            public Void invoke(Jedis jedis) {
-                RedisStore.this.logger.info("Connection to Redis Server successful");
-                return null;
+            public List<SessionJournal.Entry> invoke(Jedis jedis) {
+                List<List<byte[]>> keys = new ArrayList<>(entries.size());
+                List<List<byte[]>> args = new ArrayList<>(entries.size());
+                List<RedisScript> scripts = new ArrayList<>(entries.size());
+                List<Response<Object>> responses = new ArrayList<>(entries.size());
+                List<SessionJournal.Entry> replayed = new ArrayList<>(entries.size());
+                List<SessionJournal.Entry> sent = new ArrayList<>(entries.size());
+                long now = System.currentTimeMillis();
+                Pipeline p = jedis.pipelined();
+
+                for (SessionJournal.Entry entry : entries) {
+                    if (isExpired(entry, now)) {
+                        replayed.add(entry);
+                        continue;
+                    }
+
+                    List<byte[]> arguments = new ArrayList<>(entry.getValues().size() + 2);
+                    arguments.add(SafeEncoder.encode(RedisStore.this.keyScheme.member(entry.getId())));
+                    arguments.addAll(entry.getValues());
+
+                    if (!entry.isRemoval()) {
+                        // The session only has what is left of its inactive interval, not the whole of it again
+                        arguments.set(1, SafeEncoder.encode(String.valueOf(getRemainingTime(entry, now))));
+                        arguments.add(SafeEncoder.encode(String.valueOf(entry.getVersion())));
+                    }
+
+                    keys.add(RedisStore.this.keyScheme.sessionKeys(entry.getId()));
+                    args.add(arguments);
+                    scripts.add(entry.isRemoval() ? REMOVE_SCRIPT : JOURNAL_SAVE_SCRIPT);
+                    sent.add(entry);
+                    responses.add(scripts.get(scripts.size() - 1).evalsha(p, keys.get(keys.size() - 1), arguments));
+                }
+
+                p.sync();
+
+                for (int i = 0; i < responses.size(); i++) {
+                    if (isMoved(responses.get(i))) {
+                        moved.add(sent.get(i));
+                        continue;
+                    }
+
+                    if (RedisScript.isNoScript(responses.get(i))) {
+                        scripts.get(i).evalsha(jedis, keys.get(i), args.get(i));
+                    }
+
+                    invalidate(sent.get(i).getId());
+                    replayed.add(sent.get(i));
+                }
+
+                return replayed;
             }
 
         });
+
+        for (SessionJournal.Entry entry : replayed) {
+            journal.replayed(entry);
+        }
+
+        if (!moved.isEmpty()) {
+            // These sessions are replayed to the primary now serving their slots the next time the journal is replayed
+            this.jedisTemplate.renewSlotCache();
+        }
+
+        return replayed.size();
     }
 
-    private String getContext() {
-        String name = this.manager.getContext().getName();
-        return name.startsWith("/") ? name : String.format("/%s", name);
+    private void prewarm(Collection<Pool<Jedis>> pools) {
+        if (this.connectionPoolMinIdle <= 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int opened = 0;
+
+        // Opens the idle connections now rather than on the first requests after startup
+        for (Pool<Jedis> pool : pools) {
+            int missing = this.connectionPoolMinIdle - pool.getNumIdle();
+
+            try {
+                if (missing > 0) {
+                    pool.addObjects(missing);
+                    opened += missing;
+                }
+            } catch (JedisException e) {
+                this.logger.warn("Unable to open {} idle connections to Redis", missing, e);
+            }
+        }
+
+        this.logger.info(String.format("Opened %d idle connections to Redis in %d ms", opened,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
     }
 
-    private String getObjectName() {
-        String contextPath = getContext();
-        String hostName = this.manager.getContext().getParent().getName();
+    private <T> T routeRead(String id, String key, JedisTemplate.JedisOperation<T> operation) {
+        T result = readReplica(id, operation);
+        return result != null ? result : this.jedisTemplate.withJedis(key, operation);
+    }
 
-        return String.format("Catalina:type=Store,context=%s,host=%s,name=%s", contextPath, hostName,
-                getClass().getSimpleName());
+    private CircuitBreaker newCircuitBreaker(String name) {
+        return new CircuitBreaker(name, this.circuitBreakerFailureRate, this.circuitBreakerOpenDuration);
     }
 
-    private String getUserInfo() {
-        String candidate = RedisStore.this.password;
-        return candidate == null ? "" : String.format(":%s@", candidate);
+    private void startNearCache() {
+        if (this.nearCacheSize <= 0) {
+            return;
+        }
+
+        if (this.clusterNodes != null) {
+            this.logger.warn("The near cache is not supported with Redis Cluster. Near cache disabled.");
+            return;
+        }
+
+        if (!isKeyspaceNotificationConfigured()) {
+            this.logger.warn("Keyspace notifications are not enabled for the events needed to invalidate cached " +
+                    "sessions (e.g. '{} K$ghxe'). Near cache disabled.", NOTIFY_KEYSPACE_EVENTS);
+            return;
+        }
+
+        this.nearCache = new NearCache<>(this.nearCacheSize);
+        this.nearCacheInvalidator = new NearCacheInvalidator(this.jedisTemplate, this.nearCache, this.database,
+                NEAR_CACHE_RETRY_INTERVAL);
+        this.nearCacheInvalidator.start(String.format("RedisStore[%s]", getContext()));
     }
 
-    private Session logAndCreateEmptySession(String id, Exception e) {
-        RedisStore.this.logger.error("Unable to load session {}. Empty session created.", id, e);
-        return RedisStore.this.manager.createSession(id);
+    private void startJournal() {
+        if (this.journalDirectory == null) {
+            return;
+        }
+
+        File directory = new File(this.journalDirectory);
+        File file = new File(directory, String.format("%s%s.journal", this.manager.getContext().getParent().getName(),
+                getContext()).replaceAll("[^A-Za-z0-9.-]", "_"));
+
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException(String.format("Unable to create directory %s", directory));
+            }
+
+            this.journal = new SessionJournal(file, this.journalMaxSize * 1024L * 1024L);
+        } catch (IOException e) {
+            this.logger.error("Unable to open journal {}. Sessions will not be journaled", file, e);
+            return;
+        }
+
+        this.logger.info(String.format("Journaling sessions to %s while Redis is unavailable, %d journaled sessions " +
+                "to replay", file, this.journal.getPending()));
+
+        this.journalReplayer = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(
+                String.format("RedisStore[%s]-journal", getContext())));
+        this.journalReplayer.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                replayJournal();
+            }
+
+        }, JOURNAL_REPLAY_INTERVAL, JOURNAL_REPLAY_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void updateSessionSerializationUtils() {
+        if (this.manager != null) {
+            this.sessionSerializationUtils = new SessionSerializationUtils(this.manager, this.sessionSerializer,
+                    this.sessionCompression, this.lazyAttributes, this.serializationBufferSize);
+        }
+    }
+
+    private void written(String id) {
+        ReplicaRouter replicaRouter = this.replicaRouter;
+        if (replicaRouter != null) {
+            replicaRouter.written(id, System.currentTimeMillis());
+        }
+    }
+
+    private static Set<HostAndPort> parseNodes(String nodes) {
+        Set<HostAndPort> addresses = new LinkedHashSet<>();
+        for (String node : nodes.split(",")) {
+            String[] hostAndPort = node.trim().split(":", 2);
+            addresses.add(new HostAndPort(hostAndPort[0], hostAndPort.length == 2 ?
+                    Integer.parseInt(hostAndPort[1]) : Protocol.DEFAULT_PORT));
+        }
+
+        return addresses;
     }
 
     private int parseDatabase(URI uri) {
@@ -660,4 +3345,42 @@ public final class RedisStore extends AbstractLifecycle implements RedisStoreMan
 
         return userInfo.split(":", 2)[1];
     }
+
+    private static Set<String> parseSentinels(String sentinels) {
+        Set<String> addresses = new LinkedHashSet<>();
+        for (String sentinel : sentinels.split(",")) {
+            String address = sentinel.trim();
+            addresses.add(address.indexOf(':') < 0 ? address + ":" + Protocol.DEFAULT_SENTINEL_PORT : address);
+        }
+
+        return addresses;
+    }
+
+    private static final class StoredSession {
+
+        private final Object data;
+
+        private final StorageLayout storageLayout;
+
+        private StoredSession(StorageLayout storageLayout, Object data) {
+            this.data = data;
+            this.storageLayout = storageLayout;
+        }
+
+        private boolean isEmpty() {
+            return this.data == null || (this.data instanceof Map && ((Map<?, ?>) this.data).isEmpty());
+        }
+
+    }
+
+    private enum StorageLayout {
+
+        HASH, STRING;
+
+        StorageLayout other() {
+            return this == HASH ? STRING : HASH;
+        }
+
+    }
+
 }
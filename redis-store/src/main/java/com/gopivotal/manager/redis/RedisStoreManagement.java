@@ -24,6 +24,134 @@ import javax.management.MXBean;
 @MXBean
 public interface RedisStoreManagement {
 
+    /**
+     * Returns the maximum number of sessions handled by a single Redis command during bulk operations
+     *
+     * @return the maximum number of sessions handled by a single Redis command during bulk operations
+     */
+    int getBatchSize();
+
+    /**
+     * Returns the percentage of recent calls to a Redis server that must fail for calls to it to be failed immediately
+     *
+     * @return the percentage of failed calls at which calls are failed immediately, or {@code 0} if the circuit
+     * breaker is disabled
+     */
+    int getCircuitBreakerFailureRate();
+
+    /**
+     * Returns how long calls to a failing Redis server are failed immediately before a probe call is let through
+     *
+     * @return how long calls are failed immediately, in milliseconds
+     */
+    int getCircuitBreakerOpenDuration();
+
+    /**
+     * Returns the number of times calls to the Redis primary have started being failed immediately
+     *
+     * @return the number of times the circuit breaker of the Redis primary has opened
+     */
+    long getCircuitBreakerOpenings();
+
+    /**
+     * Returns the number of calls to the Redis primary that have been failed immediately
+     *
+     * @return the number of calls rejected by the circuit breaker of the Redis primary
+     */
+    long getCircuitBreakerRejections();
+
+    /**
+     * Returns the state of the circuit breaker of the Redis primary
+     *
+     * @return the state of the circuit breaker of the Redis primary: {@code closed}, {@code open} or {@code half-open}
+     */
+    String getCircuitBreakerState();
+
+    /**
+     * Returns the number of shards the session indexes are divided into with Redis Cluster
+     *
+     * @return the number of shards the session indexes are divided into with Redis Cluster
+     */
+    int getClusterIndexShards();
+
+    /**
+     * Returns the Redis Cluster nodes the cluster is discovered from
+     *
+     * @return the Redis Cluster nodes the cluster is discovered from, or {@code null} if Redis Cluster is not used
+     */
+    String getClusterNodes();
+
+    /**
+     * Returns the algorithm used to compress serialized sessions
+     *
+     * @return the algorithm used to compress serialized sessions
+     */
+    String getCompression();
+
+    /**
+     * Returns the minimum size of a serialized session for it to be compressed
+     *
+     * @return the minimum size of a serialized session for it to be compressed, in bytes
+     */
+    int getCompressionMinSize();
+
+    /**
+     * Returns the ratio of the size of sessions before compression to their size after compression
+     *
+     * @return the ratio of the size of sessions before compression to their size after compression
+     */
+    double getCompressionRatio();
+
+    /**
+     * Returns the total CPU time spent compressing sessions
+     *
+     * @return the total CPU time spent compressing sessions, in milliseconds
+     */
+    long getCompressionTime();
+
+    /**
+     * Returns whether a request for a connection waits when every connection in the pool is in use
+     *
+     * @return whether a request for a connection waits when every connection in the pool is in use
+     */
+    boolean isConnectionPoolBlockWhenExhausted();
+
+    /**
+     * Returns the interval between runs of the idle connection evictor, in milliseconds
+     *
+     * @return the interval between runs of the idle connection evictor, in milliseconds
+     */
+    int getConnectionPoolEvictionInterval();
+
+    /**
+     * Returns the maximum number of idle connections kept in the pool
+     *
+     * @return the maximum number of idle connections kept in the pool
+     */
+    int getConnectionPoolMaxIdle();
+
+    /**
+     * Returns the maximum time a request waits for a connection when every connection in the pool is in use
+     *
+     * @return the maximum time a request waits for a connection when every connection in the pool is in use, in
+     * milliseconds
+     */
+    int getConnectionPoolMaxWait();
+
+    /**
+     * Returns the time a connection must have been idle for before it can be evicted, in milliseconds
+     *
+     * @return the time a connection must have been idle for before it can be evicted, in milliseconds
+     */
+    int getConnectionPoolMinEvictableIdleTime();
+
+    /**
+     * Returns the minimum number of idle connections kept in the pool
+     *
+     * @return the minimum number of idle connections kept in the pool
+     */
+    int getConnectionPoolMinIdle();
+
     /**
      * Returns the Redis connection pool size;
      *
@@ -31,6 +159,20 @@ public interface RedisStoreManagement {
      */
     int getConnectionPoolSize();
 
+    /**
+     * Returns whether connections are tested with a {@code PING} before they are taken from the pool
+     *
+     * @return whether connections are tested with a {@code PING} before they are taken from the pool
+     */
+    boolean isConnectionPoolTestOnBorrow();
+
+    /**
+     * Returns whether idle connections are tested with a {@code PING} by the idle connection evictor
+     *
+     * @return whether idle connections are tested with a {@code PING} by the idle connection evictor
+     */
+    boolean isConnectionPoolTestWhileIdle();
+
     /**
      * Returns the Redis connection database
      *
@@ -38,6 +180,50 @@ public interface RedisStoreManagement {
      */
     int getDatabase();
 
+    /**
+     * Returns the total CPU time spent decompressing sessions
+     *
+     * @return the total CPU time spent decompressing sessions, in milliseconds
+     */
+    long getDecompressionTime();
+
+    /**
+     * Returns the number of times the primary has failed over to another server
+     *
+     * @return the number of times the primary has failed over, or {@code 0} if Redis Sentinel is not used
+     */
+    long getFailovers();
+
+    /**
+     * Returns the current delay after which a replica read is hedged
+     *
+     * @return the current delay after which a replica read is hedged, in microseconds, or {@code -1} if reads are not
+     * hedged
+     */
+    long getHedgeDelay();
+
+    /**
+     * Returns the percentile of recent replica read latencies after which a read is hedged
+     *
+     * @return the percentile of recent replica read latencies after which a read is hedged, or {@code 0} if reads are
+     * not hedged
+     */
+    int getHedgePercentile();
+
+    /**
+     * Returns the number of hedged reads that have been sent
+     *
+     * @return the number of hedged reads that have been sent
+     */
+    long getHedgedReads();
+
+    /**
+     * Returns the number of hedged reads that answered before the read they hedged
+     *
+     * @return the number of hedged reads that answered before the read they hedged
+     */
+    long getHedgedReadWins();
+
     /**
      * Returns the Redis connection host
      *
@@ -45,6 +231,98 @@ public interface RedisStoreManagement {
      */
     String getHost();
 
+    /**
+     * Returns the directory of the journal sessions are saved to while Redis is unavailable
+     *
+     * @return the directory of the journal, or {@code null} if sessions are not journaled
+     */
+    String getJournalDirectory();
+
+    /**
+     * Returns the maximum size of the journal
+     *
+     * @return the maximum size of the journal, in megabytes
+     */
+    int getJournalMaxSize();
+
+    /**
+     * Returns the number of sessions whose journaled write has not yet been replayed to Redis
+     *
+     * @return the number of sessions whose journaled write has not yet been replayed to Redis
+     */
+    int getJournalPendingSessions();
+
+    /**
+     * Returns the time since the oldest journaled write that has not yet been replayed to Redis was made
+     *
+     * @return the time since the oldest journaled write that has not yet been replayed was made, in milliseconds
+     */
+    long getJournalReplayLag();
+
+    /**
+     * Returns the rate at which journaled writes were replayed to Redis the last time the journal was replayed
+     *
+     * @return the rate at which journaled writes were last replayed, in sessions per second
+     */
+    double getJournalReplayThroughput();
+
+    /**
+     * Returns the number of journaled writes that have been replayed to Redis
+     *
+     * @return the number of journaled writes that have been replayed to Redis
+     */
+    long getJournalReplayedSessions();
+
+    /**
+     * Returns the size of the journal
+     *
+     * @return the size of the journal, in bytes
+     */
+    long getJournalSize();
+
+    /**
+     * Returns the time from the first failed connection to the previous primary until the first connection to the
+     * current primary during the last failover
+     *
+     * @return the duration of the last failover, in milliseconds
+     */
+    long getLastFailoverDuration();
+
+    /**
+     * Returns whether the attributes of loaded sessions are only deserialized when first read
+     *
+     * @return whether the attributes of loaded sessions are only deserialized when first read
+     */
+    boolean isLazyAttributes();
+
+    /**
+     * Returns the number of sessions evicted from the near cache to keep it within its maximum size
+     *
+     * @return the number of sessions evicted from the near cache
+     */
+    long getNearCacheEvictions();
+
+    /**
+     * Returns the number of session loads served from the near cache
+     *
+     * @return the number of session loads served from the near cache
+     */
+    long getNearCacheHits();
+
+    /**
+     * Returns the number of session loads that could not be served from the near cache
+     *
+     * @return the number of session loads that could not be served from the near cache
+     */
+    long getNearCacheMisses();
+
+    /**
+     * Returns the maximum number of sessions held in the near cache
+     *
+     * @return the maximum number of sessions held in the near cache, or {@code 0} if the near cache is disabled
+     */
+    int getNearCacheSize();
+
     /**
      * Returns the Redis connection password
      *
@@ -59,6 +337,70 @@ public interface RedisStoreManagement {
      */
     int getPort();
 
+    /**
+     * Returns how long after this instance writes a session its reads are sent to the primary rather than to a replica
+     *
+     * @return how long reads of a written session are sent to the primary, in milliseconds
+     */
+    int getReadYourWritesWindow();
+
+    /**
+     * Returns the number of reads sent to a replica that were sent to the primary instead, because the replica could
+     * not be reached or did not have the data
+     *
+     * @return the number of replica reads that fell back to the primary
+     */
+    long getReplicaFallbacks();
+
+    /**
+     * Returns the number of reads sent to a replica
+     *
+     * @return the number of reads sent to a replica
+     */
+    long getReplicaReads();
+
+    /**
+     * Returns the Redis replicas reads are sent to
+     *
+     * @return the Redis replicas reads are sent to, or {@code null} if all reads are sent to the primary
+     */
+    String getReplicas();
+
+    /**
+     * Returns the name under which the Redis Sentinels monitor the primary
+     *
+     * @return the name under which the Redis Sentinels monitor the primary
+     */
+    String getSentinelMaster();
+
+    /**
+     * Returns the Redis Sentinels the primary is discovered from
+     *
+     * @return the Redis Sentinels the primary is discovered from, or {@code null} if Redis Sentinel is not used
+     */
+    String getSentinels();
+
+    /**
+     * Returns the maximum number of bytes of serialization buffer each thread keeps between saves
+     *
+     * @return the maximum number of bytes of serialization buffer each thread keeps between saves
+     */
+    int getSerializationBufferSize();
+
+    /**
+     * Returns the class name of the serializer used to convert sessions to and from bytes
+     *
+     * @return the class name of the serializer used to convert sessions to and from bytes
+     */
+    String getSessionSerializer();
+
+    /**
+     * Returns how sessions are stored: {@code string} or {@code hash}
+     *
+     * @return how sessions are stored
+     */
+    String getStorageLayout();
+
     /**
      * Returns the Redis connection timeout
      *
@@ -66,6 +408,13 @@ public interface RedisStoreManagement {
      */
     int getTimeout();
 
+    /**
+     * Returns the number of replica reads that were not hedged because every hedged read thread was busy
+     *
+     * @return the number of replica reads that were not hedged because every hedged read thread was busy
+     */
+    long getUnhedgedReads();
+
     /**
      * Returns the Redis connection uri
      *
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses the replica a read is sent to.  Reads are spread over the replicas in turn, except that reads of a session
+ * this instance has written within the read-your-writes window are left to the primary, since a replica may not have
+ * received the write yet.
+ */
+final class ReplicaRouter {
+
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private final AtomicLong lastPurge = new AtomicLong();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final List<Pool<Jedis>> pools;
+
+    private final long readYourWritesWindow;
+
+    private final AtomicLong reads = new AtomicLong();
+
+    private final List<JedisTemplate> replicas;
+
+    private final ConcurrentMap<String, Long> writes = new ConcurrentHashMap<>();
+
+    ReplicaRouter(List<JedisTemplate> replicas, long readYourWritesWindow) {
+        this.readYourWritesWindow = readYourWritesWindow;
+        this.replicas = new ArrayList<>(replicas);
+
+        this.pools = new ArrayList<>(replicas.size());
+        for (JedisTemplate replica : replicas) {
+            this.pools.addAll(replica.getPools());
+        }
+    }
+
+    /**
+     * Records that a read sent to a replica has been sent to the primary instead, because the replica could not be
+     * reached or did not have the data
+     */
+    void fallback() {
+        this.fallbacks.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of reads sent to a replica that have been sent to the primary instead
+     *
+     * @return the number of reads that have fallen back to the primary
+     */
+    long getFallbacks() {
+        return this.fallbacks.get();
+    }
+
+    /**
+     * Returns the connection pools of the replicas
+     *
+     * @return the connection pools of the replicas
+     */
+    List<Pool<Jedis>> getPools() {
+        return this.pools;
+    }
+
+    /**
+     * Returns the number of reads sent to a replica
+     *
+     * @return the number of reads sent to a replica
+     */
+    long getReads() {
+        return this.reads.get();
+    }
+
+    /**
+     * Returns the replica following a replica in turn
+     *
+     * @param replica the replica
+     * @return the replica following the replica, or {@code null} if there is only one replica
+     */
+    JedisTemplate next(JedisTemplate replica) {
+        if (this.replicas.size() < 2) {
+            return null;
+        }
+
+        return this.replicas.get((this.replicas.indexOf(replica) + 1) % this.replicas.size());
+    }
+
+    /**
+     * Returns the replica to send a read that does not concern a single session to
+     *
+     * @return the replica to send the read to
+     */
+    JedisTemplate replica() {
+        this.reads.incrementAndGet();
+        return this.replicas.get((this.next.getAndIncrement() & Integer.MAX_VALUE) % this.replicas.size());
+    }
+
+    /**
+     * Returns the replica to send a read of a session to
+     *
+     * @param id  the session id
+     * @param now the current time, in milliseconds since the epoch
+     * @return the replica to send the read to, or {@code null} if the read must be sent to the primary
+     */
+    JedisTemplate replica(String id, long now) {
+        Long written = this.writes.get(id);
+        if (written != null && now - written < this.readYourWritesWindow) {
+            return null;
+        }
+
+        return replica();
+    }
+
+    /**
+     * Records that a session has been written to the primary
+     *
+     * @param id  the session id
+     * @param now the current time, in milliseconds since the epoch
+     */
+    void written(String id, long now) {
+        if (this.readYourWritesWindow <= 0) {
+            return;
+        }
+
+        this.writes.put(id, now);
+
+        long last = this.lastPurge.get();
+        if (now - last >= this.readYourWritesWindow && this.lastPurge.compareAndSet(last, now)) {
+            for (Iterator<Map.Entry<String, Long>> i = this.writes.entrySet().iterator(); i.hasNext(); ) {
+                if (now - i.next().getValue() >= this.readYourWritesWindow) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.Set;
+
+/**
+ * A {@link JedisSentinelPool} that records the failovers of its primary.  The pool discovers the primary from Redis
+ * Sentinel and subscribes to the Sentinels' failover announcements.  When a new primary is announced, new connections
+ * are made to it and connections to the previous primary are discarded instead of being handed out.
+ */
+class SentinelPool extends JedisSentinelPool {
+
+    private final FailoverMonitor failoverMonitor;
+
+    SentinelPool(String masterName, Set<String> sentinels, GenericObjectPoolConfig poolConfig, int timeout,
+                 String password, int database) {
+        super(masterName, sentinels, poolConfig, timeout, password, database);
+        this.failoverMonitor = new FailoverMonitor(getCurrentHostMaster().toString());
+    }
+
+    /**
+     * Returns the number of failovers since the pool was created
+     *
+     * @return the number of failovers
+     */
+    long getFailovers() {
+        return this.failoverMonitor.getFailovers();
+    }
+
+    /**
+     * Returns the time between the first failed connection to the previous primary and the first connection to the
+     * current primary
+     *
+     * @return the duration of the last failover, in milliseconds
+     */
+    long getLastFailoverDuration() {
+        return this.failoverMonitor.getLastFailoverDuration();
+    }
+
+    @Override
+    public Jedis getResource() {
+        String primary = getCurrentHostMaster().toString();
+
+        Jedis jedis;
+        try {
+            jedis = super.getResource();
+        } catch (JedisConnectionException e) {
+            this.failoverMonitor.failed(primary, System.currentTimeMillis());
+            throw e;
+        }
+
+        this.failoverMonitor.connected(address(jedis), System.currentTimeMillis());
+        return jedis;
+    }
+
+    // Deprecated in Pool, but Jedis.close() still returns connections through these methods
+    @Override
+    @SuppressWarnings("deprecation")
+    public void returnBrokenResource(Jedis resource) {
+        // Connections to a previous primary are also returned as broken once a new primary has been announced
+        if (resource != null && address(resource).equals(getCurrentHostMaster().toString())) {
+            this.failoverMonitor.failed(address(resource), System.currentTimeMillis());
+        }
+
+        super.returnBrokenResource(resource);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void returnResource(Jedis resource) {
+        if (resource != null) {
+            this.failoverMonitor.succeeded(address(resource));
+        }
+
+        super.returnResource(resource);
+    }
+
+    private static String address(Jedis jedis) {
+        Client client = jedis.getClient();
+        return new HostAndPort(client.getHost(), client.getPort()).toString();
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link Iterator} over the session ids in the session indexes of a {@link KeyScheme} that reads each index in turn,
+ * incrementally using {@code SSCAN}.  A connection is only held while a single batch is being read.  As with {@code
+ * SSCAN}, an id may be returned more than once and ids added or removed during the iteration may or may not be
+ * returned.
+ */
+final class SessionIdIterator implements Iterator<String> {
+
+    private final JedisTemplate jedisTemplate;
+
+    private final KeyScheme keyScheme;
+
+    private final ScanParams scanParams;
+
+    private Iterator<String> batch = Collections.emptyIterator();
+
+    private String cursor = ScanParams.SCAN_POINTER_START;
+
+    private boolean complete = false;
+
+    private int shard = 0;
+
+    SessionIdIterator(JedisTemplate jedisTemplate, KeyScheme keyScheme, int batchSize) {
+        this.jedisTemplate = jedisTemplate;
+        this.keyScheme = keyScheme;
+        this.scanParams = new ScanParams().count(batchSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!this.batch.hasNext() && !this.complete) {
+            fetch();
+        }
+
+        return this.batch.hasNext();
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return this.keyScheme.id(this.batch.next());
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void fetch() {
+        final String key = this.keyScheme.sessionsKey(this.shard);
+
+        ScanResult<String> result = this.jedisTemplate.withJedis(key,
+                new JedisTemplate.JedisOperation<ScanResult<String>>() {
+
+                    @Override
+                    public ScanResult<String> invoke(Jedis jedis) {
+                        return jedis.sscan(key, SessionIdIterator.this.cursor, SessionIdIterator.this.scanParams);
+                    }
+
+                });
+
+        this.cursor = result.getStringCursor();
+        this.batch = result.getResult().iterator();
+
+        if (ScanParams.SCAN_POINTER_START.equals(this.cursor)) {
+            this.complete = ++this.shard == this.keyScheme.getShards();
+        }
+    }
+
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of session writes that could not be sent to Redis.  Each record holds a session id, a version
+ * and the values to write, and an index in memory points to the newest record of each id, in the order the ids were
+ * last written.  A record with no values is a tombstone, recording that the session has been removed.
+ * <p>
+ * Records are forced to disk before {@link #append} returns, and the index is rebuilt from the file when the journal
+ * is opened, so writes survive a restart of the JVM.  Records are written under the journal's lock but forced outside
+ * it, and a single force covers every record written before it started, so threads appending at the same time share
+ * one force rather than queueing for one each.  A record that was only partially written is discarded.  The file is
+ * truncated once every record has been replayed, and is rewritten with only the records still pending when it reaches
+ * its maximum size.
+ */
+final class SessionJournal {
+
+    private static final int HEADER_LENGTH = 8;
+
+    private final File file;
+
+    private final Object forceMonitor = new Object();
+
+    private final Map<String, Pointer> index = new LinkedHashMap<>();
+
+    private final long maximumSize;
+
+    private volatile long forced = 0;
+
+    private RandomAccessFile randomAccessFile;
+
+    private long replayed = 0;
+
+    private long size;
+
+    private long written = 0;
+
+    SessionJournal(File file, long maximumSize) throws IOException {
+        this.file = file;
+        this.maximumSize = maximumSize;
+
+        open();
+        recover();
+    }
+
+    /**
+     * Appends a record.  The record is ignored if the journal holds a record of the same id with a newer version.
+     *
+     * @param id      the session id
+     * @param version the version of the session
+     * @param values  the values to write, or an empty list to record that the session has been removed
+     * @return {@code true} if the record has been appended or a newer record is held, {@code false} if the journal is
+     * full
+     * @throws IOException if the record cannot be written
+     */
+    boolean append(String id, long version, List<byte[]> values) throws IOException {
+        byte[] record = encode(id, version, values);
+        long sequence;
+
+        synchronized (this) {
+            Pointer current = this.index.get(id);
+            if (current != null && current.version > version) {
+                return true;
+            }
+
+            if (this.size + record.length > this.maximumSize) {
+                compact();
+
+                if (this.size + record.length > this.maximumSize) {
+                    return false;
+                }
+            }
+
+            this.randomAccessFile.getChannel().write(ByteBuffer.wrap(record), this.size);
+
+            this.index.remove(id);
+            this.index.put(id, new Pointer(this.size, record.length, version, System.currentTimeMillis()));
+            this.size += record.length;
+            sequence = ++this.written;
+        }
+
+        force(sequence);
+        return true;
+    }
+
+    /**
+     * Closes the journal.  Records that have not been replayed remain in the file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    synchronized void close() throws IOException {
+        this.randomAccessFile.close();
+    }
+
+    /**
+     * Returns whether the journal holds a record of a session
+     *
+     * @param id the session id
+     * @return {@code true} if the journal holds a record of the session, otherwise {@code false}
+     */
+    synchronized boolean contains(String id) {
+        return this.index.containsKey(id);
+    }
+
+    /**
+     * Returns the newest record of a session
+     *
+     * @param id the session id
+     * @return the newest record of the session, or {@code null} if the journal holds no record of it
+     * @throws IOException if the record cannot be read
+     */
+    synchronized Entry get(String id) throws IOException {
+        Pointer pointer = this.index.get(id);
+        return pointer == null ? null : read(pointer);
+    }
+
+    /**
+     * Returns the time since the oldest record still to be replayed was appended
+     *
+     * @param now the current time, in milliseconds since the epoch
+     * @return the time since the oldest record still to be replayed was appended, in milliseconds, or {@code 0} if
+     * there is none
+     */
+    synchronized long getLag(long now) {
+        Iterator<Pointer> i = this.index.values().iterator();
+        return i.hasNext() ? Math.max(now - i.next().timestamp, 0) : 0;
+    }
+
+    /**
+     * Returns the number of sessions with a record still to be replayed
+     *
+     * @return the number of sessions with a record still to be replayed
+     */
+    synchronized int getPending() {
+        return this.index.size();
+    }
+
+    /**
+     * Returns the number of records that have been replayed
+     *
+     * @return the number of records that have been replayed
+     */
+    synchronized long getReplayed() {
+        return this.replayed;
+    }
+
+    /**
+     * Returns the size of the file
+     *
+     * @return the size of the file, in bytes
+     */
+    synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the oldest records still to be replayed
+     *
+     * @param max the maximum number of records to return
+     * @return the oldest records still to be replayed
+     * @throws IOException if a record cannot be read
+     */
+    synchronized List<Entry> pending(int max) throws IOException {
+        List<Entry> entries = new ArrayList<>(Math.min(max, this.index.size()));
+
+        for (Iterator<Pointer> i = this.index.values().iterator(); i.hasNext() && entries.size() < max; ) {
+            entries.add(read(i.next()));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Records that a record has been replayed.  The record remains pending if a newer record of the same id has been
+     * appended since it was read.
+     *
+     * @param entry the record
+     * @throws IOException if the file cannot be truncated
+     */
+    synchronized void replayed(Entry entry) throws IOException {
+        Pointer pointer = this.index.get(entry.id);
+        if (pointer == null || pointer.offset != entry.offset) {
+            return;
+        }
+
+        this.index.remove(entry.id);
+        this.replayed++;
+
+        if (this.index.isEmpty()) {
+            this.randomAccessFile.setLength(0);
+            this.size = 0;
+        }
+    }
+
+    private void compact() throws IOException {
+        File compacted = new File(this.file.getPath() + ".compact");
+        Map<String, Pointer> index = new LinkedHashMap<>();
+        long size = 0;
+
+        try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+            for (Map.Entry<String, Pointer> entry : this.index.entrySet()) {
+                Pointer pointer = entry.getValue();
+                ByteBuffer record = ByteBuffer.allocate(pointer.length);
+                readFully(this.randomAccessFile.getChannel(), record, pointer.offset);
+                record.flip();
+
+                out.getChannel().write(record, size);
+                index.put(entry.getKey(), new Pointer(size, pointer.length, pointer.version, pointer.timestamp));
+                size += pointer.length;
+            }
+
+            out.getChannel().force(false);
+        }
+
+        // Every record still needed is in the forced copy
+        this.forced = this.written;
+
+        this.randomAccessFile.close();
+        Files.move(compacted.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        open();
+
+        this.index.clear();
+        this.index.putAll(index);
+        this.size = size;
+    }
+
+    private static byte[] encode(String id, long version, List<byte[]> values) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            byte[] encodedId = id.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encodedId.length);
+            out.write(encodedId);
+            out.writeLong(version);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(values.size());
+            for (byte[] value : values) {
+                out.writeInt(value.length);
+                out.write(value);
+            }
+        }
+
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        return ByteBuffer.allocate(HEADER_LENGTH + bytes.length)
+                .putInt(bytes.length)
+                .putInt((int) crc.getValue())
+                .put(bytes)
+                .array();
+    }
+
+    private void force(long sequence) throws IOException {
+        synchronized (this.forceMonitor) {
+            if (this.forced >= sequence) {
+                return;
+            }
+
+            long target;
+            FileChannel channel;
+            synchronized (this) {
+                target = this.written;
+                channel = this.randomAccessFile.getChannel();
+            }
+
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // The file was compacted while being forced
+                if (this.forced >= sequence) {
+                    return;
+                }
+
+                throw e;
+            }
+
+            this.forced = Math.max(this.forced, target);
+        }
+    }
+
+    private void open() throws IOException {
+        this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+    }
+
+    private Entry read(Pointer pointer) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(pointer.length);
+        readFully(this.randomAccessFile.getChannel(), record, pointer.offset);
+        record.position(HEADER_LENGTH);
+
+        byte[] encodedId = new byte[record.getInt()];
+        record.get(encodedId);
+        long version = record.getLong();
+        record.getLong();
+
+        int count = record.getInt();
+        List<byte[]> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] value = new byte[record.getInt()];
+            record.get(value);
+            values.add(value);
+        }
+
+        return new Entry(new String(encodedId, StandardCharsets.UTF_8), version, Collections.unmodifiableList(values),
+                pointer.offset);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        FileChannel channel = this.randomAccessFile.getChannel();
+        long length = channel.size();
+        long offset = 0;
+
+        while (offset + HEADER_LENGTH <= length) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(channel, header, offset);
+            header.flip();
+
+            int bodyLength = header.getInt();
+            int checksum = header.getInt();
+            if (bodyLength < 0 || offset + HEADER_LENGTH + bodyLength > length) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            readFully(channel, body, offset + HEADER_LENGTH);
+
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            body.flip();
+            byte[] encodedId = new byte[body.getInt()];
+            body.get(encodedId);
+            long version = body.getLong();
+            long timestamp = body.getLong();
+
+            String id = new String(encodedId, StandardCharsets.UTF_8);
+            Pointer current = this.index.get(id);
+            if (current == null || current.version <= version) {
+                this.index.remove(id);
+                this.index.put(id, new Pointer(offset, HEADER_LENGTH + bodyLength, version, timestamp));
+            }
+
+            offset += HEADER_LENGTH + bodyLength;
+        }
+
+        // Anything after the last complete record was only partially written
+        channel.truncate(offset);
+        this.size = offset;
+    }
+
+    /**
+     * A record read from the journal
+     */
+    static final class Entry {
+
+        private final String id;
+
+        private final long offset;
+
+        private final List<byte[]> values;
+
+        private final long version;
+
+        private Entry(String id, long version, List<byte[]> values, long offset) {
+            this.id = id;
+            this.offset = offset;
+            this.values = values;
+            this.version = version;
+        }
+
+        /**
+         * Returns the session id
+         *
+         * @return the session id
+         */
+        String getId() {
+            return this.id;
+        }
+
+        /**
+         * Returns the values to write
+         *
+         * @return the values to write, or an empty list if the session has been removed
+         */
+        List<byte[]> getValues() {
+            return this.values;
+        }
+
+        /**
+         * Returns the version of the session
+         *
+         * @return the version of the session
+         */
+        long getVersion() {
+            return this.version;
+        }
+
+        /**
+         * Returns whether the record is a tombstone
+         *
+         * @return {@code true} if the session has been removed, otherwise {@code false}
+         */
+        boolean isRemoval() {
+            return this.values.isEmpty();
+        }
+
+    }
+
+    private static final class Pointer {
+
+        private final int length;
+
+        private final long offset;
+
+        private final long timestamp;
+
+        private final long version;
+
+        private Pointer(long offset, int length, long version, long timestamp) {
+            this.length = length;
+            this.offset = offset;
+            this.timestamp = timestamp;
+            this.version = version;
+        }
+
+    }
+
+}
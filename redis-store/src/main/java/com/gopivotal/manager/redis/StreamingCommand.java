@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import com.gopivotal.manager.SerializedSession;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A Redis command whose final argument is a {@link SerializedSession}.  The command is written in the Redis protocol
+ * directly to the connection's socket, with the session's length as the bulk string prefix, so that the serialized
+ * session is never copied into a {@code byte[]} or into Jedis' command buffer.  The connection must not have a
+ * pipeline or transaction in progress.
+ */
+final class StreamingCommand {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private static final byte[] CRLF = SafeEncoder.encode("\r\n");
+
+    private final List<byte[]> arguments;
+
+    private final SerializedSession payload;
+
+    /**
+     * Creates a new instance
+     *
+     * @param arguments the command and its arguments, excluding the final argument
+     * @param payload   the final argument
+     */
+    StreamingCommand(List<byte[]> arguments, SerializedSession payload) {
+        this.arguments = arguments;
+        this.payload = payload;
+    }
+
+    /**
+     * Sends the command and waits for its reply
+     *
+     * @param jedis the connection to send the command on
+     * @return the reply to the command
+     */
+    Object execute(Jedis jedis) {
+        Client client = jedis.getClient();
+        client.connect();
+
+        try {
+            OutputStream out = new BufferedOutputStream(client.getSocket().getOutputStream(), BUFFER_SIZE);
+            writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            // The command may have been partially written, so the connection cannot be used again.  Jedis reconnects a
+            // disconnected client, re-authenticating and reselecting its database, when it next sends a command.
+            client.disconnect();
+            throw new JedisConnectionException(e);
+        }
+
+        try {
+            return client.getOne();
+        } finally {
+            // The command was not sent through Jedis, so it has not been counted as awaiting a reply
+            client.resetPipelinedCount();
+        }
+    }
+
+    /**
+     * Writes the command in the Redis protocol
+     *
+     * @param out the stream to write to
+     * @throws IOException if the command cannot be written
+     */
+    void writeTo(OutputStream out) throws IOException {
+        writeLength(out, '*', this.arguments.size() + 1);
+
+        for (byte[] argument : this.arguments) {
+            writeLength(out, '$', argument.length);
+            out.write(argument);
+            out.write(CRLF);
+        }
+
+        writeLength(out, '$', this.payload.getLength());
+        this.payload.writeTo(out);
+        out.write(CRLF);
+    }
+
+    private static void writeLength(OutputStream out, char type, int length) throws IOException {
+        out.write(type);
+        out.write(SafeEncoder.encode(String.valueOf(length)));
+        out.write(CRLF);
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.slf4j.Logger;
+
+/**
+ * Logs errors at {@code ERROR} level at most once per interval.  Errors within the interval are logged at {@code DEBUG}
+ * level instead, and their number is reported with the next error logged at {@code ERROR} level.  Used for errors
+ * that repeat on every request while Redis is unreachable.
+ */
+final class ThrottledLogger {
+
+    private final long interval;
+
+    private final Logger logger;
+
+    private long nextError = 0;
+
+    private int suppressed = 0;
+
+    ThrottledLogger(Logger logger, long interval) {
+        this.interval = interval;
+        this.logger = logger;
+    }
+
+    /**
+     * Logs an error
+     *
+     * @param format    the message format
+     * @param arguments the message arguments, optionally followed by a {@link Throwable}
+     */
+    void error(String format, Object... arguments) {
+        int suppressed;
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+
+            if (now < this.nextError) {
+                this.suppressed++;
+                suppressed = -1;
+            } else {
+                this.nextError = now + this.interval;
+                suppressed = this.suppressed;
+                this.suppressed = 0;
+            }
+        }
+
+        if (suppressed < 0) {
+            this.logger.debug(format, arguments);
+            return;
+        }
+
+        if (suppressed > 0) {
+            this.logger.error("{} further errors were logged at DEBUG level since the last error", suppressed);
+        }
+
+        this.logger.error(format, arguments);
+    }
+
+}
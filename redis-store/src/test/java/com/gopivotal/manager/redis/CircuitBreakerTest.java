@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class CircuitBreakerTest {
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("test-name", 50, 1000);
+
+    @Test
+    public void closed() {
+        for (int i = 0; i < 9; i++) {
+            this.circuitBreaker.onFailure(0);
+        }
+
+        assertTrue(this.circuitBreaker.allow(0));
+        assertEquals("closed", this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void closedBelowFailureRate() {
+        for (int i = 0; i < 20; i++) {
+            if (i % 3 == 0) {
+                this.circuitBreaker.onFailure(0);
+            } else {
+                this.circuitBreaker.onSuccess(0);
+            }
+        }
+
+        assertTrue(this.circuitBreaker.allow(0));
+        assertEquals("closed", this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void disabled() {
+        CircuitBreaker disabled = CircuitBreaker.disabled();
+        for (int i = 0; i < 20; i++) {
+            disabled.onFailure(0);
+        }
+
+        assertTrue(disabled.allow(0));
+        assertEquals("closed", disabled.getState());
+    }
+
+    @Test
+    public void halfOpenFailure() {
+        open();
+
+        assertTrue(this.circuitBreaker.allow(1000));
+        this.circuitBreaker.onFailure(1100);
+
+        assertEquals("open", this.circuitBreaker.getState());
+        assertFalse(this.circuitBreaker.allow(2000));
+        assertTrue(this.circuitBreaker.allow(2100));
+    }
+
+    @Test
+    public void halfOpenLostProbe() {
+        open();
+
+        assertTrue(this.circuitBreaker.allow(1000));
+        assertFalse(this.circuitBreaker.allow(1999));
+        assertTrue(this.circuitBreaker.allow(2000));
+    }
+
+    @Test
+    public void halfOpenSuccess() {
+        open();
+
+        assertTrue(this.circuitBreaker.allow(1000));
+        assertEquals("half-open", this.circuitBreaker.getState());
+        assertFalse(this.circuitBreaker.allow(1000));
+
+        this.circuitBreaker.onSuccess(1100);
+
+        assertEquals("closed", this.circuitBreaker.getState());
+        assertTrue(this.circuitBreaker.allow(1100));
+    }
+
+    @Test
+    public void open() {
+        for (int i = 0; i < 10; i++) {
+            this.circuitBreaker.onFailure(0);
+        }
+
+        assertFalse(this.circuitBreaker.allow(999));
+        assertEquals("open", this.circuitBreaker.getState());
+        assertEquals(1, this.circuitBreaker.getOpenings());
+        assertEquals(1, this.circuitBreaker.getRejections());
+    }
+
+    @Test
+    public void slidingWindow() {
+        for (int i = 0; i < 9; i++) {
+            this.circuitBreaker.onFailure(0);
+        }
+        for (int i = 0; i < 20; i++) {
+            this.circuitBreaker.onSuccess(0);
+        }
+        for (int i = 0; i < 9; i++) {
+            this.circuitBreaker.onFailure(0);
+        }
+
+        assertEquals("closed", this.circuitBreaker.getState());
+
+        this.circuitBreaker.onFailure(0);
+
+        assertEquals("open", this.circuitBreaker.getState());
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class FailoverMonitorTest {
+
+    private final FailoverMonitor failoverMonitor = new FailoverMonitor("test.host:6379");
+
+    @Test
+    public void failover() {
+        this.failoverMonitor.failed("test.host:6379", 1000);
+        this.failoverMonitor.failed("test.host:6379", 2000);
+        this.failoverMonitor.connected("test.host:6380", 4000);
+
+        assertEquals(1, this.failoverMonitor.getFailovers());
+        assertEquals(3000, this.failoverMonitor.getLastFailoverDuration());
+        assertEquals("test.host:6380", this.failoverMonitor.getPrimary());
+    }
+
+    @Test
+    public void failoverWithoutFailure() {
+        this.failoverMonitor.connected("test.host:6380", 4000);
+
+        assertEquals(1, this.failoverMonitor.getFailovers());
+        assertEquals(0, this.failoverMonitor.getLastFailoverDuration());
+    }
+
+    @Test
+    public void failurePreviousPrimary() {
+        this.failoverMonitor.connected("test.host:6380", 1000);
+        this.failoverMonitor.failed("test.host:6379", 2000);
+        this.failoverMonitor.connected("test.host:6379", 4000);
+
+        assertEquals(2, this.failoverMonitor.getFailovers());
+        assertEquals(0, this.failoverMonitor.getLastFailoverDuration());
+    }
+
+    @Test
+    public void recovery() {
+        this.failoverMonitor.failed("test.host:6379", 1000);
+        this.failoverMonitor.succeeded("test.host:6379");
+        this.failoverMonitor.connected("test.host:6379", 2000);
+        this.failoverMonitor.failed("test.host:6379", 3000);
+        this.failoverMonitor.connected("test.host:6380", 4000);
+
+        assertEquals(1, this.failoverMonitor.getFailovers());
+        assertEquals(1000, this.failoverMonitor.getLastFailoverDuration());
+        assertEquals("test.host:6380", this.failoverMonitor.getPrimary());
+    }
+
+}
@@ -18,14 +18,19 @@ package com.gopivotal.manager.redis;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.JedisClusterCRC16;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -33,6 +38,8 @@ import static org.mockito.Mockito.when;
 
 public final class JedisTemplateTest {
 
+    private final ClusterConnectionHandler clusterConnectionHandler = mock(ClusterConnectionHandler.class);
+
     private final Jedis jedis = mock(Jedis.class);
 
     private final JedisPool jedisPool = mock(JedisPool.class);
@@ -47,6 +54,51 @@ public final class JedisTemplateTest {
         when(this.jedisPool.getResource()).thenReturn(this.jedis);
     }
 
+    @Test
+    public void circuitOpen() throws Exception {
+        JedisTemplate guardedTemplate = new JedisTemplate(this.jedisPool, new CircuitBreaker("test-name", 50, 60000));
+        when(this.jedisPool.getResource()).thenThrow(new JedisConnectionException("test-message"));
+
+        for (int i = 0; i < CircuitBreaker.MINIMUM_CALLS; i++) {
+            try {
+                guardedTemplate.withJedis(this.operation);
+                fail();
+            } catch (JedisConnectionException e) {
+                assertFalse(e instanceof CircuitOpenException);
+            }
+        }
+
+        try {
+            guardedTemplate.withJedis(this.operation);
+            fail();
+        } catch (CircuitOpenException e) {
+            assertEquals(0, e.getStackTrace().length);
+        }
+
+        verify(this.jedisPool, times(CircuitBreaker.MINIMUM_CALLS)).getResource();
+        assertEquals("open", guardedTemplate.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void getPoolCluster() {
+        JedisTemplate clusterTemplate = new JedisTemplate(this.clusterConnectionHandler);
+        when(this.clusterConnectionHandler.getSlotPool(JedisClusterCRC16.getSlot("{test-tag}:test-key")))
+                .thenReturn(null, this.jedisPool);
+
+        assertSame(this.jedisPool, clusterTemplate.getPool("{test-tag}:test-key"));
+        verify(this.clusterConnectionHandler).renewSlotCache();
+    }
+
+    @Test(expected = JedisConnectionException.class)
+    public void getPoolClusterUnserved() {
+        new JedisTemplate(this.clusterConnectionHandler).getPool("test-key");
+    }
+
+    @Test
+    public void getPoolStandalone() {
+        assertSame(this.jedisPool, this.jedisTemplate.getPool("test-key"));
+    }
+
     @Test
     public void returnResourceOnFail() throws Exception {
         JedisConnectionException expected = new JedisConnectionException("test-message");
@@ -112,4 +164,24 @@ public final class JedisTemplateTest {
 
         verify(this.jedis, times(0)).close();
     }
+
+    @Test
+    public void withJedisKeyMoved() throws Exception {
+        JedisTemplate clusterTemplate = new JedisTemplate(this.clusterConnectionHandler);
+        when(this.clusterConnectionHandler.getSlotPool(JedisClusterCRC16.getSlot("test-key")))
+                .thenReturn(this.jedisPool);
+        when(this.operation.invoke(this.jedis))
+                .thenThrow(new JedisMovedDataException("test-message", null, 0))
+                .thenReturn("test-value");
+
+        String result = clusterTemplate.withJedis("test-key", this.operation);
+
+        assertEquals("test-value", result);
+        InOrder inOrder = inOrder(this.operation, this.clusterConnectionHandler);
+        inOrder.verify(this.operation).invoke(this.jedis);
+        inOrder.verify(this.clusterConnectionHandler).renewSlotCache();
+        inOrder.verify(this.operation).invoke(this.jedis);
+        verify(this.jedis, times(2)).close();
+    }
+
 }
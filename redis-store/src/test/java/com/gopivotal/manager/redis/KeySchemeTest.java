@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.Test;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class KeySchemeTest {
+
+    private final KeyScheme cluster = KeyScheme.cluster(4);
+
+    private final KeyScheme standalone = KeyScheme.standalone();
+
+    @Test
+    public void clusterKeys() {
+        int shard = this.cluster.shard("test-id");
+
+        assertEquals(String.format("{sessions:%d}:session:test-id", shard), this.cluster.member("test-id"));
+        assertEquals(Arrays.asList(String.format("{sessions:%d}:session:test-id", shard),
+                String.format("{sessions:%d}", shard), String.format("{sessions:%d}:expirations", shard),
+                String.format("{sessions:%d}:metadata", shard)), decode(this.cluster.sessionKeys("test-id")));
+        assertEquals("test-id", this.cluster.id(this.cluster.member("test-id")));
+    }
+
+    @Test
+    public void clusterKeysShareSlot() {
+        for (String id : Arrays.asList("test-id-1", "test-id-2", "test-id-3")) {
+            Set<Integer> slots = new HashSet<>();
+            for (String key : decode(this.cluster.sessionKeys(id))) {
+                slots.add(JedisClusterCRC16.getSlot(key));
+            }
+
+            assertEquals(1, slots.size());
+        }
+    }
+
+    @Test
+    public void clusterShards() {
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            int shard = this.cluster.shard(String.format("test-id-%d", i));
+            assertTrue(shard >= 0 && shard < 4);
+            shards.add(shard);
+        }
+
+        assertEquals(4, this.cluster.getShards());
+        assertEquals(4, shards.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void clusterInvalidShards() {
+        KeyScheme.cluster(0);
+    }
+
+    @Test
+    public void indexKeys() {
+        assertEquals(Arrays.asList("{sessions:2}", "{sessions:2}:expirations", "{sessions:2}:metadata", "test-member"),
+                decode(this.cluster.indexKeys(2, Arrays.asList("test-member"))));
+    }
+
+    @Test
+    public void standaloneKeys() {
+        assertEquals(1, this.standalone.getShards());
+        assertEquals(0, this.standalone.shard("test-id"));
+        assertEquals("test-id", this.standalone.member("test-id"));
+        assertEquals("test-id", this.standalone.id("test-id"));
+        assertEquals(Arrays.asList("test-id", "sessions", "sessions:expirations", "sessions:metadata"),
+                decode(this.standalone.sessionKeys("test-id")));
+    }
+
+    private static List<String> decode(List<byte[]> values) {
+        List<String> decoded = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            decoded.add(SafeEncoder.encode(value));
+        }
+        return decoded;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class NearCacheInvalidatorTest {
+
+    private final Jedis jedis = mock(Jedis.class);
+
+    private final JedisPool jedisPool = mock(JedisPool.class);
+
+    private final NearCache<String> nearCache = new NearCache<>(10);
+
+    private final NearCacheInvalidator invalidator = new NearCacheInvalidator(new JedisTemplate(this.jedisPool),
+            this.nearCache, 2, 10);
+
+    @Test
+    public void isConfigured() {
+        assertTrue(NearCacheInvalidator.isConfigured("KA"));
+        assertTrue(NearCacheInvalidator.isConfigured("K$ghxe"));
+        assertTrue(NearCacheInvalidator.isConfigured("EKg$lshzxe"));
+        assertFalse(NearCacheInvalidator.isConfigured(""));
+        assertFalse(NearCacheInvalidator.isConfigured("EA"));
+        assertFalse(NearCacheInvalidator.isConfigured("K$g"));
+        assertFalse(NearCacheInvalidator.isConfigured(null));
+    }
+
+    @Before
+    public void jedis() {
+        when(this.jedisPool.getResource()).thenReturn(this.jedis);
+    }
+
+    @Test
+    public void onPMessage() {
+        this.nearCache.activate();
+        put("test-id-1");
+        put("test-id-2");
+
+        this.invalidator.onPMessage("__keyspace@2__:*", "__keyspace@2__:test-id-1", "set");
+        this.invalidator.onPMessage("__keyspace@2__:*", "__keyspace@2__:test-id-2", "expire");
+
+        assertNull(this.nearCache.get("test-id-1", 0));
+        assertEquals("test-value", this.nearCache.get("test-id-2", 0));
+    }
+
+    @Test
+    public void run() throws InterruptedException {
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                JedisPubSub listener = (JedisPubSub) invocation.getArguments()[0];
+                listener.onPSubscribe((String) invocation.getArguments()[1], 1);
+                subscribed.countDown();
+
+                Thread.sleep(Long.MAX_VALUE);
+                return null;
+            }
+
+        }).when(this.jedis).psubscribe(any(JedisPubSub.class), (String[]) anyVararg());
+
+        this.invalidator.start("test-thread");
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+
+        verify(this.jedis).psubscribe(this.invalidator, "__keyspace@2__:*");
+        put("test-id-1");
+        assertEquals("test-value", this.nearCache.get("test-id-1", 0));
+
+        this.invalidator.stop();
+
+        assertNull(this.nearCache.get("test-id-1", 0));
+    }
+
+    @Test
+    public void runJedisConnectionException() throws InterruptedException {
+        doThrow(new JedisConnectionException("test-message")).when(this.jedis)
+                .psubscribe(any(JedisPubSub.class), (String[]) anyVararg());
+
+        this.invalidator.start("test-thread");
+
+        verify(this.jedis, timeout(5000).atLeast(2)).psubscribe(any(JedisPubSub.class), (String[]) anyVararg());
+        assertEquals(-1, this.nearCache.reserve("test-id-1"));
+
+        this.invalidator.stop();
+    }
+
+    private void put(String id) {
+        this.nearCache.put(id, this.nearCache.reserve(id), "test-value", Long.MAX_VALUE);
+    }
+
+}
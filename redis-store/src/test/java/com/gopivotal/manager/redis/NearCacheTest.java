@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class NearCacheTest {
+
+    private final NearCache<String> nearCache = new NearCache<>(2);
+
+    @Before
+    public void activate() {
+        this.nearCache.activate();
+    }
+
+    @Test
+    public void deactivate() {
+        put("test-id-1", "test-value-1", Long.MAX_VALUE);
+
+        this.nearCache.deactivate();
+
+        assertNull(this.nearCache.get("test-id-1", 0));
+        assertEquals(-1, this.nearCache.reserve("test-id-1"));
+
+        this.nearCache.activate();
+
+        assertNull(this.nearCache.get("test-id-1", 0));
+    }
+
+    @Test
+    public void evictionAdmitsFrequent() {
+        put("test-id-1", "test-value-1", Long.MAX_VALUE);
+        put("test-id-2", "test-value-2", Long.MAX_VALUE);
+
+        for (int i = 0; i < 3; i++) {
+            this.nearCache.get("test-id-3", 0);
+        }
+        put("test-id-3", "test-value-3", Long.MAX_VALUE);
+
+        assertEquals(2, this.nearCache.getSize());
+        assertEquals(1, this.nearCache.getEvictions());
+        assertNull(this.nearCache.get("test-id-1", 0));
+        assertEquals("test-value-3", this.nearCache.get("test-id-3", 0));
+    }
+
+    @Test
+    public void evictionRejectsInfrequent() {
+        put("test-id-1", "test-value-1", Long.MAX_VALUE);
+        put("test-id-2", "test-value-2", Long.MAX_VALUE);
+        this.nearCache.get("test-id-1", 0);
+        this.nearCache.get("test-id-2", 0);
+
+        put("test-id-3", "test-value-3", Long.MAX_VALUE);
+
+        assertEquals(0, this.nearCache.getEvictions());
+        assertEquals("test-value-1", this.nearCache.get("test-id-1", 0));
+        assertEquals("test-value-2", this.nearCache.get("test-id-2", 0));
+    }
+
+    @Test
+    public void expired() {
+        put("test-id-1", "test-value-1", 100);
+
+        assertEquals("test-value-1", this.nearCache.get("test-id-1", 99));
+        assertNull(this.nearCache.get("test-id-1", 100));
+        assertEquals(0, this.nearCache.getSize());
+    }
+
+    @Test
+    public void get() {
+        assertNull(this.nearCache.get("test-id-1", 0));
+        put("test-id-1", "test-value-1", Long.MAX_VALUE);
+
+        assertEquals("test-value-1", this.nearCache.get("test-id-1", 0));
+        assertEquals(1, this.nearCache.getHits());
+        assertEquals(1, this.nearCache.getMisses());
+    }
+
+    @Test
+    public void inactive() {
+        NearCache<String> inactive = new NearCache<>(2);
+
+        assertEquals(-1, inactive.reserve("test-id-1"));
+        assertNull(inactive.get("test-id-1", 0));
+        assertEquals(0, inactive.getMisses());
+    }
+
+    @Test
+    public void cancel() {
+        long token = this.nearCache.reserve("test-id-1");
+        this.nearCache.cancel("test-id-1", token);
+
+        assertEquals(0, this.nearCache.getReservations());
+    }
+
+    @Test
+    public void cancelSuperseded() {
+        long token = this.nearCache.reserve("test-id-1");
+        long superseding = this.nearCache.reserve("test-id-1");
+        this.nearCache.cancel("test-id-1", token);
+
+        assertEquals(1, this.nearCache.getReservations());
+        this.nearCache.put("test-id-1", superseding, "test-value-1", Long.MAX_VALUE);
+        assertEquals("test-value-1", this.nearCache.get("test-id-1", 0));
+    }
+
+    @Test
+    public void invalidate() {
+        put("test-id-1", "test-value-1", Long.MAX_VALUE);
+
+        this.nearCache.invalidate("test-id-1");
+
+        assertNull(this.nearCache.get("test-id-1", 0));
+    }
+
+    @Test
+    public void invalidateReservation() {
+        long token = this.nearCache.reserve("test-id-1");
+        this.nearCache.invalidate("test-id-1");
+        this.nearCache.put("test-id-1", token, "test-value-1", Long.MAX_VALUE);
+
+        assertNull(this.nearCache.get("test-id-1", 0));
+    }
+
+    @Test
+    public void supersededReservation() {
+        long token = this.nearCache.reserve("test-id-1");
+        long superseding = this.nearCache.reserve("test-id-1");
+
+        this.nearCache.put("test-id-1", token, "test-value-1", Long.MAX_VALUE);
+        assertNull(this.nearCache.get("test-id-1", 0));
+
+        this.nearCache.put("test-id-1", superseding, "test-value-2", Long.MAX_VALUE);
+        assertEquals("test-value-2", this.nearCache.get("test-id-1", 0));
+    }
+
+    private void put(String id, String value, long expiration) {
+        this.nearCache.put(id, this.nearCache.reserve(id), value, expiration);
+    }
+
+}
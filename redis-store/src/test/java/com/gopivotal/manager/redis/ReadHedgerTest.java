@@ -0,0 +1,230 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class ReadHedgerTest {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private final ReadHedger readHedger = new ReadHedger(Executors.newCachedThreadPool(), 90);
+
+    @Test
+    public void read() throws Exception {
+        warmUp();
+
+        assertEquals("test-value-1", this.readHedger.read(value("test-value-1"), stalled("test-value-2")));
+        assertEquals(0, this.readHedger.getWins());
+    }
+
+    @Test
+    public void readBothMissing() throws Exception {
+        warmUp();
+
+        assertNull(this.readHedger.read(slow(null), value(null)));
+        assertEquals(1, this.readHedger.getHedges());
+        assertEquals(0, this.readHedger.getWins());
+    }
+
+    @Test
+    public void readFirstFailed() throws Exception {
+        warmUp();
+
+        assertEquals("test-value-2", this.readHedger.read(failure(), value("test-value-2")));
+        assertEquals(1, this.readHedger.getHedges());
+        assertEquals(1, this.readHedger.getWins());
+    }
+
+    @Test
+    public void readFirstFailedBothMissing() throws Exception {
+        IllegalStateException expected = new IllegalStateException();
+        warmUp();
+
+        try {
+            this.readHedger.read(failure(expected), value(null));
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(expected, e);
+        }
+    }
+
+    @Test
+    public void readFirstMissing() throws Exception {
+        for (int i = 0; i < 128; i++) {
+            this.readHedger.read(slow("test-value", 5), value("test-value"));
+        }
+
+        assertNull(this.readHedger.read(value(null), value("test-value-2")));
+        assertEquals(0, this.readHedger.getHedges());
+        assertEquals(0, this.readHedger.getUnhedged());
+    }
+
+    @Test
+    public void readHedged() throws Exception {
+        warmUp();
+
+        assertEquals("test-value-2", this.readHedger.read(stalled("test-value-1"), value("test-value-2")));
+        assertEquals(1, this.readHedger.getHedges());
+        assertEquals(1, this.readHedger.getWins());
+    }
+
+    @Test
+    public void readSaturated() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>());
+        ReadHedger readHedger = new ReadHedger(executor, 90);
+
+        try {
+            warmUp(readHedger);
+            executor.execute(runnable(stalled(null)));
+
+            assertEquals("test-value-1", readHedger.read(value("test-value-1"), value("test-value-2")));
+            assertEquals(0, readHedger.getHedges());
+            assertEquals(1, readHedger.getUnhedged());
+        } finally {
+            this.latch.countDown();
+            readHedger.shutdown();
+        }
+    }
+
+    @Test
+    public void readSaturatedHedge() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>());
+        ReadHedger readHedger = new ReadHedger(executor, 90);
+
+        try {
+            warmUp(readHedger);
+
+            assertEquals("test-value-1", readHedger.read(slow("test-value-1"), value("test-value-2")));
+            assertEquals(0, readHedger.getHedges());
+            assertEquals(1, readHedger.getUnhedged());
+        } finally {
+            readHedger.shutdown();
+        }
+    }
+
+    @Test
+    public void readWarmingUp() throws Exception {
+        assertEquals(-1, this.readHedger.getDelay());
+        assertEquals("test-value-1", this.readHedger.read(value("test-value-1"), value("test-value-2")));
+        assertEquals(0, this.readHedger.getHedges());
+    }
+
+    @After
+    public void shutdown() {
+        this.latch.countDown();
+        this.readHedger.shutdown();
+    }
+
+    private static Callable<String> failure() {
+        return failure(new IllegalStateException());
+    }
+
+    private static Callable<String> failure(final Exception exception) {
+        return new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                throw exception;
+            }
+
+        };
+    }
+
+    private static Runnable runnable(final Callable<String> callable) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    callable.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+        };
+    }
+
+    private static Callable<String> slow(String value) {
+        return slow(value, 100);
+    }
+
+    private static Callable<String> slow(final String value, final long millis) {
+        return new Callable<String>() {
+
+            @Override
+            public String call() throws InterruptedException {
+                Thread.sleep(millis);
+                return value;
+            }
+
+        };
+    }
+
+    private Callable<String> stalled(final String value) {
+        return new Callable<String>() {
+
+            @Override
+            public String call() throws InterruptedException {
+                ReadHedgerTest.this.latch.await();
+                return value;
+            }
+
+        };
+    }
+
+    private static Callable<String> value(final String value) {
+        return new Callable<String>() {
+
+            @Override
+            public String call() {
+                return value;
+            }
+
+        };
+    }
+
+    private void warmUp() throws Exception {
+        warmUp(this.readHedger);
+    }
+
+    private static void warmUp(ReadHedger readHedger) throws Exception {
+        for (int i = 0; i < 128; i++) {
+            readHedger.read(value("test-value"), value("test-value"));
+        }
+
+        assertTrue(readHedger.getDelay() >= 0);
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.Test;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class RedisScriptTest {
+
+    private static final byte[] SHA = SafeEncoder.encode("e0e1f9fabfc9d4800c877a703b823ac0578ff8db");
+
+    private final List<byte[]> args = Collections.singletonList(SafeEncoder.encode("test-arg"));
+
+    private final Jedis jedis = mock(Jedis.class);
+
+    private final List<byte[]> keys = Collections.singletonList(SafeEncoder.encode("test-key"));
+
+    private final RedisScript script = new RedisScript("return 1");
+
+    @Test
+    public void evalsha() {
+        when(this.jedis.evalsha(SHA, this.keys, this.args)).thenReturn(1L);
+
+        assertEquals(1L, this.script.evalsha(this.jedis, this.keys, this.args));
+    }
+
+    @Test
+    public void evalshaNoScript() {
+        when(this.jedis.evalsha(SHA, this.keys, this.args)).thenThrow(new JedisNoScriptException("NOSCRIPT"));
+        when(this.jedis.eval(SafeEncoder.encode("return 1"), this.keys, this.args)).thenReturn(1L);
+
+        assertEquals(1L, this.script.evalsha(this.jedis, this.keys, this.args));
+    }
+
+    @Test
+    public void evalshaPipeline() {
+        Pipeline pipeline = mock(Pipeline.class);
+        Response<Object> response = new Response<>(BuilderFactory.EVAL_RESULT);
+        when(pipeline.evalsha(SHA, this.keys, this.args)).thenReturn(response);
+
+        assertSame(response, this.script.evalsha(pipeline, this.keys, this.args));
+    }
+
+    @Test
+    public void isNoScript() {
+        Response<Object> response = new Response<>(BuilderFactory.EVAL_RESULT);
+        response.set(new JedisNoScriptException("NOSCRIPT"));
+
+        assertTrue(RedisScript.isNoScript(response));
+    }
+
+    @Test
+    public void isNoScriptOtherError() {
+        Response<Object> response = new Response<>(BuilderFactory.EVAL_RESULT);
+        response.set(new JedisDataException("ERR"));
+
+        assertFalse(RedisScript.isNoScript(response));
+    }
+
+    @Test
+    public void isNoScriptSuccess() {
+        Response<Object> response = new Response<>(BuilderFactory.EVAL_RESULT);
+        response.set(1L);
+
+        assertFalse(RedisScript.isNoScript(response));
+    }
+
+    @Test
+    public void load() {
+        this.script.load(this.jedis);
+
+        verify(this.jedis).scriptLoad(SafeEncoder.encode("return 1"));
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the latency of the commands {@link RedisStore} issues for its read paths against a running Redis server.
+ * Each read is issued both wrapped in {@code MULTI}/{@code EXEC} (three round trips) and directly (one round trip).
+ * Not run as part of the test suite.  Run with:
+ * <pre>
+ * java -cp ... com.gopivotal.manager.redis.RedisStoreBenchmark [host] [port] [iterations] [sessionSize]
+ * </pre>
+ */
+public final class RedisStoreBenchmark {
+
+    private static final String SESSION_ID = "redis-store-benchmark";
+
+    private static final String SESSIONS_KEY = "redis-store-benchmark:sessions";
+
+    private RedisStoreBenchmark() {
+    }
+
+    public static void main(String[] args) throws UnsupportedEncodingException {
+        String host = args.length > 0 ? args[0] : Protocol.DEFAULT_HOST;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : Protocol.DEFAULT_PORT;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        int sessionSize = args.length > 3 ? Integer.parseInt(args[3]) : 4096;
+
+        final byte[] key = SESSION_ID.getBytes(Protocol.CHARSET);
+        byte[] value = new byte[sessionSize];
+        new Random().nextBytes(value);
+
+        try (Jedis jedis = new Jedis(host, port)) {
+            jedis.set(key, value);
+            jedis.sadd(SESSIONS_KEY, SESSION_ID);
+
+            run("load (MULTI GET EXEC)", jedis, iterations, new Operation() {
+
+                @Override
+                public void invoke(Jedis jedis) {
+                    Transaction t = jedis.multi();
+                    Response<byte[]> response = t.get(key);
+                    t.exec();
+                    check(response.get());
+                }
+
+            });
+
+            run("load (GET)", jedis, iterations, new Operation() {
+
+                @Override
+                public void invoke(Jedis jedis) {
+                    check(jedis.get(key));
+                }
+
+            });
+
+            run("getSize (MULTI SCARD EXEC)", jedis, iterations, new Operation() {
+
+                @Override
+                public void invoke(Jedis jedis) {
+                    Transaction t = jedis.multi();
+                    Response<Long> response = t.scard(SESSIONS_KEY);
+                    t.exec();
+                    check(response.get());
+                }
+
+            });
+
+            run("getSize (SCARD)", jedis, iterations, new Operation() {
+
+                @Override
+                public void invoke(Jedis jedis) {
+                    check(jedis.scard(SESSIONS_KEY));
+                }
+
+            });
+        } finally {
+            try (Jedis jedis = new Jedis(host, port)) {
+                jedis.del(SESSION_ID, SESSIONS_KEY);
+            }
+        }
+    }
+
+    private static void check(Object result) {
+        if (result == null) {
+            throw new IllegalStateException("Benchmark key missing");
+        }
+    }
+
+    private static void run(String name, Jedis jedis, int iterations, Operation operation) {
+        for (int i = 0; i < iterations / 10; i++) {
+            operation.invoke(jedis);
+        }
+
+        long[] latencies = new long[iterations];
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            long begin = System.nanoTime();
+            operation.invoke(jedis);
+            latencies[i] = System.nanoTime() - begin;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+
+        System.out.printf("%-28s %10.0f ops/s  mean %7.1f us  p50 %7.1f us  p99 %7.1f us%n", name,
+                iterations / (elapsed / 1e9), elapsed / 1e3 / iterations, latencies[iterations / 2] / 1e3,
+                latencies[(int) (iterations * 0.99)] / 1e3);
+    }
+
+    private interface Operation {
+
+        void invoke(Jedis jedis);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public final class ReplicaRouterTest {
+
+    private final ReplicaRouter replicaRouter = new ReplicaRouter(Arrays.asList(
+            new JedisTemplate(mock(JedisPool.class)), new JedisTemplate(mock(JedisPool.class))), 1000);
+
+    @Test
+    public void fallback() {
+        this.replicaRouter.fallback();
+
+        assertEquals(1, this.replicaRouter.getFallbacks());
+    }
+
+    @Test
+    public void readYourWrites() {
+        this.replicaRouter.written("test-id", 1000);
+
+        assertNull(this.replicaRouter.replica("test-id", 1999));
+        assertNotNull(this.replicaRouter.replica("test-id", 2000));
+        assertNotNull(this.replicaRouter.replica("test-id-2", 1500));
+        assertEquals(2, this.replicaRouter.getReads());
+    }
+
+    @Test
+    public void readYourWritesDisabled() {
+        ReplicaRouter disabled = new ReplicaRouter(Arrays.asList(new JedisTemplate(mock(JedisPool.class))), 0);
+        disabled.written("test-id", 1000);
+
+        assertNotNull(disabled.replica("test-id", 1000));
+    }
+
+    @Test
+    public void roundRobin() {
+        JedisTemplate first = this.replicaRouter.replica();
+        JedisTemplate second = this.replicaRouter.replica();
+
+        assertNotSame(first, second);
+        assertSame(first, this.replicaRouter.replica());
+        assertEquals(3, this.replicaRouter.getReads());
+    }
+
+    @Test
+    public void writesExpire() {
+        this.replicaRouter.written("test-id-1", 1000);
+        this.replicaRouter.written("test-id-2", 2500);
+
+        assertNotNull(this.replicaRouter.replica("test-id-1", 2500));
+        assertNull(this.replicaRouter.replica("test-id-2", 2500));
+    }
+
+}
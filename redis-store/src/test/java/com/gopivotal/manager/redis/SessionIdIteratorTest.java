@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class SessionIdIteratorTest {
+
+    private final Jedis jedis = mock(Jedis.class);
+
+    private final JedisPool jedisPool = mock(JedisPool.class);
+
+    private final SessionIdIterator iterator = new SessionIdIterator(new JedisTemplate(this.jedisPool),
+            KeyScheme.standalone(), 2);
+
+    @Before
+    public void jedis() throws Exception {
+        when(this.jedisPool.getResource()).thenReturn(this.jedis);
+    }
+
+    @Test
+    public void empty() {
+        when(this.jedis.sscan(eq("sessions"), eq("0"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("0", Collections.<String>emptyList()));
+
+        assertFalse(this.iterator.hasNext());
+    }
+
+    @Test
+    public void iterate() {
+        when(this.jedis.sscan(eq("sessions"), eq("0"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("3", Arrays.asList("test-id-1", "test-id-2")));
+        when(this.jedis.sscan(eq("sessions"), eq("3"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("5", Collections.<String>emptyList()));
+        when(this.jedis.sscan(eq("sessions"), eq("5"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("0", Arrays.asList("test-id-3")));
+
+        assertEquals("test-id-1", this.iterator.next());
+        assertEquals("test-id-2", this.iterator.next());
+        assertTrue(this.iterator.hasNext());
+        assertEquals("test-id-3", this.iterator.next());
+        assertFalse(this.iterator.hasNext());
+        verify(this.jedis, times(3)).close();
+    }
+
+    @Test
+    public void iterateShards() {
+        SessionIdIterator iterator = new SessionIdIterator(new JedisTemplate(this.jedisPool), KeyScheme.cluster(2), 2);
+        when(this.jedis.sscan(eq("{sessions:0}"), eq("0"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("0", Arrays.asList("{sessions:0}:session:test-id-1")));
+        when(this.jedis.sscan(eq("{sessions:1}"), eq("0"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("0", Arrays.asList("{sessions:1}:session:test-id-2")));
+
+        assertEquals("test-id-1", iterator.next());
+        assertEquals("test-id-2", iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextExhausted() {
+        when(this.jedis.sscan(eq("sessions"), eq("0"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("0", Collections.<String>emptyList()));
+
+        this.iterator.next();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void remove() {
+        this.iterator.remove();
+    }
+}
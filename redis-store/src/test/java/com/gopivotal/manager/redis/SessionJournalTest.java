@@ -0,0 +1,240 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import redis.clients.util.SafeEncoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class SessionJournalTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+
+    private SessionJournal journal;
+
+    @Test
+    public void append() throws IOException {
+        assertTrue(this.journal.append("test-id-1", 1, values("test-value-1")));
+        assertTrue(this.journal.append("test-id-2", 1, values("test-value-2")));
+
+        assertTrue(this.journal.contains("test-id-1"));
+        assertEquals(2, this.journal.getPending());
+        assertEquals(this.file.length(), this.journal.getSize());
+        assertEquals("test-value-1", value(this.journal.get("test-id-1")));
+        assertNull(this.journal.get("test-id-3"));
+    }
+
+    @Test
+    public void appendConcurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 400; i++) {
+                final String id = String.format("test-id-%d", i);
+                futures.add(executor.submit(new Callable<Boolean>() {
+
+                    @Override
+                    public Boolean call() throws IOException {
+                        return SessionJournalTest.this.journal.append(id, 1, values("test-value"));
+                    }
+
+                }));
+            }
+
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        this.journal.close();
+        this.journal = new SessionJournal(this.file, Long.MAX_VALUE);
+
+        assertEquals(400, this.journal.getPending());
+        assertEquals(this.file.length(), this.journal.getSize());
+    }
+
+    @Test
+    public void appendFull() throws IOException {
+        SessionJournal small = new SessionJournal(this.temporaryFolder.newFile(), 100);
+
+        assertTrue(small.append("test-id-1", 1, values("test-value-1")));
+        assertFalse(small.append("test-id-2", 1, values("test-value-2")));
+
+        small.close();
+    }
+
+    @Test
+    public void appendFullCompacted() throws IOException {
+        SessionJournal small = new SessionJournal(this.temporaryFolder.newFile(), 150);
+
+        assertTrue(small.append("test-id-1", 1, values("test-value-1")));
+        assertTrue(small.append("test-id-1", 2, values("test-value-2")));
+        assertTrue(small.append("test-id-1", 3, values("test-value-3")));
+
+        assertEquals(1, small.getPending());
+        assertEquals("test-value-3", value(small.get("test-id-1")));
+
+        small.close();
+    }
+
+    @Test
+    public void appendOlderVersion() throws IOException {
+        this.journal.append("test-id-1", 2, values("test-value-2"));
+        this.journal.append("test-id-1", 1, values("test-value-1"));
+
+        SessionJournal.Entry entry = this.journal.get("test-id-1");
+        assertEquals(2, entry.getVersion());
+        assertEquals("test-value-2", value(entry));
+    }
+
+    @Test
+    public void appendRemoval() throws IOException {
+        this.journal.append("test-id-1", 1, values("test-value-1"));
+        this.journal.append("test-id-1", Long.MAX_VALUE, Collections.<byte[]>emptyList());
+
+        assertTrue(this.journal.get("test-id-1").isRemoval());
+    }
+
+    @After
+    public void close() throws IOException {
+        this.journal.close();
+    }
+
+    @Test
+    public void getLag() throws IOException {
+        assertEquals(0, this.journal.getLag(System.currentTimeMillis()));
+
+        this.journal.append("test-id-1", 1, values("test-value-1"));
+
+        assertTrue(this.journal.getLag(System.currentTimeMillis() + 1000) >= 1000);
+    }
+
+    @Before
+    public void open() throws IOException {
+        this.file = this.temporaryFolder.newFile();
+        this.journal = new SessionJournal(this.file, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void pending() throws IOException {
+        this.journal.append("test-id-1", 1, values("test-value-1"));
+        this.journal.append("test-id-2", 1, values("test-value-2"));
+        this.journal.append("test-id-1", 2, values("test-value-3"));
+
+        List<SessionJournal.Entry> entries = this.journal.pending(10);
+
+        assertEquals(2, entries.size());
+        assertEquals("test-id-2", entries.get(0).getId());
+        assertEquals("test-id-1", entries.get(1).getId());
+        assertEquals("test-value-3", value(entries.get(1)));
+        assertEquals(1, this.journal.pending(1).size());
+    }
+
+    @Test
+    public void recover() throws IOException {
+        this.journal.append("test-id-1", 1, values("test-value-1"));
+        this.journal.append("test-id-2", 1, values("test-value-2"));
+        this.journal.append("test-id-1", 2, values("test-value-3"));
+        this.journal.close();
+
+        this.journal = new SessionJournal(this.file, Long.MAX_VALUE);
+
+        assertEquals(2, this.journal.getPending());
+        assertEquals("test-value-3", value(this.journal.get("test-id-1")));
+        assertEquals("test-id-2", this.journal.pending(1).get(0).getId());
+    }
+
+    @Test
+    public void recoverPartialRecord() throws IOException {
+        this.journal.append("test-id-1", 1, values("test-value-1"));
+        long size = this.journal.getSize();
+        this.journal.append("test-id-2", 1, values("test-value-2"));
+        this.journal.close();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 1);
+        }
+
+        this.journal = new SessionJournal(this.file, Long.MAX_VALUE);
+
+        assertEquals(1, this.journal.getPending());
+        assertFalse(this.journal.contains("test-id-2"));
+        assertEquals(size, this.file.length());
+    }
+
+    @Test
+    public void replayed() throws IOException {
+        this.journal.append("test-id-1", 1, values("test-value-1"));
+        this.journal.append("test-id-2", 1, values("test-value-2"));
+
+        for (SessionJournal.Entry entry : this.journal.pending(10)) {
+            this.journal.replayed(entry);
+        }
+
+        assertEquals(0, this.journal.getPending());
+        assertEquals(2, this.journal.getReplayed());
+        assertEquals(0, this.journal.getSize());
+        assertEquals(0, this.file.length());
+    }
+
+    @Test
+    public void replayedSuperseded() throws IOException {
+        this.journal.append("test-id-1", 1, values("test-value-1"));
+        SessionJournal.Entry entry = this.journal.pending(1).get(0);
+        this.journal.append("test-id-1", 2, values("test-value-2"));
+
+        this.journal.replayed(entry);
+
+        assertTrue(this.journal.contains("test-id-1"));
+        assertEquals(0, this.journal.getReplayed());
+    }
+
+    private static List<byte[]> values(String value) {
+        return Arrays.asList(SafeEncoder.encode("1800"), SafeEncoder.encode(value));
+    }
+
+    private static String value(SessionJournal.Entry entry) {
+        return SafeEncoder.encode(entry.getValues().get(1));
+    }
+
+}
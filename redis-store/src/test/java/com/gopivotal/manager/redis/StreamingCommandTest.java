@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import com.gopivotal.manager.SerializedSession;
+import com.gopivotal.manager.SessionSerializationUtils;
+import com.gopivotal.manager.SessionSerializer;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.session.StandardSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class StreamingCommandTest {
+
+    private final Client client = mock(Client.class);
+
+    private final ByteArrayOutputStream connection = new ByteArrayOutputStream();
+
+    private final Jedis jedis = mock(Jedis.class);
+
+    private final Socket socket = mock(Socket.class);
+
+    private SerializedSession payload;
+
+    @Test
+    public void execute() throws IOException {
+        when(this.client.getOne()).thenReturn(1L);
+
+        Object reply = new StreamingCommand(Arrays.asList(SafeEncoder.encode("SET"), SafeEncoder.encode("test-key")),
+                this.payload).execute(this.jedis);
+
+        assertEquals(1L, reply);
+        assertEquals("*3\r\n$3\r\nSET\r\n$8\r\ntest-key\r\n$10\r\ntest-value\r\n",
+                SafeEncoder.encode(this.connection.toByteArray()));
+        verify(this.client).connect();
+        verify(this.client).resetPipelinedCount();
+    }
+
+    @Test(expected = JedisConnectionException.class)
+    public void executeIOException() throws IOException {
+        when(this.socket.getOutputStream()).thenThrow(new IOException("test-message"));
+
+        try {
+            new StreamingCommand(Arrays.asList(SafeEncoder.encode("SET"), SafeEncoder.encode("test-key")),
+                    this.payload).execute(this.jedis);
+        } finally {
+            verify(this.client).disconnect();
+            verify(this.client, never()).getOne();
+        }
+    }
+
+    @After
+    public void releasePayload() {
+        this.payload.close();
+    }
+
+    @Before
+    public void setupJedis() throws IOException {
+        when(this.jedis.getClient()).thenReturn(this.client);
+        when(this.client.getSocket()).thenReturn(this.socket);
+        when(this.socket.getOutputStream()).thenReturn(this.connection);
+    }
+
+    @Before
+    public void setupPayload() throws IOException {
+        StandardManager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+
+        this.payload = new SessionSerializationUtils(manager, new StubSessionSerializer()).serializeToBuffer(
+                new StandardSession(manager));
+    }
+
+    private static final class StubSessionSerializer implements SessionSerializer {
+
+        @Override
+        public void serialize(Session session, OutputStream out) throws IOException {
+            out.write(SafeEncoder.encode("test-value"));
+        }
+
+        @Override
+        public void deserialize(InputStream in, Session session) {
+        }
+
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gopivotal.manager.redis;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public final class ThrottledLoggerTest {
+
+    private final Exception exception = new Exception();
+
+    private final Logger logger = mock(Logger.class);
+
+    @Test
+    public void error() {
+        ThrottledLogger throttledLogger = new ThrottledLogger(this.logger, Long.MAX_VALUE / 2);
+
+        throttledLogger.error("test-message {}", "test-argument-1", this.exception);
+        throttledLogger.error("test-message {}", "test-argument-2", this.exception);
+
+        verify(this.logger).error("test-message {}", new Object[]{"test-argument-1", this.exception});
+        verify(this.logger, never()).error("test-message {}", new Object[]{"test-argument-2", this.exception});
+        verify(this.logger).debug("test-message {}", new Object[]{"test-argument-2", this.exception});
+    }
+
+    @Test
+    public void errorAfterInterval() {
+        ThrottledLogger throttledLogger = new ThrottledLogger(this.logger, 0);
+
+        throttledLogger.error("test-message {}", "test-argument", this.exception);
+        throttledLogger.error("test-message {}", "test-argument", this.exception);
+
+        verify(this.logger, times(2)).error("test-message {}", new Object[]{"test-argument", this.exception});
+    }
+
+}